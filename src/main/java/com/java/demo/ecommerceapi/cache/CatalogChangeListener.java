@@ -0,0 +1,29 @@
+package com.java.demo.ecommerceapi.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Listener JPA de las entidades del catalogo: cualquier alta, cambio o baja invalida los ETag de los listados.
+ * Hibernate lo instancia a traves del contenedor de Spring, por eso puede recibir dependencias.
+ * Las actualizaciones masivas por JPQL no pasan por aca y deben llamar a CatalogVersion.changed().
+ */
+public class CatalogChangeListener {
+
+    private final CatalogVersion catalogVersion;
+
+    @Autowired
+    public CatalogChangeListener(CatalogVersion catalogVersion) {
+        this.catalogVersion = catalogVersion;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        catalogVersion.changed();
+    }
+}
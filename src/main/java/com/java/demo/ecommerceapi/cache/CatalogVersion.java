@@ -0,0 +1,72 @@
+package com.java.demo.ecommerceapi.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Contador de cambios del catalogo (productos, marcas y categorias) usado para los ETag de los listados.
+ * El stock lleva un contador aparte: una compra solo invalida las respuestas que dependen de la
+ * disponibilidad (busquedas con inStock y facetas), no todo el catalogo.
+ * Incluye el instante de arranque, asi un reinicio nunca repite una etiqueta anterior.
+ */
+@Component
+public class CatalogVersion {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong stockChanges = new AtomicLong();
+
+    /**
+     * Registra un cambio de inmediato y, dentro de una transaccion, otra vez despues del commit:
+     * una lectura concurrente que vio los datos anteriores no puede quedar con la etiqueta nueva.
+     */
+    public void changed() {
+        increment(changes);
+    }
+
+    /** Registra un cambio de stock, con el mismo doble incremento que changed(). */
+    public void stockChanged() {
+        increment(stockChanges);
+    }
+
+    public String etag() {
+        return "\"c" + epoch + "-" + changes.get() + "\"";
+    }
+
+    /** ETag de las respuestas que dependen del stock, si withStock; si no, el mismo que etag(). */
+    public String etag(boolean withStock) {
+        if (!withStock) {
+            return etag();
+        }
+        return "\"c" + epoch + "-" + changes.get() + "-s" + stockChanges.get() + "\"";
+    }
+
+    public static String productEtag(Long id, Long version) {
+        return "\"p" + id + "-v" + (version == null ? 0 : version) + "\"";
+    }
+
+    /** ETag de la variante comprimida con gzip: un ETag fuerte identifica bytes exactos. */
+    public static String gzipEtag(String etag) {
+        return variantEtag(etag, "gzip");
+    }
+
+    /** ETag de otra representacion del mismo contenido (por ejemplo cbor o smile). */
+    public static String variantEtag(String etag, String variant) {
+        return etag.substring(0, etag.length() - 1) + "-" + variant + "\"";
+    }
+
+    private static void increment(AtomicLong counter) {
+        counter.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    counter.incrementAndGet();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.java.demo.ecommerceapi.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.java.demo.ecommerceapi.dto.OrderDTO;
+import com.java.demo.ecommerceapi.exception.BadRequestException;
+import com.java.demo.ecommerceapi.exception.ConflictException;
+import com.java.demo.ecommerceapi.model.OrderDetail;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Ordenes creadas por clave de idempotencia (cabecera Idempotency-Key), por usuario y durante
+ * orders.idempotency.ttl. La primera peticion con una clave crea la orden; los reintentos con la misma clave
+ * reciben el OrderDTO guardado sin volver a tocar productos ni stock, y los que llegan mientras la primera
+ * esta en curso la esperan hasta orders.idempotency.wait-timeout y reciben su mismo resultado (o su misma
+ * excepcion); si no termina a tiempo reciben un 409 y pueden reintentar.
+ * Si la creacion falla la clave se libera y un reintento vuelve a ejecutarla. Solo las ejecuciones terminadas
+ * cuentan para orders.idempotency.maximum-size: una orden en curso nunca se desaloja por tamano.
+ * Las claves viven en la memoria de esta instancia: no sobreviven a un reinicio ni se comparten entre instancias.
+ */
+@Component
+public class OrderIdempotencyStore {
+
+    public static final String ORDERS = "order-idempotency";
+    static final int MAX_KEY_LENGTH = 255;
+
+    // Solo ejecuciones terminadas: las que estan en curso viven en inFlight, fuera del limite de tamano
+    private final Cache<String, Execution> executions;
+    private final ConcurrentMap<String, Execution> inFlight = new ConcurrentHashMap<>();
+    private final Counter replays;
+    private final Duration waitTimeout;
+
+    // Huella del cuerpo de la peticion: la misma clave con otro pedido es un error del cliente
+    private record Execution(String fingerprint, CompletableFuture<OrderDTO> result) {
+    }
+
+    @Autowired
+    public OrderIdempotencyStore(MeterRegistry meterRegistry,
+            @Value("${orders.idempotency.maximum-size:100000}") long maximumSize,
+            @Value("${orders.idempotency.ttl:24h}") Duration ttl,
+            @Value("${orders.idempotency.wait-timeout:10s}") Duration waitTimeout) {
+        this.waitTimeout = waitTimeout;
+        this.executions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.replays = Counter.builder("orders.idempotency.replays")
+                .description("Order requests answered from a previous execution with the same idempotency key")
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, executions, ORDERS);
+    }
+
+    /**
+     * Huella SHA-256 de las lineas del pedido, independiente del orden en que llegan: pares
+     * (productId, quantity) ordenados.
+     */
+    public static String fingerprint(List<OrderDetail> orderDetails) {
+        StringBuilder lines = new StringBuilder();
+        orderDetails.stream()
+                .sorted(Comparator.comparing((OrderDetail detail) -> detail.getProduct().getId())
+                        .thenComparing(OrderDetail::getQuantity))
+                .forEach(detail -> lines.append(detail.getProduct().getId()).append(':')
+                        .append(detail.getQuantity()).append('\n'));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(lines.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Devuelve la orden creada con esta clave por el usuario o la crea con createOrder.
+     *
+     * @throws BadRequestException si la clave no es valida o ya se uso con un pedido distinto
+     * @throws ConflictException si la orden con esta clave sigue en curso despues de orders.idempotency.wait-timeout
+     */
+    public OrderDTO execute(String username, String key, String fingerprint, Supplier<OrderDTO> createOrder) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException("The Idempotency-Key header must have between 1 and " + MAX_KEY_LENGTH
+                    + " characters");
+        }
+        String scopedKey = username + '\n' + key;
+        Execution execution = executions.getIfPresent(scopedKey);
+        if (execution == null) {
+            Execution created = new Execution(fingerprint, new CompletableFuture<>());
+            execution = inFlight.putIfAbsent(scopedKey, created);
+            if (execution == null) {
+                // La ejecucion anterior pudo terminar entre las dos consultas: se guarda antes de salir de inFlight
+                execution = executions.getIfPresent(scopedKey);
+                if (execution == null) {
+                    return lead(scopedKey, created, createOrder);
+                }
+                inFlight.remove(scopedKey, created);
+            }
+        }
+        if (!execution.fingerprint().equals(fingerprint)) {
+            throw new BadRequestException("The Idempotency-Key '" + key + "' was already used with a different order");
+        }
+        replays.increment();
+        try {
+            return execution.result().get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ConflictException("The order with Idempotency-Key '" + key + "' is still being processed, retry later");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the order with Idempotency-Key '" + key + "'", e);
+        }
+    }
+
+    private OrderDTO lead(String scopedKey, Execution execution, Supplier<OrderDTO> createOrder) {
+        OrderDTO order;
+        try {
+            order = createOrder.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(scopedKey, execution);
+            execution.result().completeExceptionally(e);
+            throw e;
+        }
+        execution.result().complete(order);
+        // Sin orden no hay nada que repetir: los que esperaban reciben el mismo resultado y la clave se libera
+        if (order != null) {
+            executions.put(scopedKey, execution);
+        }
+        inFlight.remove(scopedKey, execution);
+        return order;
+    }
+}
@@ -0,0 +1,86 @@
+package com.java.demo.ecommerceapi.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Cache de lectura de productos por id, acotado por tamano y por tiempo de vida.
+ * Guarda copias ProductDTO tomadas al leer de la base de datos; las instancias se comparten entre
+ * peticiones y no deben modificarse. Los aciertos, fallos y desalojos se publican como metricas
+ * "cache.*" con el tag cache=products.
+ */
+@Component
+public class ProductCache {
+
+    public static final String NAME = "products";
+
+    private final Cache<Long, ProductDTO> cache;
+
+    @Autowired
+    public ProductCache(MeterRegistry meterRegistry,
+            @Value("${products.cache.maximum-size:10000}") long maximumSize,
+            @Value("${products.cache.ttl:10m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * Devuelve el producto del cache o lo carga con el loader; los productos inexistentes no se guardan.
+     */
+    public Optional<ProductDTO> get(Long id, Function<Long, Optional<ProductDTO>> loader) {
+        return Optional.ofNullable(cache.get(id, key -> loader.apply(key).orElse(null)));
+    }
+
+    /**
+     * Devuelve los productos encontrados (en cache o cargados) indexados por id. El loader recibe en una
+     * sola llamada todos los ids que no estaban en cache; los que no devuelva se omiten y no se guardan.
+     */
+    public Map<Long, ProductDTO> getAll(Collection<Long> ids, Function<Set<Long>, Map<Long, ProductDTO>> loader) {
+        return cache.getAll(ids, missing -> loader.apply(Set.copyOf(missing)));
+    }
+
+    /**
+     * Desaloja el producto de inmediato y, si hay una transaccion activa, de nuevo despues del commit,
+     * para descartar una lectura concurrente que haya vuelto a cargar el estado anterior.
+     */
+    public void evict(Long id) {
+        cache.invalidate(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+}
@@ -0,0 +1,137 @@
+package com.java.demo.ecommerceapi.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Respuestas JSON ya serializadas (UTF-8 y, si vale la pena, gzip) listas para escribir en el socket:
+ * una por id de producto y una por busqueda frecuente. Ambos caches se acotan por bytes y la politica
+ * de admision de Caffeine (W-TinyLFU) se queda con las claves mas pedidas.
+ * Las busquedas se guardan bajo el ETag del catalogo, asi una entrada anterior a un cambio nunca se vuelve a servir.
+ */
+@Component
+public class ProductResponseCache {
+
+    public static final String PRODUCTS = "product-responses";
+    public static final String SEARCHES = "search-responses";
+    // Por debajo de este tamano gzip no compensa el costo de descomprimir en el cliente
+    static final int GZIP_MIN_BYTES = 1024;
+
+    public record SerializedResponse(byte[] json, byte[] gzip, String etag, String nextCursor) {
+
+        public boolean hasGzip() {
+            return gzip != null;
+        }
+    }
+
+    private final ObjectWriter writer;
+    private final Cache<Long, SerializedResponse> products;
+    private final Cache<String, SerializedResponse> searches;
+
+    @Autowired
+    public ProductResponseCache(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+            @Value("${products.response-cache.max-bytes:33554432}") long maximumBytes,
+            @Value("${products.response-cache.ttl:10m}") Duration ttl) {
+        this.writer = objectMapper.writer();
+        this.products = build(maximumBytes / 2, ttl);
+        this.searches = build(maximumBytes / 2, ttl);
+        CaffeineCacheMetrics.monitor(meterRegistry, products, PRODUCTS);
+        CaffeineCacheMetrics.monitor(meterRegistry, searches, SEARCHES);
+    }
+
+    /**
+     * Devuelve la respuesta serializada del producto o la construye a partir del loader;
+     * null si el producto no existe.
+     */
+    public SerializedResponse product(Long id, Function<Long, Optional<ProductDTO>> loader) {
+        return products.get(id, key -> loader.apply(key)
+                .map(product -> serialize(product, CatalogVersion.productEtag(key, product.getVersion()), null))
+                .orElse(null));
+    }
+
+    public SerializedResponse search(String key) {
+        return searches.getIfPresent(key);
+    }
+
+    public SerializedResponse putSearch(String key, Object body, String etag, String nextCursor) {
+        SerializedResponse response = serialize(body, etag, nextCursor);
+        searches.put(key, response);
+        return response;
+    }
+
+    /**
+     * Descarta la respuesta del producto y todas las busquedas, de inmediato y otra vez despues del commit.
+     */
+    public void evictProduct(Long id) {
+        runNowAndAfterCommit(() -> {
+            products.invalidate(id);
+            searches.invalidateAll();
+        });
+    }
+
+    public void evictSearches() {
+        runNowAndAfterCommit(searches::invalidateAll);
+    }
+
+    private SerializedResponse serialize(Object body, String etag, String nextCursor) {
+        try {
+            byte[] json = writer.writeValueAsBytes(body);
+            return new SerializedResponse(json, json.length >= GZIP_MIN_BYTES ? gzip(json) : null, etag, nextCursor);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static <K> Cache<K, SerializedResponse> build(long maximumBytes, Duration ttl) {
+        return Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((K key, SerializedResponse response) ->
+                        response.json().length + (response.hasGzip() ? response.gzip().length : 0))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    private static void runNowAndAfterCommit(Runnable action) {
+        action.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+}
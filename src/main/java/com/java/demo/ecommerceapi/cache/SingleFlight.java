@@ -0,0 +1,109 @@
+package com.java.demo.ecommerceapi.cache;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Agrupa consultas identicas concurrentes: el primer llamador de una clave ejecuta la consulta y
+ * los que llegan mientras esta en curso esperan y reciben el mismo resultado (o la misma excepcion).
+ * Si la espera supera el timeout, el llamador deja de esperar y ejecuta la consulta por su cuenta.
+ * El resultado se comparte entre todos los llamadores y no debe modificarse.
+ * La metrica "products.single-flight.callers" registra cuantos llamadores atendio cada consulta.
+ */
+@Component
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final Duration timeout;
+    private final DistributionSummary callers;
+    private final Counter timeouts;
+
+    private static final class Flight {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        // Solo se modifica dentro de flights.compute, por eso no necesita ser atomico
+        private int callers = 1;
+    }
+
+    @Autowired
+    public SingleFlight(MeterRegistry meterRegistry,
+            @Value("${products.single-flight.timeout:2s}") Duration timeout) {
+        this.timeout = timeout;
+        this.callers = DistributionSummary.builder("products.single-flight.callers")
+                .description("Callers served by each coalesced query")
+                .baseUnit("callers")
+                .register(meterRegistry);
+        this.timeouts = Counter.builder("products.single-flight.timeouts")
+                .description("Callers that stopped waiting for a coalesced query and ran it themselves")
+                .register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> query) {
+        // Dentro de una transaccion la consulta debe ver las escrituras propias: no se comparte
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return query.get();
+        }
+        Flight created = new Flight();
+        Flight flight = flights.compute(key, (k, current) -> {
+            if (current == null) {
+                return created;
+            }
+            current.callers++;
+            return current;
+        });
+        if (flight == created) {
+            return lead(key, flight, query);
+        }
+        try {
+            return (T) flight.result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            return query.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for query '" + key + "'", e);
+        }
+    }
+
+    private <T> T lead(String key, Flight flight, Supplier<T> query) {
+        T value;
+        try {
+            value = query.get();
+        } catch (RuntimeException | Error e) {
+            finish(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        finish(key, flight);
+        flight.result.complete(value);
+        return value;
+    }
+
+    // Se quita la clave antes de publicar el resultado: quien llegue despues inicia una consulta nueva
+    private void finish(String key, Flight flight) {
+        flights.remove(key, flight);
+        callers.record(flight.callers);
+    }
+}
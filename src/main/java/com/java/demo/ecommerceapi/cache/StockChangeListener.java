@@ -0,0 +1,28 @@
+package com.java.demo.ecommerceapi.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Listener JPA de las filas de stock: solo invalida los ETag que dependen de la disponibilidad.
+ * Las actualizaciones masivas por JPQL no pasan por aca y deben llamar a CatalogVersion.stockChanged().
+ */
+public class StockChangeListener {
+
+    private final CatalogVersion catalogVersion;
+
+    @Autowired
+    public StockChangeListener(CatalogVersion catalogVersion) {
+        this.catalogVersion = catalogVersion;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        catalogVersion.stockChanged();
+    }
+}
@@ -0,0 +1,75 @@
+package com.java.demo.ecommerceapi.config;
+
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Negociacion de formato para los endpoints que escriben bytes ya serializados en JSON (y por eso no
+ * pasan por los convertidores de MVC): indica si el cliente prefiere CBOR o Smile y serializa en ese formato.
+ */
+@Component
+public class BinaryFormats {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    private final Map<MediaType, ObjectMapper> mappers = new LinkedHashMap<>();
+
+    @Autowired
+    public BinaryFormats(MappingJackson2CborHttpMessageConverter cbor, MappingJackson2SmileHttpMessageConverter smile) {
+        mappers.put(MediaType.APPLICATION_CBOR, cbor.getObjectMapper());
+        mappers.put(APPLICATION_SMILE, smile.getObjectMapper());
+    }
+
+    /**
+     * Formato binario que el cliente prefiere segun el header Accept, o null si prefiere JSON,
+     * acepta cualquier formato o no envia Accept.
+     */
+    public MediaType negotiate(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return null;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+        // Ordena por calidad (q) y luego por especificidad
+        MimeTypeUtils.sortBySpecificity(accepted);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            for (MediaType binary : mappers.keySet()) {
+                if (type.equalsTypeAndSubtype(binary)) {
+                    return binary;
+                }
+            }
+            if (type.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public byte[] write(MediaType format, Object body) {
+        try {
+            return mappers.get(format).writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
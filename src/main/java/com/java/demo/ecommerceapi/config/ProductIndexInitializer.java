@@ -0,0 +1,27 @@
+package com.java.demo.ecommerceapi.config;
+
+import com.java.demo.ecommerceapi.service.ProductService;
+import com.java.demo.ecommerceapi.service.StockService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ProductIndexInitializer implements CommandLineRunner {
+
+    private final ProductService productService;
+    private final StockService stockService;
+
+    @Autowired
+    public ProductIndexInitializer(ProductService productService, StockService stockService) {
+        this.productService = productService;
+        this.stockService = stockService;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        long products = productService.rebuildIndexes();
+        int inStock = stockService.rebuildAvailability();
+        System.out.println("Indices de productos cargados con " + products + " productos (" + inStock + " con stock).");
+    }
+}
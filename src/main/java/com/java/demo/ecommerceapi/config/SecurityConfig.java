@@ -80,8 +80,8 @@ public class SecurityConfig {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(Arrays.asList("*")); // Permitir todas las fuentes (¡CUIDADO! Configurar apropiadamente en producción)
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS")); // Métodos permitidos
-        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With")); // Cabeceras permitidas
-        configuration.setExposedHeaders(Arrays.asList("Authorization")); // Cabeceras expuestas
+        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With", "If-None-Match", "Idempotency-Key")); // Cabeceras permitidas
+        configuration.setExposedHeaders(Arrays.asList("Authorization", "X-Next-Cursor", "ETag")); // Cabeceras expuestas
         configuration.setAllowCredentials(true); // Permitir credenciales (si es necesario)
         configuration.setMaxAge(3600L); // Tiempo de vida de la configuración en caché (en segundos)
 
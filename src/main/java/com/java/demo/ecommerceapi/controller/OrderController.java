@@ -7,10 +7,13 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import com.java.demo.ecommerceapi.cache.OrderIdempotencyStore;
+import com.java.demo.ecommerceapi.dto.FieldSet;
 import com.java.demo.ecommerceapi.dto.OrderDTO;
 import com.java.demo.ecommerceapi.model.Order;
 import com.java.demo.ecommerceapi.model.OrderDetail;
 import com.java.demo.ecommerceapi.model.Product;
+import com.java.demo.ecommerceapi.repository.OrderFieldsRepository;
 import com.java.demo.ecommerceapi.service.OrderService;
 
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -26,14 +29,18 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/orders")
 public class OrderController {
     private final OrderService orderService;
+    private final OrderIdempotencyStore idempotencyStore;
 
     @Autowired
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, OrderIdempotencyStore idempotencyStore) {
         this.orderService = orderService;
+        this.idempotencyStore = idempotencyStore;
     }
 
+    // Con la cabecera Idempotency-Key un reintento devuelve la orden ya creada en lugar de crear otra
     @PostMapping("/create")
-    public ResponseEntity<OrderDTO> createOrder(@RequestBody List<Map<String, Object>> orderDetailsData) {
+    public ResponseEntity<OrderDTO> createOrder(@RequestBody List<Map<String, Object>> orderDetailsData,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
         // Obtener el nombre de usuario del usuario autenticado
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String username = authentication.getName();
@@ -50,11 +57,17 @@ public class OrderController {
                 })
                 .collect(Collectors.toList());
 
-        Order order = orderService.createOrder(username, orderDetails);
+        OrderDTO order;
+        if (idempotencyKey == null) {
+            order = toDTO(orderService.createOrder(username, orderDetails));
+        } else {
+            order = idempotencyStore.execute(username, idempotencyKey, OrderIdempotencyStore.fingerprint(orderDetails),
+                    () -> toDTO(orderService.createOrder(username, orderDetails)));
+        }
         if(order == null){
             return new ResponseEntity<>( HttpStatus.BAD_REQUEST);
         }else{
-            return new ResponseEntity<>(new OrderDTO(order), HttpStatus.CREATED);
+            return new ResponseEntity<>(order, HttpStatus.CREATED);
         }
     }
 
@@ -75,6 +88,26 @@ public class OrderController {
         }
     }
 
+    // Con ?fields= solo se leen y devuelven los campos pedidos
+    @GetMapping(value = "/user", params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getOrderFieldsByUser(@RequestParam(name = "fields") String fields) {
+        FieldSet fieldSet = FieldSet.parse(fields, OrderFieldsRepository.FIELDS);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        List<Map<String, Object>> orders = orderService.getOrderFieldsByUser(authentication.getName(), fieldSet);
+        if (orders.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(orders, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/{id}", params = "fields")
+    public ResponseEntity<Map<String, Object>> getOrderFieldsById(@PathVariable Long id, @RequestParam(name = "fields") String fields) {
+        FieldSet fieldSet = FieldSet.parse(fields, OrderFieldsRepository.FIELDS);
+        return orderService.getOrderFieldsById(id, fieldSet)
+                .map(order -> new ResponseEntity<>(order, HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<OrderDTO> getOrderById(@PathVariable Long id) {
         Optional<Order> order = orderService.getOrderById(id);
@@ -84,4 +117,8 @@ public class OrderController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
+
+    private static OrderDTO toDTO(Order order) {
+        return order == null ? null : new OrderDTO(order);
+    }
 }
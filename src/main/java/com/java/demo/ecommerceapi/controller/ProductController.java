@@ -1,8 +1,24 @@
 package com.java.demo.ecommerceapi.controller;
 
+import com.java.demo.ecommerceapi.cache.CatalogVersion;
+import com.java.demo.ecommerceapi.cache.ProductResponseCache;
+import com.java.demo.ecommerceapi.cache.ProductResponseCache.SerializedResponse;
+import com.java.demo.ecommerceapi.config.BinaryFormats;
+import com.java.demo.ecommerceapi.dto.FieldSet;
+import com.java.demo.ecommerceapi.dto.PriceStatsDTO;
+import com.java.demo.ecommerceapi.dto.ProductBatchDTO;
+import com.java.demo.ecommerceapi.dto.ProductCursor;
 import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.dto.ProductSearchResultDTO;
+import com.java.demo.ecommerceapi.dto.ProductSuggestionDTO;
+import com.java.demo.ecommerceapi.exception.BadRequestException;
 import com.java.demo.ecommerceapi.exception.GeneralException;
+import com.java.demo.ecommerceapi.exception.ObjectNotFoundException;
+import com.java.demo.ecommerceapi.model.Category;
 import com.java.demo.ecommerceapi.model.Product;
+import com.java.demo.ecommerceapi.repository.ProductFieldsRepository;
+import com.java.demo.ecommerceapi.search.ProductSuggester;
+import com.java.demo.ecommerceapi.service.CategoryService;
 import com.java.demo.ecommerceapi.service.ProductService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -12,24 +28,61 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
 import java.math.BigDecimal;
 
 @Tag(name = "Products", description = "Endpoints for product management")
 @RestController
 @RequestMapping("/api/products")
 public class ProductController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_BATCH_IDS = 1000;
+    private static final String SORT_NAME = "name";
+    private static final String SORT_RELEVANCE = "relevance";
+
     private final ProductService productService;
+    private final CategoryService categoryService;
+    private final CatalogVersion catalogVersion;
+    private final ProductResponseCache responseCache;
+    private final BinaryFormats binaryFormats;
+    private final ObjectWriter ndjsonWriter;
 
     @Autowired
-    public ProductController(ProductService productService) {
+    public ProductController(ProductService productService, CategoryService categoryService, CatalogVersion catalogVersion,
+            ProductResponseCache responseCache, BinaryFormats binaryFormats, ObjectMapper objectMapper) {
         this.productService = productService;
+        this.categoryService = categoryService;
+        this.catalogVersion = catalogVersion;
+        this.responseCache = responseCache;
+        this.binaryFormats = binaryFormats;
+        this.ndjsonWriter = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
     }
 
     @Operation(
@@ -43,17 +96,154 @@ public class ProductController {
             }
     )
     @GetMapping
-    public ResponseEntity<List<ProductDTO>> getAllProducts() {
-        List<Product> products = productService.getAllProducts();
+    public ResponseEntity<List<ProductDTO>> getAllProducts(
+            @RequestParam(required = false, name = "limit") Integer limit,
+            @RequestParam(required = false, name = "after") String after,
+            WebRequest request) {
+        // Si el cliente ya tiene la version actual del catalogo se responde 304 sin consultar la base de datos
+        if (request.checkNotModified(catalogVersion.etag())) {
+            return null;
+        }
+        if (limit != null || after != null) {
+            int pageSize = pageSize(limit);
+            List<ProductDTO> page = productService.getProductsPage(ProductCursor.decode(after), pageSize + 1);
+            return pageResponse(page, pageSize, last -> ProductCursor.afterId(last.getId()));
+        }
+        List<ProductDTO> products = productService.getAllProducts();
         if(products.isEmpty()){
             return new ResponseEntity<>( HttpStatus.NOT_FOUND);
         }else{
-            List<ProductDTO> listDTO = new ArrayList<>();
-            for (Product product : products) {
-                listDTO.add(new ProductDTO(product));
+            return new ResponseEntity<>(products, HttpStatus.OK);
+        }
+    }
+
+    @Operation(
+            summary = "Obtener productos con solo los campos indicados",
+            description = "Como el listado de productos, pero solo lee y devuelve los campos de fields=id,name,price " +
+                    "(el id se incluye siempre). Un campo desconocido responde 400",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Productos encontrados"),
+                    @ApiResponse(responseCode = "400", description = "Campo desconocido"),
+                    @ApiResponse(responseCode = "404", description = "Productos no encontrado")
+            }
+    )
+    @GetMapping(params = {"fields", "!ids"})
+    public ResponseEntity<List<Map<String, Object>>> getAllProductFields(
+            @RequestParam(name = "fields") String fields,
+            @RequestParam(required = false, name = "limit") Integer limit,
+            @RequestParam(required = false, name = "after") String after,
+            WebRequest request) {
+        FieldSet fieldSet = FieldSet.parse(fields, ProductFieldsRepository.FIELDS);
+        if (request.checkNotModified(catalogVersion.etag())) {
+            return null;
+        }
+        if (limit != null || after != null) {
+            int pageSize = pageSize(limit);
+            List<Map<String, Object>> page = productService.getProductFields(ProductCursor.decode(after), pageSize + 1, fieldSet);
+            return pageResponse(page, pageSize, last -> ProductCursor.afterId((Long) last.get(FieldSet.ID)));
+        }
+        List<Map<String, Object>> products = productService.getProductFields(null, 0, fieldSet);
+        if (products.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(products, HttpStatus.OK);
+    }
+
+    @Operation(
+            summary = "Obtener varios productos por id",
+            description = "Devuelve los productos en el orden de los ids pedidos (ids=1,2,3) y lista aparte los ids inexistentes",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Productos encontrados",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ProductBatchDTO.class))),
+                    @ApiResponse(responseCode = "400", description = "Lista de ids vacia o demasiado larga")
+            }
+    )
+    @GetMapping(params = "ids")
+    public ResponseEntity<ProductBatchDTO> getProductsByIds(@RequestParam(name = "ids") List<Long> ids, WebRequest request) {
+        checkBatchSize(ids);
+        if (request.checkNotModified(catalogVersion.etag())) {
+            return null;
+        }
+        return new ResponseEntity<>(productService.getProductsByIds(ids), HttpStatus.OK);
+    }
+
+    @Operation(
+            summary = "Obtener varios productos por id (lista en el cuerpo)",
+            description = "Igual que GET /api/products?ids=..., para listas que no caben en la URL",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Productos encontrados",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ProductBatchDTO.class))),
+                    @ApiResponse(responseCode = "400", description = "Lista de ids vacia o demasiado larga")
+            }
+    )
+    @PostMapping("/batch")
+    public ResponseEntity<ProductBatchDTO> getProductsByIds(@RequestBody List<Long> ids) {
+        checkBatchSize(ids);
+        return new ResponseEntity<>(productService.getProductsByIds(ids), HttpStatus.OK);
+    }
+
+    @Operation(
+            summary = "Exportar el catalogo completo en formato NDJSON",
+            description = "Escribe un producto por linea a medida que se lee de la base de datos y termina con una linea {\"rowCount\":N}. " +
+                    "Si el cliente acepta gzip la respuesta se comprime al vuelo",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Catalogo exportado",
+                            content = @Content(mediaType = "application/x-ndjson"))
+            }
+    )
+    @GetMapping(value = "/export.ndjson", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportProducts(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 8192) : out;
+            try (JsonGenerator generator = ndjsonWriter.createGenerator(target)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                long rows = productService.exportProducts(product -> writeLine(generator, product));
+                generator.writeStartObject();
+                generator.writeNumberField("rowCount", rows);
+                generator.writeEndObject();
+                generator.writeRaw('\n');
             }
-            return new ResponseEntity<>(listDTO, HttpStatus.OK);
+            if (target instanceof GZIPOutputStream gzipStream) {
+                gzipStream.finish();
+            }
+            target.flush();
+        };
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
         }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    @Operation(
+            summary = "Autocompletar nombres de productos",
+            description = "Devuelve los productos mas vendidos cuyo nombre empieza con el prefijo dado. " +
+                    "Se resuelve en memoria, sin consultar la base de datos",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Sugerencias encontradas",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ProductSuggestionDTO.class))),
+                    @ApiResponse(responseCode = "400", description = "Prefijo o limite invalido")
+            }
+    )
+    @GetMapping("/suggest")
+    public ResponseEntity<List<ProductSuggestionDTO>> suggestProducts(
+            @RequestParam(defaultValue = "", required = false, name = "prefix") String prefix,
+            @RequestParam(defaultValue = "" + ProductSuggester.MAX_SUGGESTIONS, required = false, name = "limit") int limit) {
+        if (prefix.isBlank()) {
+            throw new BadRequestException("The 'prefix' parameter is required");
+        }
+        if (limit < 1 || limit > ProductSuggester.MAX_SUGGESTIONS) {
+            throw new BadRequestException("The limit must be between 1 and " + ProductSuggester.MAX_SUGGESTIONS);
+        }
+        return new ResponseEntity<>(productService.suggestProducts(prefix, limit), HttpStatus.OK);
     }
 
     @Operation(
@@ -63,17 +253,60 @@ public class ProductController {
                     @ApiResponse(responseCode = "200", description = "Producto encontrado",
                             content = @Content(mediaType = "application/json",
                                     schema = @Schema(implementation = Product.class))),
+                    @ApiResponse(responseCode = "304", description = "El producto no cambio desde el ETag enviado en If-None-Match"),
                     @ApiResponse(responseCode = "404", description = "Producto no encontrado")
             }
     )
     @GetMapping("/{id}")
-    public ResponseEntity<ProductDTO> getProductById(@PathVariable Long id) {
-        Optional<Product> product = productService.getProductById(id);
-        if (product.isPresent()) {
-            return new ResponseEntity<>(new ProductDTO( product.get()), HttpStatus.OK);
-        } else {
+    public ResponseEntity<byte[]> getProductById(@PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest request) {
+        MediaType binary = binaryFormats.negotiate(accept);
+        if (binary != null) {
+            Optional<ProductDTO> product = productService.getProductDTOById(id);
+            if (product.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            String etag = CatalogVersion.productEtag(id, product.get().getVersion());
+            if (request.checkNotModified(CatalogVersion.variantEtag(etag, binary.getSubtype()))) {
+                return null;
+            }
+            return binaryResponse(product.get(), binary, null);
+        }
+        // Se escriben los bytes JSON ya serializados; solo un fallo del cache serializa el DTO
+        SerializedResponse product = responseCache.product(id, productService::getProductDTOById);
+        if (product == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
+        boolean gzip = product.hasGzip() && acceptsGzip(acceptEncoding);
+        if (request.checkNotModified(gzip ? CatalogVersion.gzipEtag(product.etag()) : product.etag())) {
+            return null;
+        }
+        return serializedResponse(product, gzip);
+    }
+
+    @Operation(
+            summary = "Obtener un producto con solo los campos indicados",
+            description = "Como el detalle del producto, pero solo lee y devuelve los campos de fields=id,name,price " +
+                    "(el id se incluye siempre). Un campo desconocido responde 400",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Producto encontrado"),
+                    @ApiResponse(responseCode = "400", description = "Campo desconocido"),
+                    @ApiResponse(responseCode = "404", description = "Producto no encontrado")
+            }
+    )
+    @GetMapping(value = "/{id}", params = "fields")
+    public ResponseEntity<Map<String, Object>> getProductFieldsById(@PathVariable Long id,
+            @RequestParam(name = "fields") String fields, WebRequest request) {
+        FieldSet fieldSet = FieldSet.parse(fields, ProductFieldsRepository.FIELDS);
+        // La version del catalogo cambia con cualquier producto: es un ETag valido, aunque menos fino que el del detalle
+        if (request.checkNotModified(catalogVersion.etag())) {
+            return null;
+        }
+        return productService.getProductFieldsById(id, fieldSet)
+                .map(product -> new ResponseEntity<>(product, HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
     @Operation(
@@ -138,47 +371,250 @@ public class ProductController {
     }
 
     @GetMapping("/search")
-    public ResponseEntity<List<ProductDTO>> searchProducts(
+    public ResponseEntity<byte[]> searchProducts(
             @RequestParam(defaultValue = "", required = false, name = "name") String name,
             @RequestParam(defaultValue = "", required = false, name = "category") String category,
             @RequestParam(defaultValue = "", required = false, name = "minPrice") BigDecimal minPrice,
-            @RequestParam(defaultValue = "", required = false, name = "maxPrice") BigDecimal maxPrice) {
+            @RequestParam(defaultValue = "", required = false, name = "maxPrice") BigDecimal maxPrice,
+            @RequestParam(required = false, name = "limit") Integer limit,
+            @RequestParam(required = false, name = "after") String after,
+            @RequestParam(defaultValue = "name", required = false, name = "sort") String sort,
+            @RequestParam(required = false, name = "brandId") Long brandId,
+            @RequestParam(defaultValue = "false", required = false, name = "inStock") boolean inStock,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest request) {
 
-        try {
-            List<Product> products = new ArrayList<>();
-            if(name==null){ name = ""; }
-            if(category==null){ category = ""; }
-            if(minPrice==null){ minPrice=BigDecimal.ZERO; }
-            if(maxPrice==null){ maxPrice=BigDecimal.ZERO; }
-
-            final BigDecimal comp = BigDecimal.ZERO;
-            if((name != null || !name.isEmpty()) && (category==null || category.isEmpty()) && ((minPrice.compareTo(comp))==0 ) && (maxPrice.compareTo(comp)==0 )){
-                products = productService.searchProductsByName(name);
-            }else if((name == null || name.isEmpty()) && (category!=null || !category.isEmpty()) && ((minPrice.compareTo(comp))==0 ) && (maxPrice.compareTo(comp)==0 )){
-                products = productService.searchProductsByCategory(category);
-            }else if((name == null || name.isEmpty()) && (category==null || category.isEmpty()) && ((minPrice.compareTo(comp))!=0 ) && (maxPrice.compareTo(comp)==0 )){
-                products = productService.searchProductsByPriceMinimun(minPrice);
-            }else if((name == null || name.isEmpty()) && (category==null || category.isEmpty()) && ((minPrice.compareTo(comp))==0 ) && (maxPrice.compareTo(comp)!=0 )){
-                products = productService.searchProductsByPriceMaximun(maxPrice);
-            }else if((name == null || name.isEmpty()) && (category==null || category.isEmpty()) && ((minPrice.compareTo(comp))!=0 ) && (maxPrice.compareTo(comp)!=0 )){
-                products = productService.searchProductsByPriceRange(minPrice, maxPrice);
-            }else{
-                minPrice = ((minPrice.compareTo(comp))==0 )?null:minPrice ;
-                maxPrice = ((maxPrice.compareTo(comp))==0 )?null:maxPrice ;
-                products = productService.searchProducts(name, category, minPrice, maxPrice);
+        // La clave incluye la version del catalogo: despues de cualquier cambio la entrada anterior ya no se usa.
+        // Solo el filtro inStock depende del stock, asi que solo esas busquedas cambian con cada compra
+        String catalogEtag = catalogVersion.etag(inStock);
+        MediaType binary = binaryFormats.negotiate(accept);
+        if (binary != null) {
+            // Los formatos binarios no se guardan en el cache de respuestas, que solo tiene JSON
+            if (request.checkNotModified(CatalogVersion.variantEtag(catalogEtag, binary.getSubtype()))) {
+                return null;
+            }
+            ResponseEntity<List<ProductDTO>> response = search(name, category, minPrice, maxPrice, limit, after, sort,
+                    brandId, inStock);
+            if (response.getStatusCode() != HttpStatus.OK) {
+                return new ResponseEntity<>(response.getHeaders(), response.getStatusCode());
             }
-            
+            return binaryResponse(response.getBody(), binary, response.getHeaders().getFirst(NEXT_CURSOR_HEADER));
+        }
+        String key = searchKey(catalogEtag, request);
+        SerializedResponse cached = responseCache.search(key);
+        boolean gzip = cached != null && cached.hasGzip() && acceptsGzip(acceptEncoding);
+        if (request.checkNotModified(gzip ? CatalogVersion.gzipEtag(catalogEtag) : catalogEtag)) {
+            return null;
+        }
+        if (cached == null) {
+            ResponseEntity<List<ProductDTO>> response = search(name, category, minPrice, maxPrice, limit, after, sort,
+                    brandId, inStock);
+            if (response.getStatusCode() != HttpStatus.OK) {
+                return new ResponseEntity<>(response.getHeaders(), response.getStatusCode());
+            }
+            cached = responseCache.putSearch(key, response.getBody(), catalogEtag,
+                    response.getHeaders().getFirst(NEXT_CURSOR_HEADER));
+        }
+        return serializedResponse(cached, gzip);
+    }
+
+    private ResponseEntity<List<ProductDTO>> search(String name, String category, BigDecimal minPrice,
+            BigDecimal maxPrice, Integer limit, String after, String sort, Long brandId, boolean inStock) {
+        // Un precio 0 se interpreta como "sin limite", igual que antes, en todas las variantes de busqueda
+        minPrice = zeroToNull(minPrice);
+        maxPrice = zeroToNull(maxPrice);
+        if (SORT_RELEVANCE.equals(sort)) {
+            if (name == null || name.isEmpty()) {
+                throw new BadRequestException("Sorting by relevance requires the 'name' parameter");
+            }
+            if (after != null) {
+                throw new BadRequestException("Sorting by relevance does not support the 'after' cursor");
+            }
+            List<ProductDTO> products = productService.searchProductsByRelevance(name, emptyToNull(category),
+                    minPrice, maxPrice, brandId, inStock, pageSize(limit));
+            return new ResponseEntity<>(products, HttpStatus.OK);
+        }
+        if (!SORT_NAME.equals(sort)) {
+            throw new BadRequestException("Unknown sort '" + sort + "', use 'name' or 'relevance'");
+        }
+
+        // Los filtros de marca y stock siempre se paginan: solo se carga la pagina pedida
+        if (limit != null || after != null || brandId != null || inStock) {
+            int pageSize = pageSize(limit);
+            ProductCursor cursor = ProductCursor.decode(after);
+            if (cursor != null && cursor.getName() == null) {
+                throw new BadRequestException("Invalid cursor '" + after + "' for search");
+            }
+            List<ProductDTO> page = productService.searchProductsPage(emptyToNull(name), emptyToNull(category),
+                    minPrice, maxPrice, brandId, inStock, cursor, pageSize + 1);
+            return pageResponse(page, pageSize, last -> ProductCursor.afterNameAndId(last.getName(), last.getId()));
+        }
+
+        try {
+            List<ProductDTO> products = productService.searchProducts(emptyToNull(name), emptyToNull(category),
+                    minPrice, maxPrice, null, false);
             if(products.isEmpty()){
                 return new ResponseEntity<>( HttpStatus.BAD_REQUEST);
             }else{
-                List<ProductDTO> listDTO = new ArrayList<>();
-                for (Product product : products) {
-                    listDTO.add(new ProductDTO(product));
-                }
-                return new ResponseEntity<>(listDTO, HttpStatus.OK);
+                return new ResponseEntity<>(products, HttpStatus.OK);
             }
         } catch (Exception e) {
                 throw new GeneralException("Error searching de products");
         }
     }
+
+    @Operation(
+            summary = "Buscar productos con conteos por faceta",
+            description = "Devuelve una pagina de los productos que cumplen los filtros (limit y after como en " +
+                    "/search) junto con la cantidad de resultados por categoria, marca y rango de precio",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Busqueda realizada",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ProductSearchResultDTO.class)))
+            }
+    )
+    @GetMapping(value = "/search", params = "facets=true")
+    public ResponseEntity<ProductSearchResultDTO> searchProductsWithFacets(
+            @RequestParam(defaultValue = "", required = false, name = "name") String name,
+            @RequestParam(defaultValue = "", required = false, name = "category") String category,
+            @RequestParam(required = false, name = "minPrice") BigDecimal minPrice,
+            @RequestParam(required = false, name = "maxPrice") BigDecimal maxPrice,
+            @RequestParam(required = false, name = "brandId") Long brandId,
+            @RequestParam(defaultValue = "false", required = false, name = "inStock") boolean inStock,
+            @RequestParam(required = false, name = "limit") Integer limit,
+            @RequestParam(required = false, name = "after") String after,
+            WebRequest request) {
+        // Las facetas siempre incluyen el contador de stock, igual que las busquedas con inStock
+        if (request.checkNotModified(catalogVersion.etag(true))) {
+            return null;
+        }
+        int pageSize = pageSize(limit);
+        ProductCursor cursor = ProductCursor.decode(after);
+        if (cursor != null && cursor.getName() == null) {
+            throw new BadRequestException("Invalid cursor '" + after + "' for search");
+        }
+        // Un precio 0 se interpreta como "sin limite", igual que en /search
+        ProductSearchResultDTO result = productService.searchProductsWithFacets(emptyToNull(name), emptyToNull(category),
+                zeroToNull(minPrice), zeroToNull(maxPrice), brandId, inStock, cursor, pageSize + 1);
+        ResponseEntity<List<ProductDTO>> page = pageResponse(result.getProducts(), pageSize,
+                last -> ProductCursor.afterNameAndId(last.getName(), last.getId()));
+        result.setProducts(page.getBody());
+        return new ResponseEntity<>(result, page.getHeaders(), HttpStatus.OK);
+    }
+
+    @Operation(
+            summary = "Estadisticas de precio para el filtro por rango",
+            description = "Devuelve el precio minimo, el maximo y un histograma de rangos fijos de los productos " +
+                    "de la categoria indicada, o de todo el catalogo si no se indica categoria",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Estadisticas calculadas",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = PriceStatsDTO.class))),
+                    @ApiResponse(responseCode = "404", description = "Categoria no encontrada")
+            }
+    )
+    @GetMapping("/price-stats")
+    public ResponseEntity<PriceStatsDTO> getPriceStats(
+            @RequestParam(defaultValue = "", required = false, name = "category") String category,
+            WebRequest request) {
+        if (request.checkNotModified(catalogVersion.etag())) {
+            return null;
+        }
+        Long categoryId = null;
+        if (!category.isEmpty()) {
+            Category found = categoryService.getCategoryByName(category);
+            if (found == null) {
+                throw new ObjectNotFoundException("Category '" + category + "' not found");
+            }
+            categoryId = found.getId();
+        }
+        return new ResponseEntity<>(productService.getPriceStats(categoryId), HttpStatus.OK);
+    }
+
+    private void writeLine(JsonGenerator generator, ProductDTO product) {
+        try {
+            ndjsonWriter.writeValue(generator, product);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    // Parametros ordenados por nombre, para que el orden en la URL no genere entradas distintas
+    private static String searchKey(String catalogEtag, WebRequest request) {
+        StringBuilder key = new StringBuilder(catalogEtag);
+        for (Map.Entry<String, String[]> param : new TreeMap<>(request.getParameterMap()).entrySet()) {
+            for (String value : param.getValue()) {
+                key.append('&').append(URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8))
+                        .append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return key.toString();
+    }
+
+    private static ResponseEntity<byte[]> serializedResponse(SerializedResponse response, boolean gzip) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (response.nextCursor() != null) {
+            headers.set(NEXT_CURSOR_HEADER, response.nextCursor());
+        }
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return new ResponseEntity<>(gzip ? response.gzip() : response.json(), headers, HttpStatus.OK);
+    }
+
+    private ResponseEntity<byte[]> binaryResponse(Object body, MediaType format, String nextCursor) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(format);
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (nextCursor != null) {
+            headers.set(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return new ResponseEntity<>(binaryFormats.write(format, body), headers, HttpStatus.OK);
+    }
+
+    private static void checkBatchSize(List<Long> ids) {
+        if (ids == null || ids.isEmpty() || ids.size() > MAX_BATCH_IDS) {
+            throw new BadRequestException("Between 1 and " + MAX_BATCH_IDS + " ids are required");
+        }
+        if (ids.contains(null)) {
+            throw new BadRequestException("Ids must not be empty");
+        }
+    }
+
+    private static int pageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("The limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    private static String emptyToNull(String value) {
+        return (value == null || value.isEmpty()) ? null : value;
+    }
+
+    private static BigDecimal zeroToNull(BigDecimal value) {
+        return (value == null || value.signum() == 0) ? null : value;
+    }
+
+    // Se consulta un elemento extra para saber si existe una pagina siguiente sin hacer un COUNT
+    private static <T> ResponseEntity<List<T>> pageResponse(List<T> page, int pageSize,
+            Function<T, ProductCursor> cursorOf) {
+        HttpHeaders headers = new HttpHeaders();
+        if (page.size() > pageSize) {
+            page = page.subList(0, pageSize);
+            headers.set(NEXT_CURSOR_HEADER, cursorOf.apply(page.get(pageSize - 1)).encode());
+        }
+        return new ResponseEntity<>(page, headers, HttpStatus.OK);
+    }
 }
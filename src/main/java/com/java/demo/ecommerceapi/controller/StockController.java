@@ -5,6 +5,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import com.java.demo.ecommerceapi.dto.StockLevelDTO;
 import com.java.demo.ecommerceapi.model.Stock;
 import com.java.demo.ecommerceapi.service.StockService;
 
@@ -86,4 +87,13 @@ public class StockController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
+
+    // Reparte la cantidad de la ubicacion en count filas para productos con muchas compras concurrentes
+    @PutMapping("/product/{productId}/location/{location}/shards")
+    public ResponseEntity<List<StockLevelDTO>> splitStock(
+            @PathVariable Long productId,
+            @PathVariable String location,
+            @RequestParam int count) {
+        return new ResponseEntity<>(stockService.splitStock(productId, location, count), HttpStatus.OK);
+    }
 }
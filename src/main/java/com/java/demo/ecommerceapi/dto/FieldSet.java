@@ -0,0 +1,53 @@
+package com.java.demo.ecommerceapi.dto;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.java.demo.ecommerceapi.exception.BadRequestException;
+
+/**
+ * Campos pedidos con ?fields=a,b,c, validados contra los que admite el recurso antes de consultar
+ * la base de datos. El id se incluye siempre: identifica la fila y es el cursor de las paginas.
+ */
+public final class FieldSet {
+
+    public static final String ID = "id";
+    // Ninguna seleccion valida es mas larga; evita partir cadenas arbitrarias
+    private static final int MAX_LENGTH = 256;
+
+    private final List<String> names;
+
+    private FieldSet(List<String> names) {
+        this.names = names;
+    }
+
+    public static FieldSet parse(String fields, List<String> allowed) {
+        if (fields == null || fields.length() > MAX_LENGTH) {
+            throw new BadRequestException("The 'fields' parameter must have at most " + MAX_LENGTH + " characters");
+        }
+        Set<String> requested = new HashSet<>();
+        requested.add(ID);
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!allowed.contains(name)) {
+                throw new BadRequestException("Unknown field '" + name + "'. Allowed fields: " + String.join(",", allowed));
+            }
+            requested.add(name);
+        }
+        // Se respeta el orden de los campos del recurso, no el de la peticion
+        return new FieldSet(allowed.stream().filter(requested::contains).toList());
+    }
+
+    public List<String> names() {
+        return names;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", names);
+    }
+}
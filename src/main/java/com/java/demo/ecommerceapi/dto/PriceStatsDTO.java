@@ -0,0 +1,20 @@
+package com.java.demo.ecommerceapi.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PriceStatsDTO {
+
+    private int count;
+    private BigDecimal min;
+    private BigDecimal max;
+    // Un elemento por rango de precio fijo, incluidos los vacios
+    private List<FacetCountDTO> histogram;
+}
@@ -0,0 +1,17 @@
+package com.java.demo.ecommerceapi.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductBatchDTO {
+
+    // En el orden en que se pidieron
+    private List<ProductDTO> products;
+    private List<Long> missing;
+}
@@ -0,0 +1,52 @@
+package com.java.demo.ecommerceapi.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.java.demo.ecommerceapi.exception.BadRequestException;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Cursor opaco para la paginacion por keyset de productos.
+ * El listado general usa solo el id; la busqueda usa el par (name, id).
+ */
+@Data
+@AllArgsConstructor
+public class ProductCursor {
+
+    private static final char SEPARATOR = ':';
+
+    private Long id;
+    private String name;
+
+    public static ProductCursor afterId(Long id) {
+        return new ProductCursor(id, null);
+    }
+
+    public static ProductCursor afterNameAndId(String name, Long id) {
+        return new ProductCursor(id, name);
+    }
+
+    public String encode() {
+        String raw = name == null ? String.valueOf(id) : id + String.valueOf(SEPARATOR) + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ProductCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator < 0) {
+                return afterId(Long.valueOf(raw));
+            }
+            return afterNameAndId(raw.substring(separator + 1), Long.valueOf(raw.substring(0, separator)));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor '" + cursor + "'");
+        }
+    }
+}
@@ -2,32 +2,59 @@ package com.java.demo.ecommerceapi.dto;
 
 import java.math.BigDecimal;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.java.demo.ecommerceapi.model.Product;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Value;
 
-@Data
-@NoArgsConstructor
-@AllArgsConstructor
+/**
+ * Inmutable: ProductCache y ProductResponseCache comparten la misma instancia entre peticiones.
+ */
+@Value
 public class ProductDTO {
 
-    private Long id;
-    private String name;
-    private String description;
-    private BigDecimal price;
-    private Long brandId;
-    private Long categoryId;
+    Long id;
+    String name;
+    // Solo viene en el detalle; los listados usan la proyeccion resumida y la omiten del JSON
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String description;
+    BigDecimal price;
+    Long brandId;
+    Long categoryId;
+    Long version;
 
-    public ProductDTO(Product product) {
-        this.id = product.getId();
-        this.name = product.getName();
-        this.description = product.getDescription();
-        this.price = product.getPrice();
-        this.brandId = product.getBrand().getId();
-        this.categoryId = product.getCategory().getId();
+    @JsonCreator
+    public ProductDTO(@JsonProperty("id") Long id, @JsonProperty("name") String name,
+            @JsonProperty("description") String description, @JsonProperty("price") BigDecimal price,
+            @JsonProperty("brandId") Long brandId, @JsonProperty("categoryId") Long categoryId,
+            @JsonProperty("version") Long version) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.price = price;
+        this.brandId = brandId;
+        this.categoryId = categoryId;
+        this.version = version;
+    }
+
+    public ProductDTO(Long id, String name, String description, BigDecimal price, Long brandId, Long categoryId) {
+        this(id, name, description, price, brandId, categoryId, null);
     }
 
-    
+    /**
+     * Resumen para listados: sin descripcion, que es una columna TEXT que ninguna vista de listado muestra.
+     * Lo usan las proyecciones ProductRepository.SELECT_SUMMARY y ProductSearchRepository.
+     */
+    public ProductDTO(Long id, String name, BigDecimal price, Long brandId, Long categoryId, Long version) {
+        this(id, name, null, price, brandId, categoryId, version);
+    }
+
+    public ProductDTO(Product product) {
+        this(product.getId(), product.getName(), product.getDescription(), product.getPrice(),
+                product.getBrand() != null ? product.getBrand().getId() : null,
+                product.getCategory() != null ? product.getCategory().getId() : null,
+                product.getVersion());
+    }
 }
@@ -0,0 +1,18 @@
+package com.java.demo.ecommerceapi.dto;
+
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSearchResultDTO {
+
+    private List<ProductDTO> products;
+    // Conteos por faceta ("category", "brand", "price") sobre el conjunto completo de resultados
+    private Map<String, List<FacetCountDTO>> facets;
+}
@@ -0,0 +1,18 @@
+package com.java.demo.ecommerceapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Cantidad de una fila de stock leida sin cargar la entidad: el descuento se escribe con
+// StockRepository.decrementIfAvailable y nunca con un save de la cantidad absoluta
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockLevelDTO {
+
+    private Long id;
+    private Long productId;
+    private String location;
+    private int quantity;
+}
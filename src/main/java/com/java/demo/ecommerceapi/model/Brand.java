@@ -6,16 +6,23 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import java.util.List;
 
+import org.hibernate.annotations.ColumnDefault;
+
+import com.java.demo.ecommerceapi.cache.CatalogChangeListener;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 @Entity
 @Table(name = "brands")
+@EntityListeners(CatalogChangeListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -32,4 +39,9 @@ public class Brand {
 
     @OneToMany(mappedBy = "brand")
     private List<Product> products;
+
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
 }
\ No newline at end of file
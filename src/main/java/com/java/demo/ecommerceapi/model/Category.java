@@ -7,8 +7,13 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import java.util.List;
 
+import org.hibernate.annotations.ColumnDefault;
+
+import com.java.demo.ecommerceapi.cache.CatalogChangeListener;
+
 @Entity
 @Table(name = "categories")
+@EntityListeners(CatalogChangeListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -24,4 +29,9 @@ public class Category {
 
     @OneToMany(mappedBy = "category")
     private List<Product> products;
+
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
 }
\ No newline at end of file
@@ -8,11 +8,19 @@ import lombok.NoArgsConstructor;
 import java.math.BigDecimal;
 import java.util.List;
 
+import org.hibernate.annotations.ColumnDefault;
+
+import com.java.demo.ecommerceapi.cache.CatalogChangeListener;
+
 import io.swagger.v3.oas.annotations.media.Schema;
 
 @Schema(description = "Información de un producto")
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_price", columnList = "price"),
+        @Index(name = "idx_products_name", columnList = "name")
+})
+@EntityListeners(CatalogChangeListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -30,6 +38,8 @@ public class Product {
     private String name;
 
     @Schema(description = "Descripcion del producto", example = "Dispositivo electonico portatil")
+    // Solo la lee el detalle; con el bytecode enhancement de Hibernate (ver pom.xml) no se carga al leer el producto
+    @Basic(fetch = FetchType.LAZY)
     @Column(nullable = false, columnDefinition = "TEXT")
     private String description;
 
@@ -54,4 +64,10 @@ public class Product {
     @Schema(description = "Relacion del producto en detalles de ordenes", example = "")
     @OneToMany(mappedBy = "product")
     private List<OrderDetail> orderDetails;
+
+    @Schema(description = "Version del producto, se incrementa en cada actualizacion", example = "3")
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
 }
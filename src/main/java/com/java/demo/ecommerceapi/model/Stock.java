@@ -6,8 +6,13 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import org.hibernate.annotations.ColumnDefault;
+
+import com.java.demo.ecommerceapi.cache.StockChangeListener;
+
 @Entity
 @Table(name = "stock")
+@EntityListeners(StockChangeListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -27,4 +32,14 @@ public class Stock {
 
     @Column(nullable = false)
     private String location;
+
+    // Subcontador de la misma ubicacion: la cantidad de un producto en una ubicacion puede repartirse en varias
+    // filas (0..n-1) para que las compras concurrentes no compitan por una sola. Las lecturas las suman
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private int shard;
+
+    public Stock(Long id, Product product, int quantity, String location) {
+        this(id, product, quantity, location, 0);
+    }
 }
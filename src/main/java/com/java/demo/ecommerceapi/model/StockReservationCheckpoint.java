@@ -0,0 +1,24 @@
+package com.java.demo.ecommerceapi.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Ultima secuencia del registro de reservas ya aplicada a la tabla stock. Se guarda en la misma
+// transaccion que los descuentos, asi la recuperacion nunca aplica dos veces un movimiento
+@Entity
+@Table(name = "stock_reservation_checkpoint")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservationCheckpoint {
+
+    public static final Long ID = 1L;
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private long lastSequence;
+}
@@ -1,5 +1,7 @@
 package com.java.demo.ecommerceapi.repository;
 
+import java.util.List;
+
 import com.java.demo.ecommerceapi.model.Category;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
@@ -7,4 +9,5 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface CategoryRepository extends JpaRepository<Category, Long> {
     Category findByName(String name);
+    List<Category> findByNameIgnoreCase(String name);
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package com.java.demo.ecommerceapi.repository;
 
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.java.demo.ecommerceapi.model.OrderDetail;
@@ -8,4 +11,12 @@ import com.java.demo.ecommerceapi.model.OrderDetail;
 @Repository
 public interface OrderDetailRepository extends JpaRepository<OrderDetail, Long> {
     // Agregar los que se consideren necesarios
-}
\ No newline at end of file
+
+    interface ProductUnitsSold {
+        Long getProductId();
+        Long getUnits();
+    }
+
+    @Query("SELECT d.product.id AS productId, SUM(d.quantity) AS units FROM OrderDetail d GROUP BY d.product.id")
+    List<ProductUnitsSold> sumUnitsSoldByProduct();
+}
@@ -0,0 +1,23 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.java.demo.ecommerceapi.dto.FieldSet;
+
+/**
+ * Fragmento de OrderRepository para las lecturas con ?fields=: solo se leen las columnas pedidas.
+ */
+public interface OrderFieldsRepository {
+
+    // Los mismos campos que OrderDTO
+    List<String> FIELDS = List.of("id", "userId", "orderDate", "totalAmount", "status");
+
+    /**
+     * Ordenes del usuario, ordenadas por id.
+     */
+    List<Map<String, Object>> findFieldsByUserId(Long userId, FieldSet fields);
+
+    Optional<Map<String, Object>> findFieldsById(Long id, FieldSet fields);
+}
@@ -0,0 +1,51 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.java.demo.ecommerceapi.dto.FieldSet;
+import com.java.demo.ecommerceapi.model.Order;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+
+class OrderFieldsRepositoryImpl implements OrderFieldsRepository {
+
+    private final EntityManager entityManager;
+
+    OrderFieldsRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<Map<String, Object>> findFieldsByUserId(Long userId, FieldSet fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Order> order = query.from(Order.class);
+        SparseFields.select(query, order, fields, OrderFieldsRepositoryImpl::path);
+        query.where(cb.equal(order.get("user").get("id"), userId));
+        query.orderBy(cb.asc(order.get("id")));
+
+        return SparseFields.toMaps(entityManager.createQuery(query).getResultList(), fields);
+    }
+
+    @Override
+    public Optional<Map<String, Object>> findFieldsById(Long id, FieldSet fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Order> order = query.from(Order.class);
+        SparseFields.select(query, order, fields, OrderFieldsRepositoryImpl::path);
+        query.where(cb.equal(order.get("id"), id));
+
+        return SparseFields.toMaps(entityManager.createQuery(query).getResultList(), fields).stream().findFirst();
+    }
+
+    private static Path<?> path(Root<Order> order, String field) {
+        return "userId".equals(field) ? order.get("user").get("id") : order.get(field);
+    }
+}
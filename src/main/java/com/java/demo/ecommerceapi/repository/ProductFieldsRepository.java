@@ -0,0 +1,23 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.java.demo.ecommerceapi.dto.FieldSet;
+
+/**
+ * Fragmento de ProductRepository para las lecturas con ?fields=: solo se leen las columnas pedidas.
+ */
+public interface ProductFieldsRepository {
+
+    // Los mismos campos que ProductDTO
+    List<String> FIELDS = List.of("id", "name", "description", "price", "brandId", "categoryId", "version");
+
+    /**
+     * Productos con id mayor a afterId, ordenados por id; limit 0 los devuelve todos.
+     */
+    List<Map<String, Object>> findFieldsAfterId(Long afterId, FieldSet fields, int limit);
+
+    Optional<Map<String, Object>> findFieldsById(Long id, FieldSet fields);
+}
@@ -0,0 +1,63 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.java.demo.ecommerceapi.dto.FieldSet;
+import com.java.demo.ecommerceapi.model.Product;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+
+class ProductFieldsRepositoryImpl implements ProductFieldsRepository {
+
+    private final EntityManager entityManager;
+
+    ProductFieldsRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<Map<String, Object>> findFieldsAfterId(Long afterId, FieldSet fields, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Product> product = query.from(Product.class);
+        SparseFields.select(query, product, fields, ProductFieldsRepositoryImpl::path);
+        if (afterId != null) {
+            query.where(cb.greaterThan(product.get("id"), afterId));
+        }
+        query.orderBy(cb.asc(product.get("id")));
+
+        TypedQuery<Tuple> typed = entityManager.createQuery(query);
+        if (limit > 0) {
+            typed.setMaxResults(limit);
+        }
+        return SparseFields.toMaps(typed.getResultList(), fields);
+    }
+
+    @Override
+    public Optional<Map<String, Object>> findFieldsById(Long id, FieldSet fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Product> product = query.from(Product.class);
+        SparseFields.select(query, product, fields, ProductFieldsRepositoryImpl::path);
+        query.where(cb.equal(product.get("id"), id));
+
+        return SparseFields.toMaps(entityManager.createQuery(query).getResultList(), fields).stream().findFirst();
+    }
+
+    // brand.id y category.id son la clave foranea de la fila: no generan join
+    private static Path<?> path(Root<Product> product, String field) {
+        return switch (field) {
+            case "brandId" -> product.get("brand").get("id");
+            case "categoryId" -> product.get("category").get("id");
+            default -> product.get(field);
+        };
+    }
+}
@@ -1,37 +1,65 @@
 package com.java.demo.ecommerceapi.repository;
 
+import com.java.demo.ecommerceapi.dto.ProductDTO;
 import com.java.demo.ecommerceapi.model.Product;
+
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductSearchRepository, ProductFieldsRepository {
+
+    // Proyeccion directa a DTO: una sola sentencia por pagina, sin hidratar entidades ni proxies de Brand/Category
+    String SELECT_DTO = "SELECT new com.java.demo.ecommerceapi.dto.ProductDTO(" +
+            "p.id, p.name, p.description, p.price, p.brand.id, p.category.id, p.version) FROM Product p ";
+    // Proyeccion de listado: la misma sin la descripcion (columna TEXT), que solo se devuelve en el detalle
+    String SELECT_SUMMARY = "SELECT new com.java.demo.ecommerceapi.dto.ProductDTO(" +
+            "p.id, p.name, p.price, p.brand.id, p.category.id, p.version) FROM Product p ";
+
     Optional<Product> findByName(String name);
-    List<Product> findByNameContainingIgnoreCase(String name);
-    List<Product> findByCategoryNameIgnoreCase(String categoryName);
-
-    @Query("SELECT p FROM Product p WHERE p.price >= :minPrice")
-    List<Product> findByPriceMinimun(@Param("minPrice") BigDecimal minPrice);
-
-    @Query("SELECT p FROM Product p WHERE p.price <= :maxPrice")
-    List<Product> findByPriceMaximun(@Param("maxPrice") BigDecimal maxPrice);
-
-    @Query("SELECT p FROM Product p WHERE p.price BETWEEN :minPrice AND :maxPrice")
-    List<Product> findByPriceBetween(@Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice);
-
-    @Query("SELECT p FROM Product p WHERE " +
-           "(:name is null or lower(p.name) like lower(concat('%', :name, '%'))) and " +
-           "(:categoryName is null or lower(p.category.name) = lower(:categoryName)) and " +
-           "(:minPrice is null or p.price >= :minPrice) and " +
-           "(:maxPrice is null or p.price <= :maxPrice) ORDER BY p.name ASC")
-    List<Product> findByFilters(
-            @Param("name") String name,
-            @Param("categoryName") String categoryName,
-            @Param("minPrice") BigDecimal minPrice,
-            @Param("maxPrice") BigDecimal maxPrice);
+
+    @Query(SELECT_SUMMARY + "ORDER BY p.id ASC")
+    List<ProductDTO> findAllAsDTO();
+
+    @Query(SELECT_DTO + "WHERE p.id = :id")
+    Optional<ProductDTO> findDTOById(@Param("id") Long id);
+
+    @Query(SELECT_SUMMARY + "WHERE lower(p.name) like lower(concat('%', :name, '%')) ORDER BY p.id ASC")
+    List<ProductDTO> findByNameContainingIgnoreCase(@Param("name") String name);
+
+    // Para los conteos por faceta cuando el nombre buscado no tiene terminos que el indice pueda resolver
+    @Query("SELECT p.id FROM Product p WHERE lower(p.name) like lower(concat('%', :name, '%'))")
+    List<Long> findIdsByNameContainingIgnoreCase(@Param("name") String name);
+
+    @Query(SELECT_SUMMARY + "WHERE lower(p.category.name) = lower(:categoryName) ORDER BY p.id ASC")
+    List<ProductDTO> findByCategoryNameIgnoreCase(@Param("categoryName") String categoryName);
+
+    // Lectura completa de varios productos por id, para la consulta por lotes que alimenta el cache de detalle
+    @Query(SELECT_DTO + "WHERE p.id IN :ids ORDER BY p.id ASC")
+    List<ProductDTO> findByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Ids candidatos ya resueltos por el indice en memoria (ver ProductSearchIndex); las busquedas con filtros
+    // se arman en ProductSearchRepository
+    @Query(SELECT_SUMMARY + "WHERE p.id IN :ids ORDER BY p.id ASC")
+    List<ProductDTO> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Paginacion por keyset: nunca usa OFFSET, el costo no depende de la profundidad de la pagina
+    @Query(SELECT_SUMMARY + "WHERE p.id > :afterId ORDER BY p.id ASC")
+    List<ProductDTO> findPageAfterId(@Param("afterId") Long afterId, Limit limit);
+
+    // Lectura en streaming para la exportacion: proyeccion a DTO (sin entidades administradas) y fetch size acotado
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(SELECT_DTO + "ORDER BY p.id ASC")
+    Stream<ProductDTO> streamAllAsDTO();
 }
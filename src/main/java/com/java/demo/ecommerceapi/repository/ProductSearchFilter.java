@@ -0,0 +1,23 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+
+/**
+ * Filtros de una busqueda de productos. Los valores null (e inStock = false) significan
+ * "sin filtro" y no generan ningun predicado en la consulta.
+ * ids son los candidatos ya resueltos por los indices en memoria, que tambien resuelven el nombre
+ * (sin distinguir acentos, ver ProductSearchIndex.matchNameContaining); la consulta aplica el resto de los filtros.
+ */
+public record ProductSearchFilter(String name, String categoryName, BigDecimal minPrice, BigDecimal maxPrice,
+        Long brandId, boolean inStock, Collection<Long> ids) {
+
+    public static ProductSearchFilter of(String name, String categoryName, BigDecimal minPrice, BigDecimal maxPrice,
+            Long brandId, boolean inStock) {
+        return new ProductSearchFilter(name, categoryName, minPrice, maxPrice, brandId, inStock, null);
+    }
+
+    public ProductSearchFilter withIds(Collection<Long> candidateIds) {
+        return new ProductSearchFilter(null, categoryName, minPrice, maxPrice, brandId, inStock, candidateIds);
+    }
+}
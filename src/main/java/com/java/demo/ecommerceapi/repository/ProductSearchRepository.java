@@ -0,0 +1,24 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.util.List;
+
+import com.java.demo.ecommerceapi.dto.ProductCursor;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+
+/**
+ * Fragmento de ProductRepository con la busqueda dinamica: la consulta se arma con Criteria
+ * a partir de los filtros presentes, en lugar de predicados ":x is null or ..." que impiden usar indices.
+ * Devuelve productos resumidos, sin descripcion.
+ */
+public interface ProductSearchRepository {
+
+    /**
+     * Todos los productos que cumplen el filtro, ordenados por id como el listado completo.
+     */
+    List<ProductDTO> search(ProductSearchFilter filter);
+
+    /**
+     * Una pagina de productos que cumplen el filtro, ordenados por nombre e id, a partir del cursor si se indica.
+     */
+    List<ProductDTO> searchPage(ProductSearchFilter filter, ProductCursor after, int limit);
+}
@@ -0,0 +1,58 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.util.List;
+
+import com.java.demo.ecommerceapi.dto.ProductCursor;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.model.Product;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+class ProductSearchRepositoryImpl implements ProductSearchRepository {
+
+    private final EntityManager entityManager;
+
+    ProductSearchRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<ProductDTO> search(ProductSearchFilter filter) {
+        return query(filter, null, false, 0);
+    }
+
+    @Override
+    public List<ProductDTO> searchPage(ProductSearchFilter filter, ProductCursor after, int limit) {
+        return query(filter, after, true, limit);
+    }
+
+    private List<ProductDTO> query(ProductSearchFilter filter, ProductCursor after, boolean byName, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ProductDTO> query = cb.createQuery(ProductDTO.class);
+        Root<Product> product = query.from(Product.class);
+        // Misma proyeccion que ProductRepository.SELECT_SUMMARY
+        query.select(cb.construct(ProductDTO.class,
+                product.get("id"), product.get("name"), product.get("price"),
+                product.get("brand").get("id"), product.get("category").get("id"), product.get("version")));
+        Predicate where = ProductSpecifications.matching(filter, after).toPredicate(product, query, cb);
+        if (where != null) {
+            query.where(where);
+        }
+        if (byName) {
+            query.orderBy(cb.asc(product.get("name")), cb.asc(product.get("id")));
+        } else {
+            query.orderBy(cb.asc(product.get("id")));
+        }
+
+        TypedQuery<ProductDTO> typed = entityManager.createQuery(query);
+        if (limit > 0) {
+            typed.setMaxResults(limit);
+        }
+        return typed.getResultList();
+    }
+}
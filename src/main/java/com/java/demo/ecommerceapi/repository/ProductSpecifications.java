@@ -0,0 +1,111 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.java.demo.ecommerceapi.dto.ProductCursor;
+import com.java.demo.ecommerceapi.model.Category;
+import com.java.demo.ecommerceapi.model.Product;
+import com.java.demo.ecommerceapi.model.Stock;
+
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+
+/**
+ * Predicados de busqueda de productos. Cada uno se expresa de forma que la base de datos pueda
+ * resolverlo con un indice: ids por clave primaria, marca y categoria por su clave foranea,
+ * precio por idx_products_price y stock como subconsulta sobre la tabla de stock.
+ */
+public final class ProductSpecifications {
+
+    private ProductSpecifications() {
+    }
+
+    /**
+     * Combina solo los filtros presentes; sin filtros no agrega ningun predicado.
+     */
+    public static Specification<Product> matching(ProductSearchFilter filter, ProductCursor after) {
+        List<Specification<Product>> specifications = new ArrayList<>();
+        if (filter.ids() != null) {
+            specifications.add(idIn(filter.ids()));
+        }
+        if (filter.name() != null && !filter.name().isEmpty()) {
+            specifications.add(nameContains(filter.name()));
+        }
+        if (filter.categoryName() != null && !filter.categoryName().isEmpty()) {
+            specifications.add(categoryNamed(filter.categoryName()));
+        }
+        if (filter.minPrice() != null) {
+            specifications.add(priceAtLeast(filter.minPrice()));
+        }
+        if (filter.maxPrice() != null) {
+            specifications.add(priceAtMost(filter.maxPrice()));
+        }
+        if (filter.brandId() != null) {
+            specifications.add(brand(filter.brandId()));
+        }
+        if (filter.inStock()) {
+            specifications.add(inStock());
+        }
+        if (after != null && after.getName() != null) {
+            specifications.add(afterNameAndId(after.getName(), after.getId()));
+        }
+        return Specification.allOf(specifications);
+    }
+
+    public static Specification<Product> idIn(Collection<Long> ids) {
+        return (root, query, cb) -> root.get("id").in(ids);
+    }
+
+    // Subcadena literal sin distinguir mayusculas (% y _ no son comodines): ningun indice B-tree la
+    // resuelve, por eso el servicio prefiere acotar por los ids del indice invertido cuando puede
+    public static Specification<Product> nameContains(String name) {
+        String escaped = name.toLowerCase(Locale.ROOT).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        String pattern = "%" + escaped + "%";
+        return (root, query, cb) -> cb.like(cb.lower(root.get("name")), pattern, '\\');
+    }
+
+    // La categoria se resuelve primero a su id, asi products se recorre por category_id
+    public static Specification<Product> categoryNamed(String categoryName) {
+        String name = categoryName.toLowerCase(Locale.ROOT);
+        return (root, query, cb) -> {
+            Subquery<Long> categories = query.subquery(Long.class);
+            Root<Category> category = categories.from(Category.class);
+            categories.select(category.get("id")).where(cb.equal(cb.lower(category.get("name")), name));
+            return root.get("category").get("id").in(categories);
+        };
+    }
+
+    public static Specification<Product> priceAtLeast(BigDecimal minPrice) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("price"), minPrice);
+    }
+
+    public static Specification<Product> priceAtMost(BigDecimal maxPrice) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("price"), maxPrice);
+    }
+
+    public static Specification<Product> brand(Long brandId) {
+        return (root, query, cb) -> cb.equal(root.get("brand").get("id"), brandId);
+    }
+
+    public static Specification<Product> inStock() {
+        return (root, query, cb) -> {
+            Subquery<Long> stocked = query.subquery(Long.class);
+            Root<Stock> stock = stocked.from(Stock.class);
+            stocked.select(stock.get("product").get("id")).where(cb.greaterThan(stock.get("quantity"), 0));
+            return root.get("id").in(stocked);
+        };
+    }
+
+    // Keyset sobre (name, id), el mismo orden en que se devuelven los resultados
+    public static Specification<Product> afterNameAndId(String afterName, Long afterId) {
+        return (root, query, cb) -> cb.or(
+                cb.greaterThan(root.get("name"), afterName),
+                cb.and(cb.equal(root.get("name"), afterName), cb.greaterThan(root.get("id"), afterId)));
+    }
+}
@@ -0,0 +1,46 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import com.java.demo.ecommerceapi.dto.FieldSet;
+
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+
+/**
+ * Proyeccion con solo los campos pedidos: el SELECT lleva una columna por campo y cada fila se
+ * devuelve como un mapa campo -> valor, listo para serializar sin los campos omitidos.
+ */
+final class SparseFields {
+
+    private SparseFields() {
+    }
+
+    static <E> void select(CriteriaQuery<Tuple> query, Root<E> root, FieldSet fields,
+            BiFunction<Root<E>, String, Path<?>> pathOf) {
+        List<Selection<?>> selections = new ArrayList<>(fields.names().size());
+        for (String field : fields.names()) {
+            selections.add(pathOf.apply(root, field).alias(field));
+        }
+        query.multiselect(selections);
+    }
+
+    static List<Map<String, Object>> toMaps(List<Tuple> rows, FieldSet fields) {
+        List<Map<String, Object>> maps = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (String field : fields.names()) {
+                map.put(field, row.get(field));
+            }
+            maps.add(map);
+        }
+        return maps;
+    }
+}
@@ -0,0 +1,15 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.util.List;
+
+/**
+ * Fragmento de StockRepository con el descuento condicional de varias filas en un solo lote JDBC.
+ */
+public interface StockDecrementRepository {
+
+    /**
+     * Descuenta quantities.get(i) de la fila ids.get(i) si todavia tiene esa cantidad, en el orden recibido.
+     * Devuelve para cada fila 1 si se desconto y 0 si ya no alcanzaba, como decrementIfAvailable.
+     */
+    int[] decrementAllIfAvailable(List<Long> ids, List<Integer> quantities);
+}
@@ -0,0 +1,54 @@
+package com.java.demo.ecommerceapi.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import jakarta.persistence.EntityManager;
+
+class StockDecrementRepositoryImpl implements StockDecrementRepository {
+
+    private static final String DECREMENT_IF_AVAILABLE =
+            "UPDATE stock SET quantity = quantity - ? WHERE id = ? AND quantity >= ?";
+
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    StockDecrementRepositoryImpl(EntityManager entityManager, JdbcTemplate jdbcTemplate) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int[] decrementAllIfAvailable(List<Long> ids, List<Integer> quantities) {
+        if (ids.isEmpty()) {
+            return new int[0];
+        }
+        // Igual que flushAutomatically en decrementIfAvailable: los cambios pendientes llegan antes del lote
+        entityManager.flush();
+        int[] updated = jdbcTemplate.batchUpdate(DECREMENT_IF_AVAILABLE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                statement.setInt(1, quantities.get(i));
+                statement.setLong(2, ids.get(i));
+                statement.setInt(3, quantities.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return ids.size();
+            }
+        });
+        for (int count : updated) {
+            // Sin la cuenta de cada sentencia no se sabe que filas alcanzaban
+            if (count == Statement.SUCCESS_NO_INFO) {
+                throw new IllegalStateException("The JDBC driver did not report the update count of each stock row");
+            }
+        }
+        return updated;
+    }
+}
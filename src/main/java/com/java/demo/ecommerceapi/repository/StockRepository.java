@@ -1,15 +1,85 @@
 package com.java.demo.ecommerceapi.repository;
 
+import com.java.demo.ecommerceapi.dto.StockLevelDTO;
 import com.java.demo.ecommerceapi.model.Stock;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface StockRepository extends JpaRepository<Stock, Long> {
-    Optional<Stock> findByProductIdAndLocation(Long productId, String location);
+public interface StockRepository extends JpaRepository<Stock, Long>, StockDecrementRepository {
+    // Fila principal (shard 0) de un producto en una ubicacion; las demas filas de esa ubicacion son subcontadores
+    @Query("SELECT s FROM Stock s WHERE s.product.id = :productId AND s.location = :location AND s.shard = 0")
+    Optional<Stock> findByProductIdAndLocation(@Param("productId") Long productId, @Param("location") String location);
     List<Stock> findByProductId(Long productId);
+
+    @Query("SELECT s FROM Stock s WHERE s.product.id = :productId AND s.location = :location ORDER BY s.shard ASC")
+    List<Stock> findShardsByProductIdAndLocation(@Param("productId") Long productId, @Param("location") String location);
+
+    @Query("SELECT new com.java.demo.ecommerceapi.dto.StockLevelDTO(s.id, s.product.id, s.location, s.quantity) FROM Stock s " +
+            "WHERE s.product.id = :productId AND s.location = :location ORDER BY s.shard ASC")
+    List<StockLevelDTO> findShardLevels(@Param("productId") Long productId, @Param("location") String location);
+
+    // Filas de todas las ubicaciones repartidas en mas de un subcontador, agrupadas por producto y ubicacion
+    @Query("SELECT new com.java.demo.ecommerceapi.dto.StockLevelDTO(s.id, s.product.id, s.location, s.quantity) FROM Stock s " +
+            "WHERE EXISTS (SELECT o.id FROM Stock o WHERE o.product = s.product AND o.location = s.location AND o.shard > 0) " +
+            "ORDER BY s.product.id ASC, s.location ASC, s.shard ASC")
+    List<StockLevelDTO> findShardedLevels();
+
+    // Todas las filas de stock de varios productos en una consulta, en el orden en que se descuentan
+    @Query("SELECT new com.java.demo.ecommerceapi.dto.StockLevelDTO(s.id, s.product.id, s.location, s.quantity) FROM Stock s " +
+            "WHERE s.product.id IN :productIds ORDER BY s.product.id ASC, s.id ASC")
+    List<StockLevelDTO> findLevelsByProductIdIn(@Param("productIds") Collection<Long> productIds);
+
+    @Query("SELECT new com.java.demo.ecommerceapi.dto.StockLevelDTO(s.id, s.product.id, s.location, s.quantity) FROM Stock s " +
+            "ORDER BY s.id ASC")
+    List<StockLevelDTO> findAllLevels();
+
+    @Query("SELECT s.quantity FROM Stock s WHERE s.id = :id")
+    Optional<Integer> findQuantityById(@Param("id") Long id);
+
+    // Descuento condicional en una sola sentencia: devuelve 0 si la fila ya no tiene la cantidad pedida.
+    // La base de datos evalua la condicion sobre el valor vigente de la fila, sin leerla antes ni bloquearla
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Stock s SET s.quantity = s.quantity - :quantity WHERE s.id = :id AND s.quantity >= :quantity")
+    int decrementIfAvailable(@Param("id") Long id, @Param("quantity") int quantity);
+
+    // Descuento sin condicion, para movimientos ya validados en memoria (ver StockReservationEngine)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Stock s SET s.quantity = s.quantity - :quantity WHERE s.id = :id")
+    int decrement(@Param("id") Long id, @Param("quantity") int quantity);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Stock s SET s.quantity = s.quantity + :quantity WHERE s.id = :id")
+    int increment(@Param("id") Long id, @Param("quantity") int quantity);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Stock s SET s.quantity = 0 WHERE s.product.id = :productId AND s.location = :location AND s.shard > 0")
+    int clearShards(@Param("productId") Long productId, @Param("location") String location);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM Stock s WHERE s.product.id = :productId AND s.location = :location AND s.shard > 0")
+    int deleteShards(@Param("productId") Long productId, @Param("location") String location);
+
+    // Solo borra la fila si ya no tiene unidades (una compra concurrente pudo dejarla en cero, nunca al reves)
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM Stock s WHERE s.id = :id AND s.quantity = 0")
+    int deleteIfEmpty(@Param("id") Long id);
+
+    @Query("SELECT COALESCE(SUM(s.quantity), 0) FROM Stock s WHERE s.product.id = :productId")
+    long sumQuantityByProductId(@Param("productId") Long productId);
+
+    // Pares (id de producto, cantidad total) de varios productos en una consulta
+    @Query("SELECT s.product.id, COALESCE(SUM(s.quantity), 0) FROM Stock s WHERE s.product.id IN :productIds GROUP BY s.product.id")
+    List<Object[]> sumQuantityByProductIdIn(@Param("productIds") Collection<Long> productIds);
+
+    @Query("SELECT s.product.id FROM Stock s GROUP BY s.product.id HAVING SUM(s.quantity) > 0")
+    List<Long> findProductIdsInStock();
 }
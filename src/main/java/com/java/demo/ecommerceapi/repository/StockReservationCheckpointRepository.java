@@ -0,0 +1,10 @@
+package com.java.demo.ecommerceapi.repository;
+
+import com.java.demo.ecommerceapi.model.StockReservationCheckpoint;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StockReservationCheckpointRepository extends JpaRepository<StockReservationCheckpoint, Long> {
+}
@@ -0,0 +1,22 @@
+package com.java.demo.ecommerceapi.reservation;
+
+import java.util.List;
+
+/**
+ * Resultado de ReservationLedger.reserve: los movimientos registrados o, si algun producto no alcanzo,
+ * su id y ningun movimiento.
+ */
+public record Reservation(List<ReservationRecord> records, Long shortProductId) {
+
+    static Reservation reserved(List<ReservationRecord> records) {
+        return new Reservation(List.copyOf(records), null);
+    }
+
+    static Reservation insufficient(Long productId) {
+        return new Reservation(List.of(), productId);
+    }
+
+    public boolean isReserved() {
+        return shortProductId == null;
+    }
+}
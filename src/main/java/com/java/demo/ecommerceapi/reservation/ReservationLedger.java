@@ -0,0 +1,326 @@
+package com.java.demo.ecommerceapi.reservation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.java.demo.ecommerceapi.dto.StockLevelDTO;
+
+/**
+ * Cantidades disponibles por fila de stock (producto y ubicacion) en memoria. Las filas se protegen con
+ * candados por franjas: una reserva toma en orden ascendente los candados de las franjas de todas sus filas,
+ * verifica que cada producto alcance, escribe sus movimientos en el ReservationLog y recien entonces descuenta.
+ * Los movimientos quedan en una cola hasta que drain() los entrega para aplicarlos a la base de datos.
+ */
+public final class ReservationLedger implements Closeable {
+
+    private static final int STRIPES = 64;
+    private static final long[] NO_ROWS = new long[0];
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final ConcurrentHashMap<Long, Row> rows = new ConcurrentHashMap<>();
+    // Filas de cada producto en orden de id, que es el orden en que se descuentan
+    private final ConcurrentHashMap<Long, long[]> rowsByProduct = new ConcurrentHashMap<>();
+    private final ReservationLog log;
+    // Protege la secuencia, la cola y el archivo; siempre se toma despues de los candados de las filas
+    private final Object logLock = new Object();
+    private long nextSequence;
+    private List<ReservationRecord> pending = new ArrayList<>();
+
+    private static final class Row {
+        // Solo se lee o modifica con el candado de la franja de la fila
+        private int available;
+
+        private Row(int available) {
+            this.available = available;
+        }
+    }
+
+    public ReservationLedger(ReservationLog log, long nextSequence) {
+        this.log = log;
+        this.nextSequence = nextSequence;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /** Reemplaza todas las filas por las indicadas. */
+    public void load(List<StockLevelDTO> levels) {
+        int[] all = new int[STRIPES];
+        Arrays.setAll(all, i -> i);
+        lock(all);
+        try {
+            rows.clear();
+            rowsByProduct.clear();
+            put(levels, Map.of());
+        } finally {
+            unlock(all);
+        }
+    }
+
+    /**
+     * Reemplaza las filas de los productos indicados por las leidas de la base de datos, descontando los
+     * movimientos que todavia estan en la cola. Quien llama debe asegurar que no haya movimientos drenados
+     * pendientes de aplicar, porque esos ya no estan en la cola ni todavia en la base de datos.
+     */
+    public void reload(Collection<Long> productIds, List<StockLevelDTO> levels) {
+        Set<Long> stockIds = new HashSet<>();
+        for (Long productId : productIds) {
+            for (long stockId : rowsByProduct.getOrDefault(productId, NO_ROWS)) {
+                stockIds.add(stockId);
+            }
+        }
+        for (StockLevelDTO level : levels) {
+            stockIds.add(level.getId());
+        }
+        int[] locked = stripesOf(stockIds);
+        lock(locked);
+        try {
+            Map<Long, Integer> unflushed = new HashMap<>();
+            synchronized (logLock) {
+                for (ReservationRecord record : pending) {
+                    if (stockIds.contains(record.stockId())) {
+                        unflushed.merge(record.stockId(), record.quantity(), Integer::sum);
+                    }
+                }
+            }
+            for (Long productId : productIds) {
+                for (long stockId : rowsByProduct.getOrDefault(productId, NO_ROWS)) {
+                    rows.remove(stockId);
+                }
+                rowsByProduct.remove(productId);
+            }
+            put(levels, unflushed);
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    /**
+     * Reserva las cantidades pedidas por producto. Si algun producto no alcanza no se reserva nada y el
+     * resultado indica cual fue.
+     *
+     * @throws UncheckedIOException si no se pudo escribir el registro; la reserva no se aplica
+     */
+    public Reservation reserve(Map<Long, Integer> requested) {
+        while (true) {
+            Map<Long, long[]> productRows = new HashMap<>();
+            Set<Long> stockIds = new HashSet<>();
+            for (Long productId : requested.keySet()) {
+                long[] ids = rowsByProduct.getOrDefault(productId, NO_ROWS);
+                productRows.put(productId, ids);
+                for (long stockId : ids) {
+                    stockIds.add(stockId);
+                }
+            }
+            int[] locked = stripesOf(stockIds);
+            lock(locked);
+            try {
+                if (changed(productRows)) {
+                    // Un reload cambio las filas de algun producto antes de tomar los candados
+                    continue;
+                }
+                for (Map.Entry<Long, Integer> entry : requested.entrySet()) {
+                    if (available(productRows.get(entry.getKey())) < entry.getValue()) {
+                        return Reservation.insufficient(entry.getKey());
+                    }
+                }
+                List<ReservationRecord> records = new ArrayList<>();
+                synchronized (logLock) {
+                    for (Map.Entry<Long, Integer> entry : requested.entrySet()) {
+                        int missing = entry.getValue();
+                        for (long stockId : productRows.get(entry.getKey())) {
+                            int taken = Math.min(missing, rows.get(stockId).available);
+                            if (taken > 0) {
+                                records.add(new ReservationRecord(nextSequence++, stockId, taken));
+                                missing -= taken;
+                            }
+                        }
+                    }
+                    append(records);
+                    pending.addAll(records);
+                }
+                for (ReservationRecord record : records) {
+                    rows.get(record.stockId()).available -= record.quantity();
+                }
+                return Reservation.reserved(records);
+            } finally {
+                unlock(locked);
+            }
+        }
+    }
+
+    /**
+     * Devuelve las unidades de una reserva que no llego a confirmarse, registrando el movimiento inverso.
+     * Si el registro falla las unidades igual vuelven a memoria y a la cola antes de lanzar la excepcion.
+     */
+    public void release(Reservation reservation) {
+        Set<Long> stockIds = new HashSet<>();
+        for (ReservationRecord record : reservation.records()) {
+            stockIds.add(record.stockId());
+        }
+        int[] locked = stripesOf(stockIds);
+        lock(locked);
+        try {
+            List<ReservationRecord> records = new ArrayList<>();
+            IOException failure = null;
+            synchronized (logLock) {
+                for (ReservationRecord record : reservation.records()) {
+                    records.add(new ReservationRecord(nextSequence++, record.stockId(), -record.quantity()));
+                }
+                try {
+                    log.append(records);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                pending.addAll(records);
+            }
+            for (ReservationRecord record : reservation.records()) {
+                Row row = rows.get(record.stockId());
+                if (row != null) {
+                    row.available += record.quantity();
+                }
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Could not write the stock reservation log", failure);
+            }
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    /** Unidades disponibles de un producto sumando todas sus ubicaciones. */
+    public long available(Long productId) {
+        long[] ids = rowsByProduct.getOrDefault(productId, NO_ROWS);
+        Set<Long> stockIds = new HashSet<>();
+        for (long stockId : ids) {
+            stockIds.add(stockId);
+        }
+        int[] locked = stripesOf(stockIds);
+        lock(locked);
+        try {
+            return available(ids);
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    /** Saca de la cola todos los movimientos, en orden de secuencia. */
+    public List<ReservationRecord> drain() {
+        synchronized (logLock) {
+            List<ReservationRecord> drained = pending;
+            pending = new ArrayList<>();
+            return drained;
+        }
+    }
+
+    /** Devuelve al frente de la cola movimientos drenados que no se pudieron aplicar. */
+    public void requeue(List<ReservationRecord> drained) {
+        synchronized (logLock) {
+            List<ReservationRecord> merged = new ArrayList<>(drained);
+            merged.addAll(pending);
+            pending = merged;
+        }
+    }
+
+    /**
+     * Vacia el archivo si no quedan movimientos en la cola. Solo debe llamarse despues de aplicar todo
+     * lo drenado: a partir de ahi el archivo ya no tiene nada que no este en la base de datos.
+     */
+    public void truncateLogIfIdle() throws IOException {
+        synchronized (logLock) {
+            if (pending.isEmpty()) {
+                log.truncate();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (logLock) {
+            log.close();
+        }
+    }
+
+    private void put(List<StockLevelDTO> levels, Map<Long, Integer> unflushed) {
+        Map<Long, List<Long>> byProduct = new HashMap<>();
+        for (StockLevelDTO level : levels) {
+            rows.put(level.getId(), new Row(level.getQuantity() - unflushed.getOrDefault(level.getId(), 0)));
+            byProduct.computeIfAbsent(level.getProductId(), id -> new ArrayList<>()).add(level.getId());
+        }
+        for (Map.Entry<Long, List<Long>> entry : byProduct.entrySet()) {
+            long[] ids = entry.getValue().stream().mapToLong(Long::longValue).sorted().toArray();
+            rowsByProduct.put(entry.getKey(), ids);
+        }
+    }
+
+    private boolean changed(Map<Long, long[]> productRows) {
+        for (Map.Entry<Long, long[]> entry : productRows.entrySet()) {
+            long[] current = rowsByProduct.getOrDefault(entry.getKey(), NO_ROWS);
+            if (current != entry.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long available(long[] ids) {
+        long total = 0;
+        for (long stockId : ids) {
+            total += Math.max(0, rows.get(stockId).available);
+        }
+        return total;
+    }
+
+    private void append(List<ReservationRecord> records) {
+        try {
+            log.append(records);
+        } catch (IOException e) {
+            // Las secuencias ya usadas no se reutilizan: alguna linea pudo haber quedado escrita
+            throw new UncheckedIOException("Could not write the stock reservation log", e);
+        }
+    }
+
+    // Franjas de las filas indicadas, sin repetir y en orden ascendente para no bloquearse entre reservas
+    private static int[] stripesOf(Collection<Long> stockIds) {
+        boolean[] used = new boolean[STRIPES];
+        int count = 0;
+        for (Long stockId : stockIds) {
+            int stripe = Long.hashCode(stockId) & (STRIPES - 1);
+            if (!used[stripe]) {
+                used[stripe] = true;
+                count++;
+            }
+        }
+        int[] locked = new int[count];
+        int next = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            if (used[stripe]) {
+                locked[next++] = stripe;
+            }
+        }
+        return locked;
+    }
+
+    private void lock(int[] locked) {
+        for (int stripe : locked) {
+            stripes[stripe].lock();
+        }
+    }
+
+    private void unlock(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            stripes[locked[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.java.demo.ecommerceapi.reservation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Archivo de solo agregado con una linea "secuencia idStock cantidad" por movimiento. Los movimientos de una
+ * reserva se escriben con una sola llamada antes de confirmarla; con sync = true ademas se fuerzan a disco, lo
+ * que tambien cubre una caida del sistema operativo a costa de una escritura sincronica por reserva.
+ * Quien lo usa serializa las escrituras.
+ */
+public final class ReservationLog implements Closeable {
+
+    private final FileChannel channel;
+    private final boolean sync;
+    private final StringBuilder line = new StringBuilder(64);
+
+    public ReservationLog(Path path, boolean sync) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.sync = sync;
+    }
+
+    /**
+     * Movimientos completos del archivo, en el orden en que se escribieron. Una ultima linea sin salto
+     * (caida durante la escritura) se descarta: esa reserva nunca llego a confirmarse.
+     */
+    public static List<ReservationRecord> read(Path path) throws IOException {
+        List<ReservationRecord> records = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return records;
+        }
+        String content = Files.readString(path, StandardCharsets.US_ASCII);
+        int start = 0;
+        for (int end = content.indexOf('\n'); end >= 0; end = content.indexOf('\n', start)) {
+            String[] fields = content.substring(start, end).split(" ");
+            records.add(new ReservationRecord(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                    Integer.parseInt(fields[2])));
+            start = end + 1;
+        }
+        return records;
+    }
+
+    void append(List<ReservationRecord> records) throws IOException {
+        line.setLength(0);
+        for (ReservationRecord record : records) {
+            line.append(record.sequence()).append(' ').append(record.stockId()).append(' ')
+                    .append(record.quantity()).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    void truncate() throws IOException {
+        channel.truncate(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
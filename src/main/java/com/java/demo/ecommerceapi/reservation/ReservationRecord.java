@@ -0,0 +1,8 @@
+package com.java.demo.ecommerceapi.reservation;
+
+/**
+ * Movimiento sobre una fila de stock: una reserva (quantity > 0) o su liberacion (quantity < 0).
+ * La secuencia es unica y creciente en todo el registro.
+ */
+public record ReservationRecord(long sequence, long stockId, int quantity) {
+}
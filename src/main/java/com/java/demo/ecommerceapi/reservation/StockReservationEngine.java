@@ -0,0 +1,210 @@
+package com.java.demo.ecommerceapi.reservation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.java.demo.ecommerceapi.cache.CatalogVersion;
+import com.java.demo.ecommerceapi.model.StockReservationCheckpoint;
+import com.java.demo.ecommerceapi.repository.StockRepository;
+import com.java.demo.ecommerceapi.repository.StockReservationCheckpointRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Motor de reservas de stock en memoria para ventas de alta concurrencia (stock.reservations.enabled=true).
+ * Las compras reservan contra un ReservationLedger en lugar de bloquear filas de la tabla stock; los
+ * movimientos se escriben primero en el registro de reservas y cada flush-interval se aplican a la base de
+ * datos agrupados por fila, en una transaccion que tambien guarda la ultima secuencia aplicada.
+ * Al iniciar se aplican los movimientos del registro posteriores a esa secuencia (los que una caida dejo
+ * sin persistir) y luego se cargan las cantidades desde la base de datos.
+ * Mientras esta activo la tabla stock puede ir hasta un flush-interval detras de lo reservado.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.reservations.enabled", havingValue = "true")
+public class StockReservationEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(StockReservationEngine.class);
+
+    private final StockRepository stockRepository;
+    private final StockReservationCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CatalogVersion catalogVersion;
+    private final Path logPath;
+    private final boolean logSync;
+    private final Duration flushInterval;
+    private final Counter flushFailures;
+    // Un solo flush a la vez: entre drain() y el commit los movimientos no estan ni en la cola ni en la base
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile ReservationLedger ledger;
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public StockReservationEngine(StockRepository stockRepository,
+            StockReservationCheckpointRepository checkpointRepository,
+            PlatformTransactionManager transactionManager,
+            CatalogVersion catalogVersion,
+            MeterRegistry meterRegistry,
+            @Value("${stock.reservations.log:stock-reservations.log}") Path logPath,
+            @Value("${stock.reservations.log-sync:false}") boolean logSync,
+            @Value("${stock.reservations.flush-interval:200ms}") Duration flushInterval) {
+        this.stockRepository = stockRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.catalogVersion = catalogVersion;
+        this.logPath = logPath;
+        this.logSync = logSync;
+        this.flushInterval = flushInterval;
+        this.flushFailures = Counter.builder("stock.reservations.flush.failures")
+                .description("Scheduled flushes of stock reservations that failed and were left for the next cycle")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        recover();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-reservations-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::scheduledFlush, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        flusher.shutdown();
+        flush();
+        ledger.close();
+    }
+
+    /**
+     * Aplica a la base de datos los movimientos del registro que no alcanzaron a persistirse, vacia el
+     * registro y vuelve a cargar todas las cantidades. Se ejecuta al iniciar.
+     */
+    public void recover() {
+        flushLock.lock();
+        try {
+            if (ledger != null) {
+                ledger.close();
+            }
+            long checkpoint = checkpointRepository.findById(StockReservationCheckpoint.ID)
+                    .map(StockReservationCheckpoint::getLastSequence)
+                    .orElse(0L);
+            List<ReservationRecord> unapplied = ReservationLog.read(logPath).stream()
+                    .filter(record -> record.sequence() > checkpoint)
+                    .toList();
+            long lastSequence = checkpoint;
+            if (!unapplied.isEmpty()) {
+                persist(unapplied);
+                lastSequence = unapplied.get(unapplied.size() - 1).sequence();
+                log.warn("Registro de reservas: {} movimientos recuperados tras una caida", unapplied.size());
+            }
+            ReservationLog reservationLog = new ReservationLog(logPath, logSync);
+            reservationLog.truncate();
+            ledger = new ReservationLedger(reservationLog, lastSequence + 1);
+            ledger.load(transactionTemplate.execute(status -> stockRepository.findAllLevels()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the stock reservation log " + logPath, e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Reservation reserve(Map<Long, Integer> requested) {
+        return ledger.reserve(requested);
+    }
+
+    public void release(Reservation reservation) {
+        ledger.release(reservation);
+    }
+
+    public long available(Long productId) {
+        return ledger.available(productId);
+    }
+
+    /** Vuelve a leer de la base de datos las filas de los productos indicados (despues de un cambio de stock). */
+    public void reload(Collection<Long> productIds) {
+        flushLock.lock();
+        try {
+            ledger.reload(productIds,
+                    transactionTemplate.execute(status -> stockRepository.findLevelsByProductIdIn(productIds)));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /** Aplica a la base de datos todos los movimientos en cola. */
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<ReservationRecord> drained = ledger.drain();
+            if (drained.isEmpty()) {
+                return;
+            }
+            try {
+                persist(drained);
+            } catch (RuntimeException e) {
+                ledger.requeue(drained);
+                throw e;
+            }
+            ledger.truncateLogIfIdle();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not truncate the stock reservation log " + logPath, e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Los movimientos vuelven a la cola y se reintentan en el siguiente ciclo
+            flushFailures.increment();
+            log.error("No se pudieron persistir las reservas de stock, se reintenta en {}", flushInterval, e);
+        }
+    }
+
+    // Una sentencia por fila tocada, sin importar cuantas reservas la afectaron, y el checkpoint en la misma transaccion
+    private void persist(List<ReservationRecord> records) {
+        Map<Long, Integer> deltas = new TreeMap<>();
+        for (ReservationRecord record : records) {
+            deltas.merge(record.stockId(), record.quantity(), Integer::sum);
+        }
+        long lastSequence = records.get(records.size() - 1).sequence();
+        transactionTemplate.executeWithoutResult(status -> {
+            deltas.forEach((stockId, quantity) -> {
+                if (quantity != 0) {
+                    stockRepository.decrement(stockId, quantity);
+                }
+            });
+            checkpointRepository.save(new StockReservationCheckpoint(StockReservationCheckpoint.ID, lastSequence));
+        });
+        catalogVersion.stockChanged();
+    }
+}
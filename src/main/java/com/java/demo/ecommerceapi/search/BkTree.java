@@ -0,0 +1,109 @@
+package com.java.demo.ecommerceapi.search;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Arbol BK sobre un vocabulario de terminos: cada hijo cuelga de su padre segun la distancia de
+ * Levenshtein entre ambos, y la desigualdad triangular permite descartar ramas completas al buscar
+ * los terminos a distancia maxima d de una consulta.
+ * No admite borrados: quien lo usa ignora los terminos que ya no existen y lo reconstruye cuando
+ * se acumulan demasiados.
+ */
+final class BkTree {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private Node root;
+    private int size;
+
+    private static final class Node {
+        private final String term;
+        // children[d] es el hijo a distancia d del termino de este nodo
+        private Node[] children = NO_CHILDREN;
+
+        private Node(String term) {
+            this.term = term;
+        }
+    }
+
+    boolean add(String term) {
+        if (root == null) {
+            root = new Node(term);
+            size++;
+            return true;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(term, node.term);
+            if (distance == 0) {
+                return false;
+            }
+            if (distance >= node.children.length) {
+                node.children = Arrays.copyOf(node.children, distance + 1);
+            }
+            Node child = node.children[distance];
+            if (child == null) {
+                node.children[distance] = new Node(term);
+                size++;
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Entrega al consumidor los terminos a distancia menor o igual a maxDistance, visitando como
+     * maximo maxVisits nodos. Devuelve la cantidad de nodos visitados.
+     */
+    int search(String query, int maxDistance, int maxVisits, Consumer<String> consumer) {
+        if (root == null || maxVisits <= 0) {
+            return 0;
+        }
+        int visits = 0;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty() && visits < maxVisits) {
+            Node node = pending.pop();
+            visits++;
+            int distance = distance(query, node.term);
+            if (distance <= maxDistance) {
+                consumer.accept(node.term);
+            }
+            int from = Math.max(1, distance - maxDistance);
+            int to = Math.min(node.children.length - 1, distance + maxDistance);
+            for (int d = from; d <= to; d++) {
+                if (node.children[d] != null) {
+                    pending.push(node.children[d]);
+                }
+            }
+        }
+        return visits;
+    }
+
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (ca == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,38 @@
+package com.java.demo.ecommerceapi.search;
+
+import java.math.BigDecimal;
+
+/**
+ * Rangos de precio fijos usados para agrupar productos (facetas de busqueda).
+ * El rango i cubre [BOUNDS[i-1], BOUNDS[i]); el ultimo no tiene tope.
+ */
+public final class PriceBuckets {
+
+    private static final BigDecimal[] BOUNDS = {
+            new BigDecimal("10"), new BigDecimal("25"), new BigDecimal("50"), new BigDecimal("100"),
+            new BigDecimal("250"), new BigDecimal("500"), new BigDecimal("1000")
+    };
+
+    private PriceBuckets() {
+    }
+
+    public static int count() {
+        return BOUNDS.length + 1;
+    }
+
+    public static int bucketOf(BigDecimal price) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && price.compareTo(BOUNDS[bucket]) >= 0) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    public static String label(int bucket) {
+        if (bucket == BOUNDS.length) {
+            return BOUNDS[bucket - 1].toPlainString() + "+";
+        }
+        String from = bucket == 0 ? "0" : BOUNDS[bucket - 1].toPlainString();
+        return from + "-" + BOUNDS[bucket].toPlainString();
+    }
+}
@@ -0,0 +1,61 @@
+package com.java.demo.ecommerceapi.search;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Bitmap con los ids de los productos que tienen unidades en stock (sumando todas las ubicaciones).
+ * Lo mantiene StockService en cada escritura de stock; las consultas finales lo vuelven a confirmar
+ * contra la base de datos, por lo que un bit desactualizado solo afecta la preseleccion de candidatos.
+ */
+@Component
+public class ProductAvailabilityIndex {
+
+    private final BitSet inStock = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void update(Long productId, long totalQuantity) {
+        int doc = ProductSearchIndex.docId(productId);
+        lock.writeLock().lock();
+        try {
+            inStock.set(doc, totalQuantity > 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void rebuild(Collection<Long> productIdsInStock) {
+        lock.writeLock().lock();
+        try {
+            inStock.clear();
+            for (Long productId : productIdsInStock) {
+                inStock.set(ProductSearchIndex.docId(productId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isInStock(Long productId) {
+        lock.readLock().lock();
+        try {
+            return inStock.get(ProductSearchIndex.docId(productId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Copia del conjunto de productos con stock, para intersectarla sin bloquear a los escritores. */
+    public BitSet inStock() {
+        lock.readLock().lock();
+        try {
+            return (BitSet) inStock.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.java.demo.ecommerceapi.search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+import com.java.demo.ecommerceapi.dto.FacetCountDTO;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+
+/**
+ * Bitmaps de ids de producto por categoria, marca y rango de precio.
+ * Los conteos de facetas se obtienen intersectando cada bitmap con el conjunto de resultados,
+ * sin consultas GROUP BY adicionales.
+ */
+@Component
+public class ProductFacetIndex implements ProductIndex {
+
+    public static final String CATEGORY = "category";
+    public static final String BRAND = "brand";
+    public static final String PRICE = "price";
+
+    private final Map<Long, BitSet> byCategory = new HashMap<>();
+    private final Map<Long, BitSet> byBrand = new HashMap<>();
+    private final BitSet[] byPrice = new BitSet[PriceBuckets.count()];
+    private final Map<Integer, Facets> products = new HashMap<>();
+    private final BitSet indexed = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private record Facets(Long categoryId, Long brandId, int priceBucket) {
+    }
+
+    public ProductFacetIndex() {
+        for (int i = 0; i < byPrice.length; i++) {
+            byPrice[i] = new BitSet();
+        }
+    }
+
+    @Override
+    public void index(ProductDTO product) {
+        int doc = ProductSearchIndex.docId(product.getId());
+        Facets facets = new Facets(product.getCategoryId(), product.getBrandId(),
+                product.getPrice() == null ? -1 : PriceBuckets.bucketOf(product.getPrice()));
+        lock.writeLock().lock();
+        try {
+            unindex(doc);
+            set(byCategory, facets.categoryId(), doc);
+            set(byBrand, facets.brandId(), doc);
+            if (facets.priceBucket() >= 0) {
+                byPrice[facets.priceBucket()].set(doc);
+            }
+            products.put(doc, facets);
+            indexed.set(doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            unindex(ProductSearchIndex.docId(productId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            byCategory.clear();
+            byBrand.clear();
+            for (BitSet bucket : byPrice) {
+                bucket.clear();
+            }
+            products.clear();
+            indexed.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Copia del bitmap de productos de una marca (vacio si la marca no tiene productos). */
+    public BitSet brand(Long brandId) {
+        return copyOf(byBrand, brandId);
+    }
+
+    /** Copia del bitmap de productos de una categoria (vacio si la categoria no tiene productos). */
+    public BitSet category(Long categoryId) {
+        return copyOf(byCategory, categoryId);
+    }
+
+    /** Copia del bitmap de todos los productos indexados. */
+    public BitSet all() {
+        lock.readLock().lock();
+        try {
+            return (BitSet) indexed.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BitSet copyOf(Map<Long, BitSet> bitmaps, Long value) {
+        lock.readLock().lock();
+        try {
+            BitSet bitmap = bitmaps.get(value);
+            return bitmap == null ? new BitSet() : (BitSet) bitmap.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cuenta cuantos de los productos indicados hay por categoria, marca y rango de precio.
+     * Se omiten los valores sin productos; categorias y marcas se ordenan de mayor a menor conteo,
+     * los rangos de precio en orden ascendente.
+     */
+    public Map<String, List<FacetCountDTO>> count(BitSet matches) {
+        lock.readLock().lock();
+        try {
+            Map<String, List<FacetCountDTO>> facets = new LinkedHashMap<>();
+            facets.put(CATEGORY, countByValue(byCategory, matches));
+            facets.put(BRAND, countByValue(byBrand, matches));
+            List<FacetCountDTO> prices = new ArrayList<>();
+            for (int bucket = 0; bucket < byPrice.length; bucket++) {
+                int count = intersectionCount(byPrice[bucket], matches);
+                if (count > 0) {
+                    prices.add(new FacetCountDTO(PriceBuckets.label(bucket), count));
+                }
+            }
+            facets.put(PRICE, prices);
+            return facets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<FacetCountDTO> countByValue(Map<Long, BitSet> bitmaps, BitSet matches) {
+        List<FacetCountDTO> counts = new ArrayList<>();
+        for (Map.Entry<Long, BitSet> entry : bitmaps.entrySet()) {
+            int count = intersectionCount(entry.getValue(), matches);
+            if (count > 0) {
+                counts.add(new FacetCountDTO(entry.getKey().toString(), count));
+            }
+        }
+        counts.sort(Comparator.comparingInt(FacetCountDTO::getCount).reversed()
+                .thenComparing(facet -> Long.parseLong(facet.getValue())));
+        return counts;
+    }
+
+    private static int intersectionCount(BitSet bitmap, BitSet matches) {
+        BitSet intersection = (BitSet) bitmap.clone();
+        intersection.and(matches);
+        return intersection.cardinality();
+    }
+
+    private static void set(Map<Long, BitSet> bitmaps, Long value, int doc) {
+        if (value != null) {
+            bitmaps.computeIfAbsent(value, v -> new BitSet()).set(doc);
+        }
+    }
+
+    private static void unset(Map<Long, BitSet> bitmaps, Long value, int doc) {
+        if (value == null) {
+            return;
+        }
+        BitSet bitmap = bitmaps.get(value);
+        if (bitmap != null) {
+            bitmap.clear(doc);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(value);
+            }
+        }
+    }
+
+    private void unindex(int doc) {
+        Facets previous = products.remove(doc);
+        indexed.clear(doc);
+        if (previous != null) {
+            unset(byCategory, previous.categoryId(), doc);
+            unset(byBrand, previous.brandId(), doc);
+            if (previous.priceBucket() >= 0) {
+                byPrice[previous.priceBucket()].clear(doc);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.java.demo.ecommerceapi.search;
+
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+
+/**
+ * Estructura en memoria derivada del catalogo de productos.
+ * ProductService notifica cada alta, cambio y baja a todas las implementaciones registradas
+ * como beans, y las reconstruye completas al iniciar la aplicacion.
+ */
+public interface ProductIndex {
+
+    void index(ProductDTO product);
+
+    void remove(Long productId);
+
+    void clear();
+}
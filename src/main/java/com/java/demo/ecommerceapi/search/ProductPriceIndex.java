@@ -0,0 +1,316 @@
+package com.java.demo.ecommerceapi.search;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+
+/**
+ * Indice de precios ordenado: pares (precio en centavos, id) en dos arreglos long paralelos,
+ * ordenados por precio y luego por id. Un rango de precios se resuelve con dos busquedas binarias
+ * y corresponde a un tramo contiguo de ids: O(log n + k) sin importar el tamano del catalogo.
+ * Las altas se acumulan en un buffer que se ordena e intercala en la siguiente consulta, asi la
+ * reconstruccion completa al iniciar no paga un desplazamiento de arreglo por producto.
+ */
+@Component
+public class ProductPriceIndex implements ProductIndex {
+
+    private static final long[] EMPTY = new long[0];
+    // Por debajo de este tamano el ordenamiento usa insercion directa
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private long[] prices = EMPTY;
+    private long[] ids = EMPTY;
+    private int size;
+    private long[] pendingPrices = EMPTY;
+    private long[] pendingIds = EMPTY;
+    private volatile int pendingSize;
+    // Precio vigente de cada producto, solo se consulta al escribir
+    private final Map<Long, Long> priceById = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void index(ProductDTO product) {
+        if (product.getPrice() == null) {
+            remove(product.getId());
+            return;
+        }
+        long cents = toCents(product.getPrice(), RoundingMode.HALF_UP);
+        lock.writeLock().lock();
+        try {
+            Long previous = priceById.put(product.getId(), cents);
+            if (previous != null) {
+                if (previous == cents) {
+                    return;
+                }
+                unindex(previous, product.getId());
+            }
+            if (pendingSize == pendingIds.length) {
+                int capacity = Math.max(16, pendingIds.length * 2);
+                pendingPrices = Arrays.copyOf(pendingPrices, capacity);
+                pendingIds = Arrays.copyOf(pendingIds, capacity);
+            }
+            pendingPrices[pendingSize] = cents;
+            pendingIds[pendingSize] = product.getId();
+            pendingSize++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            Long previous = priceById.remove(productId);
+            if (previous != null) {
+                unindex(previous, productId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            prices = EMPTY;
+            ids = EMPTY;
+            size = 0;
+            pendingPrices = EMPTY;
+            pendingIds = EMPTY;
+            pendingSize = 0;
+            priceById.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids de los productos con precio en [minPrice, maxPrice], ordenados por precio.
+     * Un limite null deja ese extremo abierto.
+     */
+    public long[] idsInRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        if (pendingSize > 0) {
+            mergePending();
+        }
+        lock.readLock().lock();
+        try {
+            int from = from(minPrice);
+            int to = to(maxPrice);
+            return from >= to ? EMPTY : Arrays.copyOfRange(ids, from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Los mismos productos que idsInRange como bitmap de ids, para intersectarlo con los demas filtros.
+     */
+    public BitSet matchRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        if (pendingSize > 0) {
+            mergePending();
+        }
+        lock.readLock().lock();
+        try {
+            BitSet matches = new BitSet();
+            int to = to(maxPrice);
+            for (int i = from(minPrice); i < to; i++) {
+                matches.set(Math.toIntExact(ids[i]));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cantidad de productos con precio en [minPrice, maxPrice], sin recorrer el rango.
+     */
+    public int countInRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        if (pendingSize > 0) {
+            mergePending();
+        }
+        lock.readLock().lock();
+        try {
+            return Math.max(0, to(maxPrice) - from(minPrice));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size + pendingSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void mergePending() {
+        lock.writeLock().lock();
+        try {
+            if (pendingSize == 0) {
+                return;
+            }
+            sort(pendingPrices, pendingIds, 0, pendingSize - 1);
+            long[] mergedPrices = new long[size + pendingSize];
+            long[] mergedIds = new long[size + pendingSize];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < mergedIds.length; k++) {
+                if (j >= pendingSize || (i < size && compare(prices[i], ids[i], pendingPrices[j], pendingIds[j]) < 0)) {
+                    mergedPrices[k] = prices[i];
+                    mergedIds[k] = ids[i++];
+                } else {
+                    mergedPrices[k] = pendingPrices[j];
+                    mergedIds[k] = pendingIds[j++];
+                }
+            }
+            prices = mergedPrices;
+            ids = mergedIds;
+            size = mergedIds.length;
+            pendingPrices = EMPTY;
+            pendingIds = EMPTY;
+            pendingSize = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void unindex(long cents, long id) {
+        int at = lowerBound(cents);
+        while (at < size && prices[at] == cents && ids[at] < id) {
+            at++;
+        }
+        if (at < size && prices[at] == cents && ids[at] == id) {
+            System.arraycopy(prices, at + 1, prices, at, size - at - 1);
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            return;
+        }
+        for (int i = 0; i < pendingSize; i++) {
+            if (pendingIds[i] == id) {
+                pendingSize--;
+                pendingPrices[i] = pendingPrices[pendingSize];
+                pendingIds[i] = pendingIds[pendingSize];
+                return;
+            }
+        }
+    }
+
+    private int from(BigDecimal minPrice) {
+        return minPrice == null ? 0 : lowerBound(toCents(minPrice, RoundingMode.CEILING));
+    }
+
+    private int to(BigDecimal maxPrice) {
+        return maxPrice == null ? size : upperBound(toCents(maxPrice, RoundingMode.FLOOR));
+    }
+
+    // Primera posicion con precio >= cents
+    private int lowerBound(long cents) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] < cents) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Primera posicion con precio > cents
+    private int upperBound(long cents) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] <= cents) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int compare(long price, long id, long otherPrice, long otherId) {
+        int byPrice = Long.compare(price, otherPrice);
+        return byPrice != 0 ? byPrice : Long.compare(id, otherId);
+    }
+
+    // Quicksort sobre los arreglos paralelos, sin encapsular los pares en objetos
+    private static void sort(long[] prices, long[] ids, int low, int high) {
+        while (high - low >= INSERTION_SORT_THRESHOLD) {
+            int mid = (low + high) >>> 1;
+            long pivotPrice = prices[mid];
+            long pivotId = ids[mid];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(prices[i], ids[i], pivotPrice, pivotId) < 0) {
+                    i++;
+                }
+                while (compare(prices[j], ids[j], pivotPrice, pivotId) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(prices, ids, i++, j--);
+                }
+            }
+            // Se recurre en la mitad menor para acotar la profundidad de la pila
+            if (j - low < high - i) {
+                sort(prices, ids, low, j);
+                low = i;
+            } else {
+                sort(prices, ids, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            long price = prices[i];
+            long id = ids[i];
+            int j = i - 1;
+            while (j >= low && compare(prices[j], ids[j], price, id) > 0) {
+                prices[j + 1] = prices[j];
+                ids[j + 1] = ids[j];
+                j--;
+            }
+            prices[j + 1] = price;
+            ids[j + 1] = id;
+        }
+    }
+
+    private static void swap(long[] prices, long[] ids, int a, int b) {
+        long price = prices[a];
+        prices[a] = prices[b];
+        prices[b] = price;
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+    }
+
+    static long toCents(BigDecimal price, RoundingMode rounding) {
+        BigDecimal cents = price.movePointRight(2).setScale(0, rounding);
+        if (cents.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+            return Long.MAX_VALUE;
+        }
+        if (cents.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+            return Long.MIN_VALUE;
+        }
+        return cents.longValue();
+    }
+}
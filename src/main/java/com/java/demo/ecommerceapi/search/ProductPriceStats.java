@@ -0,0 +1,136 @@
+package com.java.demo.ecommerceapi.search;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+import com.java.demo.ecommerceapi.dto.FacetCountDTO;
+import com.java.demo.ecommerceapi.dto.PriceStatsDTO;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+
+/**
+ * Minimo, maximo e histograma de precios por categoria y del catalogo completo, mantenidos en cada
+ * alta, cambio y baja de producto. Consultarlos cuesta O(rangos de precio), sin recorrer productos.
+ * El histograma usa los rangos fijos de PriceBuckets.
+ */
+@Component
+public class ProductPriceStats implements ProductIndex {
+
+    private final Stats catalog = new Stats();
+    private final Map<Long, Stats> byCategory = new HashMap<>();
+    private final Map<Long, Entry> products = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private record Entry(Long categoryId, BigDecimal price) {
+    }
+
+    private static final class Stats {
+        private final int[] buckets = new int[PriceBuckets.count()];
+        // Precios presentes con su cantidad de productos, para conocer minimo y maximo tras una baja
+        private final TreeMap<BigDecimal, Integer> prices = new TreeMap<>();
+        private int count;
+
+        private void add(BigDecimal price) {
+            buckets[PriceBuckets.bucketOf(price)]++;
+            prices.merge(price, 1, Integer::sum);
+            count++;
+        }
+
+        private void remove(BigDecimal price) {
+            buckets[PriceBuckets.bucketOf(price)]--;
+            prices.computeIfPresent(price, (p, n) -> n == 1 ? null : n - 1);
+            count--;
+        }
+
+        private PriceStatsDTO toDTO() {
+            List<FacetCountDTO> histogram = new ArrayList<>(buckets.length);
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                histogram.add(new FacetCountDTO(PriceBuckets.label(bucket), buckets[bucket]));
+            }
+            return new PriceStatsDTO(count,
+                    prices.isEmpty() ? null : prices.firstKey(),
+                    prices.isEmpty() ? null : prices.lastKey(),
+                    histogram);
+        }
+    }
+
+    @Override
+    public void index(ProductDTO product) {
+        lock.writeLock().lock();
+        try {
+            unindex(product.getId());
+            if (product.getPrice() == null) {
+                return;
+            }
+            // El TreeMap compara con compareTo, asi que 10.0 y 10.00 cuentan como el mismo precio
+            Entry entry = new Entry(product.getCategoryId(), product.getPrice());
+            products.put(product.getId(), entry);
+            catalog.add(entry.price());
+            if (entry.categoryId() != null) {
+                byCategory.computeIfAbsent(entry.categoryId(), id -> new Stats()).add(entry.price());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            unindex(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            products.clear();
+            byCategory.clear();
+            catalog.prices.clear();
+            Arrays.fill(catalog.buckets, 0);
+            catalog.count = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Estadisticas de precio de una categoria, o del catalogo completo si categoryId es null.
+     */
+    public PriceStatsDTO stats(Long categoryId) {
+        lock.readLock().lock();
+        try {
+            Stats stats = categoryId == null ? catalog : byCategory.get(categoryId);
+            return (stats == null ? new Stats() : stats).toDTO();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void unindex(Long productId) {
+        Entry previous = products.remove(productId);
+        if (previous == null) {
+            return;
+        }
+        catalog.remove(previous.price());
+        Stats stats = byCategory.get(previous.categoryId());
+        if (stats != null) {
+            stats.remove(previous.price());
+            if (stats.count == 0) {
+                byCategory.remove(previous.categoryId());
+            }
+        }
+    }
+}
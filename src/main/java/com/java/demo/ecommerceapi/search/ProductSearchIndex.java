@@ -0,0 +1,445 @@
+package com.java.demo.ecommerceapi.search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+
+/**
+ * Indice invertido en memoria sobre el nombre y la descripcion de los productos.
+ * Cada termino normalizado apunta a un BitSet con los ids de los productos que lo contienen;
+ * los ids de la tabla son secuenciales, por lo que el BitSet es compacto y las intersecciones son baratas.
+ * Ademas guarda la frecuencia de cada termino por producto para ordenar por relevancia (BM25).
+ */
+@Component
+public class ProductSearchIndex implements ProductIndex {
+
+    public enum Field { NAME, DESCRIPTION }
+
+    public record ScoredProduct(long productId, double score) {
+    }
+
+    // Parametros habituales de BM25; el nombre pesa mas que la descripcion
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double NAME_WEIGHT = 2.0;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+    // Limita cuantos terminos del diccionario puede abarcar un prefijo al puntuar
+    private static final int MAX_PREFIX_EXPANSIONS = 32;
+    // Cotas de la busqueda aproximada: nodos del arbol BK por consulta, terminos y largo de cada termino
+    static final int MAX_FUZZY_VISITS = 2000;
+    private static final int MAX_FUZZY_TOKENS = 5;
+    private static final int MAX_FUZZY_TERM_LENGTH = 32;
+    // Largo maximo de los fragmentos (n-gramas) de cada termino que usa matchNameContaining
+    private static final int GRAM_LENGTH = 3;
+
+    private final NavigableMap<String, BitSet> nameTerms = new TreeMap<>();
+    private final NavigableMap<String, BitSet> descriptionTerms = new TreeMap<>();
+    // Cada fragmento de 1 a GRAM_LENGTH letras apunta a los terminos de nombre que lo contienen
+    private final Map<String, Set<String>> nameGrams = new HashMap<>();
+    private final Map<Integer, IndexedProduct> products = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private BkTree nameVocabulary = new BkTree();
+    private long totalNameLength;
+    private long totalDescriptionLength;
+
+    // foldedName es el nombre sin acentos y en minusculas, para confirmar las coincidencias de matchNameContaining
+    private record IndexedProduct(String foldedName, Map<String, Integer> nameTerms, int nameLength,
+                                  Map<String, Integer> descriptionTerms, int descriptionLength) {
+    }
+
+    private record WeightedTerm(String term, double idf) {
+    }
+
+    @Override
+    public void index(ProductDTO product) {
+        int doc = docId(product.getId());
+        List<String> nameTokens = TextNormalizer.tokenize(product.getName());
+        List<String> descriptionTokens = TextNormalizer.tokenize(product.getDescription());
+        IndexedProduct indexed = new IndexedProduct(TextNormalizer.normalize(product.getName()),
+                termFrequencies(nameTokens), nameTokens.size(),
+                termFrequencies(descriptionTokens), descriptionTokens.size());
+        lock.writeLock().lock();
+        try {
+            unindex(doc);
+            for (String term : indexed.nameTerms().keySet()) {
+                if (!nameTerms.containsKey(term)) {
+                    nameVocabulary.add(term);
+                    addGrams(term);
+                }
+            }
+            addPostings(nameTerms, indexed.nameTerms().keySet(), doc);
+            addPostings(descriptionTerms, indexed.descriptionTerms().keySet(), doc);
+            products.put(doc, indexed);
+            totalNameLength += indexed.nameLength();
+            totalDescriptionLength += indexed.descriptionLength();
+            compactVocabulary();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            unindex(docId(productId));
+            compactVocabulary();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            nameTerms.clear();
+            descriptionTerms.clear();
+            nameGrams.clear();
+            products.clear();
+            nameVocabulary = new BkTree();
+            totalNameLength = 0;
+            totalDescriptionLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return products.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve los ids de los productos que contienen todos los terminos de la consulta
+     * (cada termino se compara como prefijo) en alguno de los campos indicados.
+     * Si la consulta no tiene terminos devuelve null: el indice no puede resolverla.
+     */
+    public BitSet match(String query, Field... fields) {
+        List<String> tokens = TextNormalizer.tokenize(query);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            BitSet result = null;
+            for (String token : tokens) {
+                BitSet tokenMatches = new BitSet();
+                for (Field field : fields) {
+                    NavigableMap<String, BitSet> terms = field == Field.NAME ? nameTerms : descriptionTerms;
+                    for (BitSet postings : terms.subMap(token, true, token + Character.MAX_VALUE, true).values()) {
+                        tokenMatches.or(postings);
+                    }
+                }
+                if (result == null) {
+                    result = tokenMatches;
+                } else {
+                    result.and(tokenMatches);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public BitSet matchName(String query) {
+        return match(query, Field.NAME);
+    }
+
+    /**
+     * Ids de los productos cuyo nombre contiene la consulta como subcadena, sin distinguir mayusculas ni
+     * acentos: "phone" tambien encuentra "Smartphone" y "cafe" encuentra "Café". Cada termino de la consulta
+     * se busca en el indice de n-gramas del vocabulario de nombres, sin recorrerlo entero, y los candidatos
+     * se confirman comparando el nombre normalizado con la consulta normalizada.
+     * Si la consulta no tiene terminos devuelve null: el indice no puede resolverla.
+     */
+    public BitSet matchNameContaining(String query) {
+        List<String> tokens = TextNormalizer.tokenize(query);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        String needle = TextNormalizer.normalize(query);
+        lock.readLock().lock();
+        try {
+            BitSet candidates = null;
+            for (String token : tokens) {
+                BitSet tokenMatches = new BitSet();
+                for (String term : termsContaining(token)) {
+                    tokenMatches.or(nameTerms.get(term));
+                }
+                if (candidates == null) {
+                    candidates = tokenMatches;
+                } else {
+                    candidates.and(tokenMatches);
+                }
+                if (candidates.isEmpty()) {
+                    return candidates;
+                }
+            }
+            BitSet result = new BitSet();
+            for (int doc = candidates.nextSetBit(0); doc >= 0; doc = candidates.nextSetBit(doc + 1)) {
+                IndexedProduct product = products.get(doc);
+                if (product != null && product.foldedName().contains(needle)) {
+                    result.set(doc);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Igual que matchName, pero cada termino de la consulta tambien acepta palabras del vocabulario
+     * de nombres a distancia de edicion 1 (terminos de 3 a 5 letras) o 2 (6 o mas).
+     * El costo esta acotado: solo los primeros MAX_FUZZY_TOKENS terminos se buscan de forma aproximada
+     * y entre todos visitan como maximo MAX_FUZZY_VISITS nodos del arbol BK; el resto se compara
+     * solo por prefijo.
+     */
+    public BitSet matchNameFuzzy(String query) {
+        List<String> tokens = TextNormalizer.tokenize(query);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            BitSet result = null;
+            int visitsLeft = MAX_FUZZY_VISITS;
+            for (int i = 0; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                BitSet tokenMatches = new BitSet();
+                for (BitSet postings : nameTerms.subMap(token, true, token + Character.MAX_VALUE, true).values()) {
+                    tokenMatches.or(postings);
+                }
+                int maxDistance = fuzzyDistance(token);
+                if (i < MAX_FUZZY_TOKENS && maxDistance > 0) {
+                    visitsLeft -= nameVocabulary.search(token, maxDistance, visitsLeft, term -> {
+                        BitSet postings = nameTerms.get(term);
+                        if (postings != null) {
+                            tokenMatches.or(postings);
+                        }
+                    });
+                }
+                if (result == null) {
+                    result = tokenMatches;
+                } else {
+                    result.and(tokenMatches);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ordena por BM25 los productos que contienen al menos uno de los terminos de la consulta
+     * en el nombre o la descripcion, y devuelve los k mejores de mayor a menor puntaje.
+     * Usa un heap acotado a k elementos en lugar de ordenar todo el conjunto de coincidencias.
+     */
+    public List<ScoredProduct> rank(String query, int k) {
+        Set<String> tokens = new LinkedHashSet<>(TextNormalizer.tokenize(query));
+        if (tokens.isEmpty() || k <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            int documents = products.size();
+            if (documents == 0) {
+                return List.of();
+            }
+            BitSet candidates = new BitSet();
+            List<WeightedTerm> nameQuery = weightedTerms(nameTerms, tokens, documents, candidates);
+            List<WeightedTerm> descriptionQuery = weightedTerms(descriptionTerms, tokens, documents, candidates);
+            double averageNameLength = Math.max(1.0, (double) totalNameLength / documents);
+            double averageDescriptionLength = Math.max(1.0, (double) totalDescriptionLength / documents);
+
+            PriorityQueue<ScoredProduct> top = new PriorityQueue<>(k, Comparator.comparingDouble(ScoredProduct::score));
+            for (int doc = candidates.nextSetBit(0); doc >= 0; doc = candidates.nextSetBit(doc + 1)) {
+                IndexedProduct product = products.get(doc);
+                double score = NAME_WEIGHT * bm25(nameQuery, product.nameTerms(), product.nameLength(), averageNameLength)
+                        + DESCRIPTION_WEIGHT * bm25(descriptionQuery, product.descriptionTerms(), product.descriptionLength(), averageDescriptionLength);
+                if (top.size() < k) {
+                    top.add(new ScoredProduct(doc, score));
+                } else if (score > top.peek().score()) {
+                    top.poll();
+                    top.add(new ScoredProduct(doc, score));
+                }
+            }
+            List<ScoredProduct> ranked = new ArrayList<>(top);
+            ranked.sort(Comparator.comparingDouble(ScoredProduct::score).reversed()
+                    .thenComparingLong(ScoredProduct::productId));
+            return ranked;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<WeightedTerm> weightedTerms(NavigableMap<String, BitSet> terms, Set<String> tokens,
+            int documents, BitSet candidates) {
+        List<WeightedTerm> weighted = new ArrayList<>();
+        for (String token : tokens) {
+            int expansions = 0;
+            for (Map.Entry<String, BitSet> entry : terms.subMap(token, true, token + Character.MAX_VALUE, true).entrySet()) {
+                if (expansions++ == MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+                int documentFrequency = entry.getValue().cardinality();
+                double idf = Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                weighted.add(new WeightedTerm(entry.getKey(), idf));
+                candidates.or(entry.getValue());
+            }
+        }
+        return weighted;
+    }
+
+    private static double bm25(List<WeightedTerm> query, Map<String, Integer> frequencies, int length, double averageLength) {
+        double score = 0;
+        for (WeightedTerm term : query) {
+            Integer tf = frequencies.get(term.term());
+            if (tf != null) {
+                score += term.idf() * (tf * (K1 + 1)) / (tf + K1 * (1 - B + B * length / averageLength));
+            }
+        }
+        return score;
+    }
+
+    private static int fuzzyDistance(String token) {
+        if (token.length() < 3 || token.length() > MAX_FUZZY_TERM_LENGTH) {
+            return 0;
+        }
+        return token.length() <= 5 ? 1 : 2;
+    }
+
+    // Un fragmento corto es una clave del indice; uno largo se acota con su n-grama menos frecuente
+    private Set<String> termsContaining(String token) {
+        if (token.length() <= GRAM_LENGTH) {
+            return nameGrams.getOrDefault(token, Set.of());
+        }
+        Set<String> rarest = null;
+        for (int i = 0; i + GRAM_LENGTH <= token.length(); i++) {
+            Set<String> terms = nameGrams.get(token.substring(i, i + GRAM_LENGTH));
+            if (terms == null) {
+                return Set.of();
+            }
+            if (rarest == null || terms.size() < rarest.size()) {
+                rarest = terms;
+            }
+        }
+        Set<String> containing = new HashSet<>();
+        for (String term : rarest) {
+            if (term.contains(token)) {
+                containing.add(term);
+            }
+        }
+        return containing;
+    }
+
+    private void addGrams(String term) {
+        for (String gram : grams(term)) {
+            nameGrams.computeIfAbsent(gram, g -> new HashSet<>()).add(term);
+        }
+    }
+
+    private void removeGrams(String term) {
+        for (String gram : grams(term)) {
+            Set<String> terms = nameGrams.get(gram);
+            if (terms != null) {
+                terms.remove(term);
+                if (terms.isEmpty()) {
+                    nameGrams.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(String term) {
+        Set<String> grams = new HashSet<>();
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            for (int i = 0; i + length <= term.length(); i++) {
+                grams.add(term.substring(i, i + length));
+            }
+        }
+        return grams;
+    }
+
+    // El arbol BK no admite borrados: cuando la mitad de sus terminos ya no existe se reconstruye
+    private void compactVocabulary() {
+        if (nameVocabulary.size() > 2 * nameTerms.size() + 64) {
+            BkTree compacted = new BkTree();
+            nameTerms.keySet().forEach(compacted::add);
+            nameVocabulary = compacted;
+        }
+    }
+
+    private void unindex(int doc) {
+        IndexedProduct previous = products.remove(doc);
+        if (previous != null) {
+            removePostings(nameTerms, previous.nameTerms().keySet(), doc);
+            for (String term : previous.nameTerms().keySet()) {
+                if (!nameTerms.containsKey(term)) {
+                    removeGrams(term);
+                }
+            }
+            removePostings(descriptionTerms, previous.descriptionTerms().keySet(), doc);
+            totalNameLength -= previous.nameLength();
+            totalDescriptionLength -= previous.descriptionLength();
+        }
+    }
+
+    private static Map<String, Integer> termFrequencies(List<String> tokens) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        return frequencies;
+    }
+
+    private static void addPostings(Map<String, BitSet> terms, Set<String> tokens, int doc) {
+        for (String token : tokens) {
+            terms.computeIfAbsent(token, t -> new BitSet()).set(doc);
+        }
+    }
+
+    private static void removePostings(Map<String, BitSet> terms, Set<String> tokens, int doc) {
+        for (String token : tokens) {
+            BitSet postings = terms.get(token);
+            if (postings != null) {
+                postings.clear(doc);
+                if (postings.isEmpty()) {
+                    terms.remove(token);
+                }
+            }
+        }
+    }
+
+    static int docId(Long productId) {
+        return Math.toIntExact(productId);
+    }
+}
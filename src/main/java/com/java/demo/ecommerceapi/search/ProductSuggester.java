@@ -0,0 +1,380 @@
+package com.java.demo.ecommerceapi.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.dto.ProductSuggestionDTO;
+
+/**
+ * Autocompletado de nombres de productos servido desde memoria.
+ * Los nombres normalizados se guardan en un trie comprimido (radix tree), y cada nodo mantiene
+ * los ids mas populares de su subarbol, asi una consulta por prefijo solo recorre el prefijo.
+ * La popularidad es la cantidad de unidades vendidas.
+ */
+@Component
+public class ProductSuggester implements ProductIndex {
+
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final long[] NO_IDS = new long[0];
+
+    private final Node root = new Node("");
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static final class Entry {
+        private final String name;
+        private final String key;
+        private long popularity;
+
+        private Entry(String name, String key, long popularity) {
+            this.name = name;
+            this.key = key;
+            this.popularity = popularity;
+        }
+    }
+
+    private static final class Node {
+        private String label;
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        // Productos cuyo nombre termina exactamente en este nodo
+        private long[] terminals = NO_IDS;
+        // Los MAX_SUGGESTIONS ids mas populares del subarbol, ya ordenados
+        private long[] top = NO_IDS;
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        private void putChild(char c, Node child) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                children[i] = child;
+                return;
+            }
+            int at = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newKeys[at] = c;
+            newChildren[at] = child;
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            keys = newKeys;
+            children = newChildren;
+        }
+
+        private void removeChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i < 0) {
+                return;
+            }
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+            System.arraycopy(children, i + 1, newChildren, i, children.length - i - 1);
+            keys = newKeys;
+            children = newChildren;
+        }
+    }
+
+    @Override
+    public void index(ProductDTO product) {
+        String key = normalizeKey(product.getName());
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.get(product.getId());
+            if (previous != null) {
+                if (previous.key.equals(key) && previous.name.equals(product.getName())) {
+                    return;
+                }
+                removeFromTrie(product.getId(), previous);
+            }
+            Entry entry = new Entry(product.getName(), key, previous != null ? previous.popularity : 0);
+            entries.put(product.getId(), entry);
+            if (!key.isEmpty()) {
+                insertIntoTrie(product.getId(), key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.remove(productId);
+            if (previous != null) {
+                removeFromTrie(productId, previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            root.keys = NO_KEYS;
+            root.children = NO_CHILDREN;
+            root.terminals = NO_IDS;
+            root.top = NO_IDS;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Suma unidades vendidas a un producto y lo reubica en los nodos de su camino.
+     */
+    public void addPopularity(Long productId, long units) {
+        if (units <= 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(productId);
+            if (entry == null) {
+                return;
+            }
+            entry.popularity += units;
+            for (Node node : path(entry.key)) {
+                offer(node, productId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<ProductSuggestionDTO> suggest(String prefix, int limit) {
+        String key = normalizeKey(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int i = 0;
+            while (i < key.length()) {
+                Node child = node.child(key.charAt(i));
+                if (child == null) {
+                    return List.of();
+                }
+                int remaining = key.length() - i;
+                if (remaining <= child.label.length()) {
+                    if (!child.label.startsWith(key.substring(i))) {
+                        return List.of();
+                    }
+                    node = child;
+                    break;
+                }
+                if (!key.startsWith(child.label, i)) {
+                    return List.of();
+                }
+                i += child.label.length();
+                node = child;
+            }
+            List<ProductSuggestionDTO> suggestions = new ArrayList<>(Math.min(limit, node.top.length));
+            for (int j = 0; j < node.top.length && j < limit; j++) {
+                suggestions.add(new ProductSuggestionDTO(node.top[j], entries.get(node.top[j]).name));
+            }
+            return suggestions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static String normalizeKey(String name) {
+        return String.join(" ", TextNormalizer.tokenize(name));
+    }
+
+    private void insertIntoTrie(long id, String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+        while (true) {
+            if (i == key.length()) {
+                node.terminals = append(node.terminals, id);
+                break;
+            }
+            char c = key.charAt(i);
+            Node child = node.child(c);
+            if (child == null) {
+                Node leaf = new Node(key.substring(i));
+                leaf.terminals = new long[] { id };
+                node.putChild(c, leaf);
+                path.add(leaf);
+                break;
+            }
+            int common = commonPrefix(child.label, key, i);
+            if (common < child.label.length()) {
+                // Se parte la arista: el nuevo nodo intermedio hereda el subarbol completo del hijo
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.putChild(child.label.charAt(0), child);
+                middle.top = child.top.clone();
+                node.putChild(c, middle);
+                child = middle;
+            }
+            path.add(child);
+            node = child;
+            i += common;
+        }
+        for (Node visited : path) {
+            offer(visited, id);
+        }
+    }
+
+    private void removeFromTrie(long id, Entry entry) {
+        if (entry.key.isEmpty()) {
+            return;
+        }
+        List<Node> path = path(entry.key);
+        if (path.isEmpty()) {
+            return;
+        }
+        Node last = path.get(path.size() - 1);
+        last.terminals = without(last.terminals, id);
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node node = path.get(i);
+            Node parent = i == 0 ? root : path.get(i - 1);
+            if (indexOf(node.top, id) >= 0) {
+                node.top = recompute(node);
+            }
+            if (node.terminals.length == 0 && node.children.length == 0) {
+                parent.removeChild(node.label.charAt(0));
+            } else if (node.terminals.length == 0 && node.children.length == 1) {
+                // Se vuelve a comprimir la cadena de un solo hijo
+                Node child = node.children[0];
+                node.label = node.label + child.label;
+                node.keys = child.keys;
+                node.children = child.children;
+                node.terminals = child.terminals;
+                node.top = child.top;
+            }
+        }
+    }
+
+    /** Nodos recorridos para llegar exactamente al final de una clave ya indexada. */
+    private List<Node> path(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null || !key.startsWith(child.label, i)) {
+                return List.of();
+            }
+            path.add(child);
+            i += child.label.length();
+            node = child;
+        }
+        return path;
+    }
+
+    private void offer(Node node, long id) {
+        long[] current = without(node.top, id);
+        int at = 0;
+        while (at < current.length && compare(current[at], id) < 0) {
+            at++;
+        }
+        if (at >= MAX_SUGGESTIONS) {
+            node.top = current;
+            return;
+        }
+        int size = Math.min(current.length + 1, MAX_SUGGESTIONS);
+        long[] top = new long[size];
+        System.arraycopy(current, 0, top, 0, at);
+        top[at] = id;
+        System.arraycopy(current, at, top, at + 1, size - at - 1);
+        node.top = top;
+    }
+
+    private long[] recompute(Node node) {
+        List<Long> candidates = new ArrayList<>();
+        for (long id : node.terminals) {
+            candidates.add(id);
+        }
+        for (Node child : node.children) {
+            for (long id : child.top) {
+                candidates.add(id);
+            }
+        }
+        candidates.sort(this::compare);
+        int size = Math.min(candidates.size(), MAX_SUGGESTIONS);
+        long[] top = new long[size];
+        for (int i = 0; i < size; i++) {
+            top[i] = candidates.get(i);
+        }
+        return top;
+    }
+
+    // Mas vendidos primero; a igual popularidad, orden alfabetico
+    private int compare(long a, long b) {
+        Entry first = entries.get(a);
+        Entry second = entries.get(b);
+        int byPopularity = Long.compare(second.popularity, first.popularity);
+        if (byPopularity != 0) {
+            return byPopularity;
+        }
+        int byKey = first.key.compareTo(second.key);
+        return byKey != 0 ? byKey : Long.compare(a, b);
+    }
+
+    private static int commonPrefix(String label, String key, int offset) {
+        int max = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int indexOf(long[] ids, long id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long[] append(long[] ids, long id) {
+        long[] result = Arrays.copyOf(ids, ids.length + 1);
+        result[ids.length] = id;
+        return result;
+    }
+
+    private static long[] without(long[] ids, long id) {
+        int i = indexOf(ids, id);
+        if (i < 0) {
+            return ids;
+        }
+        long[] result = new long[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, i);
+        System.arraycopy(ids, i + 1, result, i, ids.length - i - 1);
+        return result;
+    }
+}
@@ -8,21 +8,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.java.demo.ecommerceapi.dto.FieldSet;
 import com.java.demo.ecommerceapi.enums.OrderStatus;
-import com.java.demo.ecommerceapi.exception.GeneralException;
 import com.java.demo.ecommerceapi.exception.ObjectNotFoundException;
 import com.java.demo.ecommerceapi.model.Order;
 import com.java.demo.ecommerceapi.model.OrderDetail;
 import com.java.demo.ecommerceapi.model.Product;
-import com.java.demo.ecommerceapi.model.Stock;
 import com.java.demo.ecommerceapi.model.User;
 import com.java.demo.ecommerceapi.repository.OrderDetailRepository;
 import com.java.demo.ecommerceapi.repository.OrderRepository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class OrderService {
@@ -51,42 +53,34 @@ public class OrderService {
         order.setOrderDate(LocalDateTime.now());
         order.setStatus(OrderStatus.PENDING); // Estado inicial
 
+        // Todos los productos de la orden con una sola consulta, sin importar la cantidad de lineas
+        Set<Long> productIds = new LinkedHashSet<>();
+        for (OrderDetail orderDetail : orderDetails) {
+            productIds.add(orderDetail.getProduct().getId());
+        }
+        Map<Long, Product> products = productService.getProductEntities(productIds);
+
         BigDecimal totalAmount = BigDecimal.ZERO;
         for (OrderDetail orderDetail : orderDetails) {
-            Product product = productService.getProductById(orderDetail.getProduct().getId())
-                    .orElseThrow(() -> new ObjectNotFoundException("Product '"+orderDetail.getProduct().getName()+"' not found"));
+            Long productId = orderDetail.getProduct().getId();
+            Product product = products.get(productId);
+            if (product == null) {
+                throw new ObjectNotFoundException("Product not found with id:" + productId);
+            }
             orderDetail.setProduct(product);
             orderDetail.setPrice(product.getPrice()); // Guarda el precio del producto en el momento de la compra
             orderDetail.setOrder(order); // Establece la relación con la orden
             totalAmount = totalAmount.add(product.getPrice().multiply(BigDecimal.valueOf(orderDetail.getQuantity())));
-
-             // Verificar y actualizar el stock
-            List<Stock> stocks = stockService.getStocksByProductId(product.getId());
-            int totalStock = 0;
-            for(Stock stock : stocks){
-                totalStock += stock.getQuantity();
-            }
-            if (totalStock < orderDetail.getQuantity()) {
-                throw new GeneralException("Insufficient stock for product '" + product.getName()+"'");
-            }
-            // Actualizar el stock (aquí se asume que hay una única ubicación de stock)
-            for(Stock stock : stocks){
-                 if(stock.getQuantity() >= orderDetail.getQuantity()){
-                    stockService.updateStockQuantity(product.getId(), stock.getLocation(), stock.getQuantity() - orderDetail.getQuantity());
-                    break;
-                 }
-                 else{
-                    orderDetail.setQuantity(orderDetail.getQuantity() - stock.getQuantity());
-                    stockService.updateStockQuantity(product.getId(), stock.getLocation(), 0);
-                 }
-
-            }
         }
 
+        // Verificar y descontar el stock de todas las lineas a la vez
+        stockService.allocateStock(orderDetails);
+
         order.setTotalAmount(totalAmount);
         order.setOrderDetails(orderDetails); // Asigna la lista de orderItems a la orden
         order = orderRepository.save(order); // Guarda la orden para obtener el ID
         orderDetailRepository.saveAll(orderDetails); // Guarda los orderItems
+        productService.recordSales(orderDetails);
 
         return order;
     }
@@ -100,4 +94,14 @@ public class OrderService {
     public Optional<Order> getOrderById(Long id) {
         return orderRepository.findById(id);
     }
+
+    public List<Map<String, Object>> getOrderFieldsByUser(String username, FieldSet fields) {
+        User user = userService.findByUsername(username)
+                .orElseThrow(() -> new ObjectNotFoundException("User '"+username+"' not found"));
+        return orderRepository.findFieldsByUserId(user.getId(), fields);
+    }
+
+    public Optional<Map<String, Object>> getOrderFieldsById(Long id, FieldSet fields) {
+        return orderRepository.findFieldsById(id, fields);
+    }
 }
@@ -5,36 +5,224 @@
 package com.java.demo.ecommerceapi.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.java.demo.ecommerceapi.cache.ProductCache;
+import com.java.demo.ecommerceapi.cache.ProductResponseCache;
+import com.java.demo.ecommerceapi.cache.SingleFlight;
+import com.java.demo.ecommerceapi.dto.FacetCountDTO;
+import com.java.demo.ecommerceapi.dto.FieldSet;
+import com.java.demo.ecommerceapi.dto.PriceStatsDTO;
+import com.java.demo.ecommerceapi.dto.ProductBatchDTO;
+import com.java.demo.ecommerceapi.dto.ProductCursor;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.dto.ProductSearchResultDTO;
+import com.java.demo.ecommerceapi.dto.ProductSuggestionDTO;
 import com.java.demo.ecommerceapi.exception.ObjectNotFoundException;
+import com.java.demo.ecommerceapi.model.Category;
+import com.java.demo.ecommerceapi.model.OrderDetail;
 import com.java.demo.ecommerceapi.model.Product;
+import com.java.demo.ecommerceapi.repository.CategoryRepository;
+import com.java.demo.ecommerceapi.repository.OrderDetailRepository;
 import com.java.demo.ecommerceapi.repository.ProductRepository;
+import com.java.demo.ecommerceapi.repository.ProductSearchFilter;
+import com.java.demo.ecommerceapi.search.ProductAvailabilityIndex;
+import com.java.demo.ecommerceapi.search.ProductFacetIndex;
+import com.java.demo.ecommerceapi.search.ProductIndex;
+import com.java.demo.ecommerceapi.search.ProductPriceIndex;
+import com.java.demo.ecommerceapi.search.ProductPriceStats;
+import com.java.demo.ecommerceapi.search.ProductSearchIndex;
+import com.java.demo.ecommerceapi.search.ProductSuggester;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 public class ProductService {
+    // Por encima de este numero de candidatos se deja el filtro por nombre a la base de datos
+    static final int MAX_INDEXED_CANDIDATES = 1000;
+    // Ids por consulta al traer productos por id
+    static final int MULTI_GET_BATCH = 500;
+
     private final ProductRepository productRepository;
+    private final OrderDetailRepository orderDetailRepository;
+    private final CategoryRepository categoryRepository;
+    private final ProductSearchIndex searchIndex;
+    private final ProductSuggester suggester;
+    private final ProductFacetIndex facetIndex;
+    private final ProductAvailabilityIndex availabilityIndex;
+    private final ProductPriceIndex priceIndex;
+    private final ProductPriceStats priceStats;
+    private final ProductCache productCache;
+    private final ProductResponseCache responseCache;
+    private final SingleFlight singleFlight;
+    private final List<ProductIndex> productIndexes;
 
     @Autowired
-    public ProductService(ProductRepository productRepository) {
+    public ProductService(ProductRepository productRepository, OrderDetailRepository orderDetailRepository,
+            CategoryRepository categoryRepository, ProductSearchIndex searchIndex, ProductSuggester suggester, ProductFacetIndex facetIndex,
+            ProductAvailabilityIndex availabilityIndex, ProductPriceIndex priceIndex, ProductPriceStats priceStats,
+            ProductCache productCache, ProductResponseCache responseCache,
+            SingleFlight singleFlight, List<ProductIndex> productIndexes) {
         this.productRepository = productRepository;
+        this.orderDetailRepository = orderDetailRepository;
+        this.categoryRepository = categoryRepository;
+        this.searchIndex = searchIndex;
+        this.suggester = suggester;
+        this.facetIndex = facetIndex;
+        this.availabilityIndex = availabilityIndex;
+        this.priceIndex = priceIndex;
+        this.priceStats = priceStats;
+        this.productCache = productCache;
+        this.responseCache = responseCache;
+        this.singleFlight = singleFlight;
+        this.productIndexes = productIndexes;
+    }
+
+    public List<ProductDTO> getAllProducts() {
+        return productRepository.findAllAsDTO();
     }
 
-    public List<Product> getAllProducts() {
-        return productRepository.findAll();
+    public List<ProductDTO> getProductsPage(ProductCursor after, int limit) {
+        Long afterId = (after == null || after.getId() == null) ? 0L : after.getId();
+        return productRepository.findPageAfterId(afterId, Limit.of(limit));
+    }
+
+    /**
+     * Listado (o pagina, con limit mayor a 0) que lee y devuelve solo los campos pedidos.
+     */
+    public List<Map<String, Object>> getProductFields(ProductCursor after, int limit, FieldSet fields) {
+        Long afterId = (after == null || after.getId() == null) ? null : after.getId();
+        return productRepository.findFieldsAfterId(afterId, fields, limit);
+    }
+
+    public Optional<Map<String, Object>> getProductFieldsById(Long id, FieldSet fields) {
+        return productRepository.findFieldsById(id, fields);
+    }
+
+    /**
+     * Recorre todo el catalogo fila por fila dentro de una transaccion de solo lectura,
+     * sin materializar la lista completa. Devuelve la cantidad de filas entregadas.
+     */
+    @Transactional(readOnly = true)
+    public long exportProducts(Consumer<ProductDTO> consumer) {
+        long rows = 0;
+        try (Stream<ProductDTO> products = productRepository.streamAllAsDTO()) {
+            for (ProductDTO product : (Iterable<ProductDTO>) products::iterator) {
+                consumer.accept(product);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Vuelve a cargar todos los indices en memoria desde la base de datos,
+     * incluida la popularidad (unidades vendidas) que usa el autocompletado.
+     */
+    @Transactional(readOnly = true)
+    public long rebuildIndexes() {
+        productIndexes.forEach(ProductIndex::clear);
+        long rows = exportProducts(product -> productIndexes.forEach(index -> index.index(product)));
+        for (OrderDetailRepository.ProductUnitsSold sold : orderDetailRepository.sumUnitsSoldByProduct()) {
+            suggester.addPopularity(sold.getProductId(), sold.getUnits());
+        }
+        return rows;
+    }
+
+    public List<ProductSuggestionDTO> suggestProducts(String prefix, int limit) {
+        return suggester.suggest(prefix, limit);
+    }
+
+    /**
+     * Suma las unidades vendidas a la popularidad del autocompletado. Dentro de una transaccion
+     * se aplica solo despues del commit, para no contar ventas de ordenes que se revierten.
+     */
+    public void recordSales(List<OrderDetail> orderDetails) {
+        Map<Long, Long> units = new HashMap<>();
+        for (OrderDetail detail : orderDetails) {
+            units.merge(detail.getProduct().getId(), (long) detail.getQuantity(), Long::sum);
+        }
+        afterCommit(() -> units.forEach(suggester::addPopularity));
     }
 
     public Optional<Product> getProductById(Long id) {
         return productRepository.findById(id);
     }
 
+    /**
+     * Entidades de varios productos con una sola consulta, indexadas por id; los inexistentes se omiten.
+     */
+    public Map<Long, Product> getProductEntities(Collection<Long> ids) {
+        Map<Long, Product> products = new HashMap<>();
+        for (Product product : productRepository.findAllById(ids)) {
+            products.put(product.getId(), product);
+        }
+        return products;
+    }
+
+    /**
+     * Lectura de un producto servida desde el cache; solo los fallos consultan la base de datos.
+     */
+    public Optional<ProductDTO> getProductDTOById(Long id) {
+        return productCache.get(id, productRepository::findDTOById);
+    }
+
+    /**
+     * Lectura de varios productos en el orden pedido (sin repetidos). Los que estan en cache no
+     * consultan la base de datos; el resto se trae con una consulta por cada MULTI_GET_BATCH ids.
+     * Los ids inexistentes se informan en missing.
+     */
+    public ProductBatchDTO getProductsByIds(List<Long> ids) {
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        Map<Long, ProductDTO> found = productCache.getAll(requested, this::findByIds);
+        List<ProductDTO> products = new ArrayList<>(found.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : requested) {
+            ProductDTO product = found.get(id);
+            if (product != null) {
+                products.add(product);
+            } else {
+                missing.add(id);
+            }
+        }
+        return new ProductBatchDTO(products, missing);
+    }
+
+    private Map<Long, ProductDTO> findByIds(Set<Long> ids) {
+        List<Long> pending = new ArrayList<>(ids);
+        Map<Long, ProductDTO> found = new HashMap<>();
+        for (int from = 0; from < pending.size(); from += MULTI_GET_BATCH) {
+            List<Long> batch = pending.subList(from, Math.min(from + MULTI_GET_BATCH, pending.size()));
+            for (ProductDTO product : productRepository.findByIdIn(batch)) {
+                found.put(product.getId(), product);
+            }
+        }
+        return found;
+    }
+
     public Product createProduct(Product product) {
-        return productRepository.save(product);
+        Product savedProduct = productRepository.save(product);
+        indexProduct(savedProduct, null);
+        responseCache.evictSearches();
+        return savedProduct;
     }
 
     @Transactional
@@ -42,12 +230,17 @@ public class ProductService {
         Optional<Product> existingProduct = productRepository.findById(id);
         if (existingProduct.isPresent()) {
             Product updatedProduct = existingProduct.get();
+            ProductDTO previous = new ProductDTO(updatedProduct);
             updatedProduct.setName(product.getName());
             updatedProduct.setDescription(product.getDescription());
             updatedProduct.setPrice(product.getPrice());
             updatedProduct.setBrand(product.getBrand());
             updatedProduct.setCategory(product.getCategory());
-            return productRepository.save(updatedProduct);
+            Product savedProduct = productRepository.save(updatedProduct);
+            indexProduct(savedProduct, previous);
+            productCache.evict(id);
+            responseCache.evictProduct(id);
+            return savedProduct;
         } else {
             throw new ObjectNotFoundException("Product '"+product.getName()+"' not found with id:" + id);
         }
@@ -57,35 +250,317 @@ public class ProductService {
         Optional<Product> product = productRepository.findById(id); 
         if (product.isPresent()) {
             productRepository.deleteById(id);
+            productIndexes.forEach(index -> index.remove(id));
+            productCache.evict(id);
+            responseCache.evictProduct(id);
         } else {
             throw new ObjectNotFoundException("Product not found with id:" + id);
         }
     }
 
-    public List<Product> searchProducts(String name, String categoryName, BigDecimal minPrice, BigDecimal maxPrice) {
-        if ((name == null || name.isEmpty()) && (categoryName == null || categoryName.isEmpty()) && minPrice == null && maxPrice == null) {
-            return productRepository.findAll();
+    public List<ProductDTO> searchProducts(String name, String categoryName, BigDecimal minPrice, BigDecimal maxPrice) {
+        return searchProducts(name, categoryName, minPrice, maxPrice, null, false);
+    }
+
+    /**
+     * Busqueda con cualquier combinacion de filtros (null significa sin filtro). La consulta solo incluye
+     * los predicados presentes; el nombre, la marca y el stock se resuelven antes contra los indices en memoria
+     * cuando es posible. Si solo se busca por nombre y no hay coincidencias se reintenta con tolerancia a errores.
+     */
+    public List<ProductDTO> searchProducts(String name, String categoryName, BigDecimal minPrice, BigDecimal maxPrice,
+            Long brandId, boolean inStock) {
+        boolean hasName = name != null && !name.isEmpty();
+        boolean hasOtherFilters = (categoryName != null && !categoryName.isEmpty()) || minPrice != null || maxPrice != null
+                || brandId != null || inStock;
+        if (!hasName && !hasOtherFilters) {
+            return productRepository.findAllAsDTO();
+        }
+        List<ProductDTO> products = coalesced(() -> {
+            ProductSearchFilter filter = ProductSearchFilter.of(name, categoryName, minPrice, maxPrice, brandId, inStock);
+            List<Long> candidates = candidates(name, minPrice, maxPrice, brandId, inStock);
+            if (candidates == null) {
+                return productRepository.search(filter);
+            }
+            if (candidates.isEmpty()) {
+                return List.of();
+            }
+            return productRepository.search(filter.withIds(candidates));
+        }, "search", name, categoryName, minPrice, maxPrice, brandId, inStock);
+        return (products.isEmpty() && hasName && !hasOtherFilters) ? searchProductsByNameFuzzy(name) : products;
+    }
+
+    /**
+     * Una pagina de la busqueda (por nombre e id, a partir del cursor) con los conteos por categoria, marca
+     * y rango de precio del conjunto completo de resultados. El conjunto se arma solo con los bitmaps en
+     * memoria y de la base de datos se carga unicamente la pagina. Si solo se busca por nombre y no hay
+     * coincidencias se usan las coincidencias con tolerancia a errores, como en searchProducts.
+     */
+    public ProductSearchResultDTO searchProductsWithFacets(String name, String categoryName, BigDecimal minPrice, BigDecimal maxPrice,
+            Long brandId, boolean inStock, ProductCursor after, int limit) {
+        boolean hasName = name != null && !name.isEmpty();
+        boolean hasOtherFilters = (categoryName != null && !categoryName.isEmpty()) || minPrice != null || maxPrice != null
+                || brandId != null || inStock;
+        ProductSearchFilter filter = ProductSearchFilter.of(name, categoryName, minPrice, maxPrice, brandId, inStock);
+        BitSet matches = matches(name, categoryName, minPrice, maxPrice, brandId, inStock);
+        if (matches.isEmpty() && hasName && !hasOtherFilters) {
+            BitSet fuzzy = searchIndex.matchNameFuzzy(name);
+            matches = new BitSet();
+            if (fuzzy != null) {
+                fuzzy.stream().limit(MAX_INDEXED_CANDIDATES).forEach(matches::set);
+            }
+            filter = ProductSearchFilter.of(null, null, null, null, null, false);
+        }
+        Map<String, List<FacetCountDTO>> facets = facetIndex.count(matches);
+        List<ProductDTO> page;
+        if (matches.isEmpty()) {
+            page = List.of();
+        } else if (matches.cardinality() > MAX_INDEXED_CANDIDATES) {
+            page = productRepository.searchPage(filter, after, limit);
+        } else {
+            page = productRepository.searchPage(filter.withIds(matches.stream().mapToObj(Long::valueOf).toList()), after, limit);
+        }
+        return new ProductSearchResultDTO(page, facets);
+    }
+
+    /**
+     * Minimo, maximo e histograma de precios de una categoria (o de todo el catalogo si categoryId
+     * es null), leidos de la estructura que se mantiene en cada alta, cambio y baja de producto.
+     */
+    public PriceStatsDTO getPriceStats(Long categoryId) {
+        return priceStats.stats(categoryId);
+    }
+
+    public List<ProductDTO> searchProductsPage(String name, String categoryName, BigDecimal minPrice, BigDecimal maxPrice,
+            Long brandId, boolean inStock, ProductCursor after, int limit) {
+        String afterName = after == null ? null : after.getName();
+        Long afterId = after == null ? null : after.getId();
+        return coalesced(() -> {
+            ProductSearchFilter filter = ProductSearchFilter.of(name, categoryName, minPrice, maxPrice, brandId, inStock);
+            List<Long> candidates = candidates(name, minPrice, maxPrice, brandId, inStock);
+            if (candidates == null) {
+                return productRepository.searchPage(filter, after, limit);
+            }
+            if (candidates.isEmpty()) {
+                return List.of();
+            }
+            return productRepository.searchPage(filter.withIds(candidates), after, limit);
+        }, "page", name, categoryName, minPrice, maxPrice, brandId, inStock, afterName, afterId, limit);
+    }
+
+    /**
+     * Busqueda ordenada por relevancia (BM25) sobre el indice en memoria. Si hay filtros adicionales
+     * se piden mas candidatos de los necesarios y se amplia la ventana hasta completar el limite.
+     */
+    public List<ProductDTO> searchProductsByRelevance(String name, String categoryName, BigDecimal minPrice, BigDecimal maxPrice,
+            Long brandId, boolean inStock, int limit) {
+        boolean filtered = categoryName != null || minPrice != null || maxPrice != null || brandId != null || inStock;
+        int window = limit;
+        while (true) {
+            List<ProductSearchIndex.ScoredProduct> ranked = searchIndex.rank(name, window);
+            if (ranked.isEmpty()) {
+                return List.of();
+            }
+            List<Long> ids = ranked.stream().map(ProductSearchIndex.ScoredProduct::productId).toList();
+            List<ProductDTO> found = filtered
+                    ? productRepository.search(
+                            new ProductSearchFilter(null, categoryName, minPrice, maxPrice, brandId, inStock, ids))
+                    : productRepository.findSummariesByIdIn(ids);
+            if (found.size() >= limit || ranked.size() < window || window >= MAX_INDEXED_CANDIDATES) {
+                List<ProductDTO> ordered = inRankingOrder(ranked, found);
+                return ordered.size() > limit ? ordered.subList(0, limit) : ordered;
+            }
+            window = Math.min(window * 4, MAX_INDEXED_CANDIDATES);
+        }
+    }
+
+    /**
+     * Busca los productos cuyo nombre contiene el texto (sin distinguir mayusculas); si no hay
+     * coincidencias reintenta con tolerancia a errores de tipeo.
+     */
+    public List<ProductDTO> searchProductsByName(String name) {
+        List<Long> candidates = nameCandidates(name);
+        List<ProductDTO> products;
+        if (candidates == null) {
+            products = productRepository.findByNameContainingIgnoreCase(name);
+        } else if (candidates.isEmpty()) {
+            products = List.of();
+        } else {
+            products = productRepository.findSummariesByIdIn(candidates);
         }
-        return productRepository.findByFilters(name, categoryName, minPrice, maxPrice);
+        return products.isEmpty() ? searchProductsByNameFuzzy(name) : products;
+    }
+
+    public List<ProductDTO> searchProductsByNameFuzzy(String name) {
+        BitSet matches = searchIndex.matchNameFuzzy(name);
+        if (matches == null || matches.isEmpty()) {
+            return List.of();
+        }
+        List<Long> candidates = matches.stream().limit(MAX_INDEXED_CANDIDATES).mapToObj(Long::valueOf).toList();
+        return productRepository.findSummariesByIdIn(candidates);
+    }
+
+    /**
+     * Las peticiones concurrentes por la misma categoria comparten una sola consulta (ver SingleFlight).
+     */
+    public List<ProductDTO> searchProductsByCategory(String categoryName) {
+        return coalesced(() -> productRepository.findByCategoryNameIgnoreCase(categoryName),
+                "category", categoryName == null ? null : categoryName.toLowerCase(Locale.ROOT));
     }
 
-    public List<Product> searchProductsByName(String name) {
-        return productRepository.findByNameContainingIgnoreCase(name);
+    public List<ProductDTO> searchProductsByPriceMinimun(BigDecimal minPrice) {
+        return searchProducts(null, null, minPrice, null, null, false);
     }
 
-    public List<Product> searchProductsByCategory(String categoryName) {
-        return productRepository.findByCategoryNameIgnoreCase(categoryName);
+    public List<ProductDTO> searchProductsByPriceMaximun(BigDecimal maxPrice) {
+        return searchProducts(null, null, null, maxPrice, null, false);
     }
 
-    public List<Product> searchProductsByPriceMinimun(BigDecimal minPrice) {
-        return productRepository.findByPriceMinimun(minPrice);
+    public List<ProductDTO> searchProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        return searchProducts(null, null, minPrice, maxPrice, null, false);
     }
 
-    public List<Product> searchProductsByPriceMaximun(BigDecimal maxPrice) {
-        return productRepository.findByPriceMaximun(maxPrice);
+    // La clave es el tipo de consulta mas sus argumentos
+    private List<ProductDTO> coalesced(Supplier<List<ProductDTO>> query, String kind, Object... args) {
+        return singleFlight.execute(kind + Arrays.toString(args), query);
     }
 
-    public List<Product> searchProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
-        return productRepository.findByPriceBetween(minPrice, maxPrice);
+    /**
+     * Aplica el cambio a los indices en memoria en el momento, para que la misma transaccion ya lo vea en las
+     * busquedas, y si la transaccion hace rollback los deja como estaban: con la version previa del producto
+     * o sin el producto si era nuevo (previous null).
+     */
+    private void indexProduct(Product product, ProductDTO previous) {
+        ProductDTO snapshot = new ProductDTO(product);
+        productIndexes.forEach(index -> index.index(snapshot));
+        Long id = snapshot.getId();
+        afterRollback(() -> productIndexes.forEach(index -> {
+            if (previous != null) {
+                index.index(previous);
+            } else {
+                index.remove(id);
+            }
+        }));
+    }
+
+    private static void afterRollback(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        action.run();
+                    }
+                }
+            });
+        }
+    }
+
+    // Cambios que solo deben verse si la transaccion confirma: dentro de una transaccion se aplica despues del commit
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private List<Long> nameCandidates(String name) {
+        return candidates(name, null, null, null, false);
+    }
+
+    /**
+     * Intersecta en memoria los filtros que tienen bitmap: nombre (subcadena, ver
+     * ProductSearchIndex.matchNameContaining), marca, disponibilidad y rango de precio. Devuelve null cuando el filtrado debe quedar en la base de datos (ningun filtro
+     * indexable, nombre sin terminos o demasiados candidatos) y una lista vacia cuando se sabe de
+     * antemano que no hay coincidencias.
+     * Los ids ya resuelven el nombre, sin distinguir acentos: la consulta final no lo vuelve a comparar,
+     * aplica el resto de los filtros y carga unicamente la pagina pedida.
+     */
+    private List<Long> candidates(String name, BigDecimal minPrice, BigDecimal maxPrice, Long brandId, boolean inStock) {
+        BitSet matches = null;
+        if (name != null && !name.isEmpty()) {
+            matches = searchIndex.matchNameContaining(name);
+            if (matches == null) {
+                return null;
+            }
+        }
+        if (brandId != null) {
+            matches = intersect(matches, facetIndex.brand(brandId));
+        }
+        if (inStock) {
+            matches = intersect(matches, availabilityIndex.inStock());
+        }
+        if (minPrice != null || maxPrice != null) {
+            // Un rango amplio sin otros filtros queda en la base de datos sin recorrerlo en memoria
+            if (matches == null && priceIndex.countInRange(minPrice, maxPrice) > MAX_INDEXED_CANDIDATES) {
+                return null;
+            }
+            matches = intersect(matches, priceIndex.matchRange(minPrice, maxPrice));
+        }
+        if (matches == null || matches.cardinality() > MAX_INDEXED_CANDIDATES) {
+            return null;
+        }
+        return matches.stream().mapToObj(Long::valueOf).toList();
+    }
+
+    // Todos los filtros resueltos en memoria, sin limite de candidatos: la base del conteo de facetas
+    private BitSet matches(String name, String categoryName, BigDecimal minPrice, BigDecimal maxPrice, Long brandId,
+            boolean inStock) {
+        BitSet matches = facetIndex.all();
+        if (name != null && !name.isEmpty()) {
+            BitSet byName = searchIndex.matchNameContaining(name);
+            if (byName == null) {
+                byName = new BitSet();
+                for (Long id : productRepository.findIdsByNameContainingIgnoreCase(name)) {
+                    byName.set(Math.toIntExact(id));
+                }
+            }
+            matches.and(byName);
+        }
+        if (categoryName != null && !categoryName.isEmpty()) {
+            BitSet categories = new BitSet();
+            for (Category category : categoryRepository.findByNameIgnoreCase(categoryName)) {
+                categories.or(facetIndex.category(category.getId()));
+            }
+            matches.and(categories);
+        }
+        if (brandId != null) {
+            matches.and(facetIndex.brand(brandId));
+        }
+        if (inStock) {
+            matches.and(availabilityIndex.inStock());
+        }
+        if (minPrice != null || maxPrice != null) {
+            matches.and(priceIndex.matchRange(minPrice, maxPrice));
+        }
+        return matches;
+    }
+
+    private static BitSet intersect(BitSet matches, BitSet filter) {
+        if (matches == null) {
+            return filter;
+        }
+        matches.and(filter);
+        return matches;
+    }
+
+    private static List<ProductDTO> inRankingOrder(List<ProductSearchIndex.ScoredProduct> ranked, List<ProductDTO> found) {
+        Map<Long, ProductDTO> byId = new HashMap<>();
+        for (ProductDTO product : found) {
+            byId.put(product.getId(), product);
+        }
+        List<ProductDTO> ordered = new ArrayList<>(found.size());
+        for (ProductSearchIndex.ScoredProduct scored : ranked) {
+            ProductDTO product = byId.get(scored.productId());
+            if (product != null) {
+                ordered.add(product);
+            }
+        }
+        return ordered;
     }
 }
@@ -7,25 +7,71 @@ package com.java.demo.ecommerceapi.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.java.demo.ecommerceapi.cache.CatalogVersion;
+import com.java.demo.ecommerceapi.dto.StockLevelDTO;
+import com.java.demo.ecommerceapi.exception.BadRequestException;
+import com.java.demo.ecommerceapi.exception.GeneralException;
 import com.java.demo.ecommerceapi.exception.ObjectNotFoundException;
+import com.java.demo.ecommerceapi.model.OrderDetail;
+import com.java.demo.ecommerceapi.model.Product;
 import com.java.demo.ecommerceapi.model.Stock;
 import com.java.demo.ecommerceapi.repository.StockRepository;
+import com.java.demo.ecommerceapi.reservation.Reservation;
+import com.java.demo.ecommerceapi.reservation.StockReservationEngine;
+import com.java.demo.ecommerceapi.search.ProductAvailabilityIndex;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class StockService {
     private final StockRepository stockRepository;
+    private final ProductAvailabilityIndex availabilityIndex;
+    private final CatalogVersion catalogVersion;
+    private final StockShardRebalancer shardRebalancer;
+    // Solo existe con stock.reservations.enabled=true
+    private final StockReservationEngine reservations;
+
+    public static final int MAX_SHARDS = 64;
+
+    // Descuento planificado sobre una fila leida al comienzo de la compra
+    private record Decrement(Long productId, StockLevelDTO stock, int quantity) {
+    }
 
     @Autowired
-    public StockService(StockRepository stockRepository) {
+    public StockService(StockRepository stockRepository, ProductAvailabilityIndex availabilityIndex,
+            CatalogVersion catalogVersion, StockShardRebalancer shardRebalancer,
+            @Autowired(required = false) StockReservationEngine reservations) {
         this.stockRepository = stockRepository;
+        this.availabilityIndex = availabilityIndex;
+        this.catalogVersion = catalogVersion;
+        this.shardRebalancer = shardRebalancer;
+        this.reservations = reservations;
+    }
+
+    /**
+     * Vuelve a cargar desde la base de datos el conjunto de productos con stock disponible.
+     */
+    public int rebuildAvailability() {
+        List<Long> productIds = stockRepository.findProductIdsInStock();
+        availabilityIndex.rebuild(productIds);
+        return productIds.size();
     }
 
     public List<Stock> getAllStocks() {
-        return stockRepository.findAll();
+        return combineShards(stockRepository.findAll());
     }
 
     public Optional<Stock> getStockById(Long id) {
@@ -38,48 +84,403 @@ public class StockService {
     }
 
     public Stock createStock(Stock stock) {
-        return stockRepository.save(stock);
+        flushReservations();
+        Stock savedStock = stockRepository.save(stock);
+        refreshAvailability(savedStock.getProduct());
+        return savedStock;
     }
 
+    /**
+     * Reemplaza producto, cantidad y ubicacion de una fila. La cantidad es el total de la ubicacion, igual que en
+     * updateStockQuantity: si la ubicacion esta repartida en subcontadores se vacian y se vuelve a repartir, y si
+     * la fila cambia de producto o de ubicacion los subcontadores que deja se borran. Un subcontador no se puede
+     * actualizar por separado.
+     */
+    @Transactional
     public Stock updateStock(Long id, Stock stock) {
+        flushReservations();
         Optional<Stock> existingStock = stockRepository.findById(id);
         if (existingStock.isPresent()) {
             Stock updatedStock = existingStock.get();
+            if (updatedStock.getShard() > 0) {
+                throw new BadRequestException("Stock id " + id + " is a shard of a split location, update the location's main row instead");
+            }
+            Product previousProduct = updatedStock.getProduct();
+            String previousLocation = updatedStock.getLocation();
             updatedStock.setProduct(stock.getProduct());
             updatedStock.setQuantity(stock.getQuantity());
             updatedStock.setLocation(stock.getLocation());
-            return stockRepository.save(updatedStock);
+            Stock savedStock = stockRepository.save(updatedStock);
+            if (previousProduct != null && previousProduct.getId() != null) {
+                Long previousProductId = previousProduct.getId();
+                boolean moved = savedStock.getProduct() == null
+                        || !previousProductId.equals(savedStock.getProduct().getId())
+                        || !Objects.equals(previousLocation, savedStock.getLocation());
+                if (moved) {
+                    stockRepository.deleteShards(previousProductId, previousLocation);
+                } else if (stockRepository.clearShards(previousProductId, previousLocation) > 0) {
+                    shardRebalancer.rebalance(stockRepository.findShardLevels(previousProductId, previousLocation));
+                }
+            }
+            refreshAvailability(previousProduct);
+            refreshAvailability(savedStock.getProduct());
+            return savedStock;
         } else {
              throw new ObjectNotFoundException("Stock of '"+stock.getProduct().getName()+"' not found with id:" + id);
         }
     }
 
+    @Transactional
     public void deleteStock(Long id) {
+        flushReservations();
         Optional<Stock> stock = stockRepository.findById(id); 
         if (stock.isPresent()) {
             stockRepository.deleteById(id);
+            // Al borrar la fila principal se borran tambien sus subcontadores
+            Stock deleted = stock.get();
+            if (deleted.getShard() == 0 && deleted.getProduct() != null) {
+                stockRepository.deleteShards(deleted.getProduct().getId(), deleted.getLocation());
+            }
+            refreshAvailability(deleted.getProduct());
         } else {
             throw new ObjectNotFoundException("Stock not found with id:" + id);
         }
     }
 
     public Optional<Stock> getStockByProductIdAndLocation(Long productId, String location) {
-        return stockRepository.findByProductIdAndLocation(productId, location);
+        return combineShards(stockRepository.findShardsByProductIdAndLocation(productId, location)).stream().findFirst();
     }
 
     public List<Stock> getStocksByProductId(Long productId) {
-        return stockRepository.findByProductId(productId);
+        return combineShards(stockRepository.findByProductId(productId));
     }
 
     @Transactional
     public void updateStockQuantity(Long productId, String location, int quantity) {
+        flushReservations();
         Optional<Stock> stock = stockRepository.findByProductIdAndLocation(productId, location);
         if (stock.isPresent()) {
             Stock stockToUpdate = stock.get();
             stockToUpdate.setQuantity(quantity);
             stockRepository.save(stockToUpdate);
+            // La cantidad es el total de la ubicacion: queda en la fila principal y luego se reparte
+            if (stockRepository.clearShards(productId, location) > 0) {
+                shardRebalancer.rebalance(stockRepository.findShardLevels(productId, location));
+            }
+            refreshAvailability(productId);
         } else {
             throw new ObjectNotFoundException("Stock not found for product id:"+productId+" and location:"+location);
         }
     }
+
+    /**
+     * Reparte la cantidad de un producto en una ubicacion entre shards filas (subcontadores) para que las
+     * compras concurrentes no compitan por una sola. Con menos filas que antes, las sobrantes pasan sus
+     * unidades a la principal y se borran. Devuelve las filas resultantes ya equilibradas.
+     */
+    @Transactional
+    public List<StockLevelDTO> splitStock(Long productId, String location, int shards) {
+        if (shards < 1 || shards > MAX_SHARDS) {
+            throw new BadRequestException("The shard count must be between 1 and " + MAX_SHARDS);
+        }
+        flushReservations();
+        List<Stock> rows = stockRepository.findShardsByProductIdAndLocation(productId, location);
+        if (rows.isEmpty()) {
+            throw new ObjectNotFoundException("Stock not found for product id:"+productId+" and location:"+location);
+        }
+        Stock primary = rows.get(0);
+        boolean[] present = new boolean[shards];
+        for (Stock row : rows) {
+            if (row.getShard() < shards) {
+                present[row.getShard()] = true;
+            } else {
+                mergeInto(row.getId(), primary.getId());
+            }
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            if (!present[shard]) {
+                stockRepository.save(new Stock(null, primary.getProduct(), 0, location, shard));
+            }
+        }
+        shardRebalancer.rebalance(stockRepository.findShardLevels(productId, location));
+        catalogVersion.stockChanged();
+        refreshAvailability(productId);
+        return stockRepository.findShardLevels(productId, location);
+    }
+
+    // Pasa todas las unidades de una fila a otra y la borra; las compras concurrentes solo pueden vaciarla
+    private void mergeInto(Long shardId, Long primaryId) {
+        while (true) {
+            int quantity = stockRepository.findQuantityById(shardId).orElse(0);
+            if (quantity > 0 && stockRepository.decrementIfAvailable(shardId, quantity) == 1) {
+                stockRepository.increment(primaryId, quantity);
+            }
+            if (stockRepository.deleteIfEmpty(shardId) == 1 || stockRepository.findQuantityById(shardId).isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Descuenta de las filas de stock las cantidades de las lineas de una orden. Las cantidades de todos los
+     * productos se leen con una sola consulta y las filas se descuentan en un solo lote con
+     * decrementAllIfAvailable, que solo modifica cada fila si todavia tiene la cantidad pedida: la decision
+     * depende de las filas afectadas y no de lo leido, asi dos compras concurrentes nunca venden la misma
+     * unidad. Si una fila cambio entre la lectura y el descuento se relee su cantidad y lo que falto se
+     * descuenta fila por fila con decrementIfAvailable. Si algun producto no alcanza se lanza
+     * GeneralException y la transaccion revierte los descuentos ya hechos.
+     * En una ubicacion repartida en subcontadores se elige al azar uno que alcance solo, asi las compras
+     * concurrentes de un mismo producto se distribuyen entre filas distintas.
+     */
+    @Transactional
+    public void allocateStock(List<OrderDetail> orderDetails) {
+        // Productos y filas en orden de id: las compras concurrentes bloquean las filas siempre en el mismo orden
+        Map<Long, Integer> requested = new TreeMap<>();
+        Map<Long, Product> products = new HashMap<>();
+        for (OrderDetail detail : orderDetails) {
+            if (detail.getQuantity() <= 0) {
+                throw new BadRequestException("The quantity for product id " + detail.getProduct().getId()
+                        + " must be greater than zero");
+            }
+            requested.merge(detail.getProduct().getId(), detail.getQuantity(), Integer::sum);
+            products.put(detail.getProduct().getId(), detail.getProduct());
+        }
+        if (reservations != null) {
+            reserveInMemory(requested, products);
+            return;
+        }
+        Map<Long, List<StockLevelDTO>> stocksByProduct = new HashMap<>();
+        for (StockLevelDTO stock : stockRepository.findLevelsByProductIdIn(requested.keySet())) {
+            stocksByProduct.computeIfAbsent(stock.getProductId(), id -> new ArrayList<>()).add(stock);
+        }
+
+        // Si lo leido ya no alcanza se rechaza la orden sin escribir nada
+        for (Map.Entry<Long, Integer> entry : requested.entrySet()) {
+            int total = 0;
+            for (StockLevelDTO stock : stocksByProduct.getOrDefault(entry.getKey(), List.of())) {
+                total += stock.getQuantity();
+            }
+            if (total < entry.getValue()) {
+                throw insufficientStock(products.get(entry.getKey()));
+            }
+        }
+
+        // Los descuentos se planifican con lo leido y se envian juntos en un lote, en el orden de filas de siempre
+        List<Decrement> decrements = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : requested.entrySet()) {
+            int pending = entry.getValue();
+            for (List<StockLevelDTO> shards : byLocation(stocksByProduct.getOrDefault(entry.getKey(), List.of()))) {
+                pending -= plan(entry.getKey(), shards, pending, decrements);
+                if (pending == 0) {
+                    break;
+                }
+            }
+        }
+        int[] updated = stockRepository.decrementAllIfAvailable(
+                decrements.stream().map(decrement -> decrement.stock().getId()).toList(),
+                decrements.stream().map(Decrement::quantity).toList());
+
+        // Otra compra cambio alguna fila despues de leerla: lo que falto se descuenta fila por fila
+        Map<Long, Integer> shortfall = new TreeMap<>();
+        for (int i = 0; i < decrements.size(); i++) {
+            Decrement decrement = decrements.get(i);
+            if (updated[i] == 1) {
+                decrement.stock().setQuantity(decrement.stock().getQuantity() - decrement.quantity());
+            } else {
+                decrement.stock().setQuantity(stockRepository.findQuantityById(decrement.stock().getId()).orElse(0));
+                shortfall.merge(decrement.productId(), decrement.quantity(), Integer::sum);
+            }
+        }
+        for (Map.Entry<Long, Integer> entry : shortfall.entrySet()) {
+            int pending = entry.getValue();
+            for (List<StockLevelDTO> shards : byLocation(stocksByProduct.getOrDefault(entry.getKey(), List.of()))) {
+                pending -= allocate(shards, pending);
+                if (pending == 0) {
+                    break;
+                }
+            }
+            if (pending > 0) {
+                throw insufficientStock(products.get(entry.getKey()));
+            }
+        }
+
+        // Las sentencias UPDATE masivas no pasan por StockChangeListener
+        catalogVersion.stockChanged();
+        for (Object[] total : stockRepository.sumQuantityByProductIdIn(requested.keySet())) {
+            availabilityIndex.update((Long) total[0], ((Number) total[1]).longValue());
+        }
+    }
+
+    // Con el motor de reservas la orden reserva en memoria y el descuento llega a la tabla en segundo plano
+    private void reserveInMemory(Map<Long, Integer> requested, Map<Long, Product> products) {
+        Reservation reservation = reservations.reserve(requested);
+        if (!reservation.isReserved()) {
+            throw insufficientStock(products.get(reservation.shortProductId()));
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Si la orden no llega a guardarse las unidades vuelven a estar disponibles
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        reservations.release(reservation);
+                        requested.keySet().forEach(id -> availabilityIndex.update(id, reservations.available(id)));
+                    }
+                }
+            });
+        }
+        catalogVersion.stockChanged();
+        requested.keySet().forEach(id -> availabilityIndex.update(id, reservations.available(id)));
+    }
+
+    // Elige, con las cantidades leidas, de que filas de una ubicacion salen hasta wanted unidades
+    private static int plan(Long productId, List<StockLevelDTO> shards, int wanted, List<Decrement> decrements) {
+        if (shards.size() > 1) {
+            List<StockLevelDTO> candidates = new ArrayList<>();
+            for (StockLevelDTO shard : shards) {
+                if (shard.getQuantity() >= wanted) {
+                    candidates.add(shard);
+                }
+            }
+            if (!candidates.isEmpty()) {
+                StockLevelDTO shard = candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+                decrements.add(new Decrement(productId, shard, wanted));
+                return wanted;
+            }
+        }
+        int taken = 0;
+        for (StockLevelDTO shard : shards) {
+            int quantity = Math.min(wanted - taken, shard.getQuantity());
+            if (quantity > 0) {
+                decrements.add(new Decrement(productId, shard, quantity));
+                taken += quantity;
+            }
+            if (taken == wanted) {
+                break;
+            }
+        }
+        return taken;
+    }
+
+    // Descuenta hasta wanted unidades de las filas de una ubicacion y devuelve cuantas desconto
+    private int allocate(List<StockLevelDTO> shards, int wanted) {
+        if (shards.size() > 1) {
+            List<StockLevelDTO> candidates = new ArrayList<>();
+            for (StockLevelDTO shard : shards) {
+                if (shard.getQuantity() >= wanted) {
+                    candidates.add(shard);
+                }
+            }
+            while (!candidates.isEmpty()) {
+                StockLevelDTO shard = candidates.remove(ThreadLocalRandom.current().nextInt(candidates.size()));
+                if (stockRepository.decrementIfAvailable(shard.getId(), wanted) == 1) {
+                    shard.setQuantity(shard.getQuantity() - wanted);
+                    return wanted;
+                }
+                shard.setQuantity(stockRepository.findQuantityById(shard.getId()).orElse(0));
+            }
+        }
+        // Ninguna fila alcanza sola: se toma de varias en orden de id, el mismo para todas las compras
+        int taken = 0;
+        for (StockLevelDTO shard : shards) {
+            taken += decrement(shard, wanted - taken);
+            if (taken == wanted) {
+                break;
+            }
+        }
+        return taken;
+    }
+
+    // Filas agrupadas por ubicacion, en el orden de la primera fila de cada una
+    private static Collection<List<StockLevelDTO>> byLocation(List<StockLevelDTO> stocks) {
+        Map<String, List<StockLevelDTO>> byLocation = new LinkedHashMap<>();
+        for (StockLevelDTO stock : stocks) {
+            byLocation.computeIfAbsent(stock.getLocation(), location -> new ArrayList<>()).add(stock);
+        }
+        return byLocation.values();
+    }
+
+    // Las filas de shard > 0 se suman, en una copia, a la fila principal de su producto y ubicacion
+    private static List<Stock> combineShards(List<Stock> stocks) {
+        Map<List<Object>, Integer> shardQuantities = new HashMap<>();
+        for (Stock stock : stocks) {
+            if (stock.getShard() > 0) {
+                shardQuantities.merge(locationKey(stock), stock.getQuantity(), Integer::sum);
+            }
+        }
+        if (shardQuantities.isEmpty()) {
+            return stocks;
+        }
+        List<Stock> combined = new ArrayList<>();
+        for (Stock stock : stocks) {
+            if (stock.getShard() == 0) {
+                Integer shardQuantity = shardQuantities.get(locationKey(stock));
+                combined.add(shardQuantity == null ? stock : new Stock(stock.getId(), stock.getProduct(),
+                        stock.getQuantity() + shardQuantity, stock.getLocation()));
+            }
+        }
+        return combined;
+    }
+
+    private static List<Object> locationKey(Stock stock) {
+        return Arrays.asList(stock.getProduct() == null ? null : stock.getProduct().getId(), stock.getLocation());
+    }
+
+    // Descuenta de una fila hasta wanted unidades y devuelve cuantas desconto
+    private int decrement(StockLevelDTO stock, int wanted) {
+        int taken = Math.min(wanted, stock.getQuantity());
+        while (taken > 0) {
+            if (stockRepository.decrementIfAvailable(stock.getId(), taken) == 1) {
+                stock.setQuantity(stock.getQuantity() - taken);
+                return taken;
+            }
+            // Otra compra modifico la fila despues de leerla
+            stock.setQuantity(stockRepository.findQuantityById(stock.getId()).orElse(0));
+            taken = Math.min(wanted, stock.getQuantity());
+        }
+        return 0;
+    }
+
+    private static GeneralException insufficientStock(Product product) {
+        return new GeneralException("Insufficient stock for product '" + product.getName() + "'");
+    }
+
+    // El total se recalcula en la base de datos porque un producto puede tener stock en varias ubicaciones
+    private void refreshAvailability(Product product) {
+        if (product != null && product.getId() != null) {
+            refreshAvailability(product.getId());
+        }
+    }
+
+    private void refreshAvailability(Long productId) {
+        if (reservations == null) {
+            availabilityIndex.update(productId, stockRepository.sumQuantityByProductId(productId));
+            return;
+        }
+        // El motor relee las filas una vez confirmado el cambio, y desde ahi es la fuente de las cantidades
+        afterCommit(() -> {
+            reservations.reload(List.of(productId));
+            availabilityIndex.update(productId, reservations.available(productId));
+        });
+    }
+
+    // Con el motor de reservas se persiste lo reservado antes de escribir cantidades absolutas
+    private void flushReservations() {
+        if (reservations != null) {
+            reservations.flush();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 }
@@ -0,0 +1,179 @@
+package com.java.demo.ecommerceapi.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.java.demo.ecommerceapi.dto.StockLevelDTO;
+import com.java.demo.ecommerceapi.repository.StockRepository;
+import com.java.demo.ecommerceapi.reservation.StockReservationEngine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Reparte en partes iguales la cantidad de un producto en una ubicacion entre sus subcontadores (ver
+ * Stock.shard). Cada movimiento es un descuento condicional en la fila que cede y un incremento en la que
+ * recibe, en una misma transaccion: si una compra se llevo esas unidades antes, el movimiento se omite.
+ * Cada stock.shards.rebalance-interval revisa las ubicaciones repartidas y equilibra las que tienen alguna
+ * fila por debajo de la mitad de su parte, que es cuando las compras empiezan a caer en una sola fila.
+ */
+@Component
+public class StockShardRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(StockShardRebalancer.class);
+
+    private final StockRepository stockRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final StockReservationEngine reservations;
+    private final Duration interval;
+    private final Counter failures;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public StockShardRebalancer(StockRepository stockRepository, PlatformTransactionManager transactionManager,
+            @Autowired(required = false) StockReservationEngine reservations,
+            MeterRegistry meterRegistry,
+            @Value("${stock.shards.rebalance-interval:30s}") Duration interval) {
+        this.stockRepository = stockRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.reservations = reservations;
+        this.interval = interval;
+        this.failures = Counter.builder("stock.shards.rebalance.failures")
+                .description("Scheduled rebalances of sharded stock that failed and were left for the next cycle")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        // Con el motor de reservas las compras no compiten por filas de la tabla
+        if (reservations != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-shards-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scheduledRebalance, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /** Equilibra las ubicaciones desbalanceadas y devuelve cuantas unidades movio. */
+    public int rebalanceAll() {
+        int moved = 0;
+        List<StockLevelDTO> group = new ArrayList<>();
+        for (StockLevelDTO level : stockRepository.findShardedLevels()) {
+            if (!group.isEmpty() && !sameLocation(group.get(0), level)) {
+                moved += rebalanceIfStarved(group);
+                group = new ArrayList<>();
+            }
+            group.add(level);
+        }
+        return group.isEmpty() ? moved : moved + rebalanceIfStarved(group);
+    }
+
+    /**
+     * Mueve unidades entre las filas de una ubicacion (en orden de shard) hasta que cada una tenga
+     * total / n, mas una unidad las primeras si no divide exacto. Devuelve cuantas unidades movio.
+     */
+    public int rebalance(List<StockLevelDTO> shards) {
+        int count = shards.size();
+        if (count < 2) {
+            return 0;
+        }
+        long total = 0;
+        for (StockLevelDTO shard : shards) {
+            total += Math.max(0, shard.getQuantity());
+        }
+        int[] deficit = new int[count];
+        for (int i = 0; i < count; i++) {
+            long target = total / count + (i < total % count ? 1 : 0);
+            deficit[i] = (int) (target - shards.get(i).getQuantity());
+        }
+        int moved = 0;
+        int receiver = 0;
+        for (int donor = 0; donor < count; donor++) {
+            while (deficit[donor] < 0) {
+                while (receiver < count && deficit[receiver] <= 0) {
+                    receiver++;
+                }
+                if (receiver == count) {
+                    return moved;
+                }
+                int amount = Math.min(-deficit[donor], deficit[receiver]);
+                if (!move(shards.get(donor), shards.get(receiver), amount)) {
+                    // La fila cambio desde la lectura: la siguiente pasada parte de los valores nuevos
+                    break;
+                }
+                deficit[donor] += amount;
+                deficit[receiver] -= amount;
+                moved += amount;
+            }
+        }
+        return moved;
+    }
+
+    private int rebalanceIfStarved(List<StockLevelDTO> shards) {
+        long total = 0;
+        int min = Integer.MAX_VALUE;
+        for (StockLevelDTO shard : shards) {
+            total += Math.max(0, shard.getQuantity());
+            min = Math.min(min, shard.getQuantity());
+        }
+        return (long) min * 2 * shards.size() < total ? rebalance(shards) : 0;
+    }
+
+    private boolean move(StockLevelDTO from, StockLevelDTO to, int amount) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            // Las filas se bloquean en orden ascendente de id, como en el checkout, para no cruzarse con el
+            if (to.getId() < from.getId()) {
+                stockRepository.increment(to.getId(), amount);
+                if (stockRepository.decrementIfAvailable(from.getId(), amount) != 1) {
+                    status.setRollbackOnly();
+                    return false;
+                }
+                return true;
+            }
+            if (stockRepository.decrementIfAvailable(from.getId(), amount) != 1) {
+                return false;
+            }
+            stockRepository.increment(to.getId(), amount);
+            return true;
+        }));
+    }
+
+    private void scheduledRebalance() {
+        try {
+            rebalanceAll();
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.error("No se pudo equilibrar el stock repartido, se reintenta en {}", interval, e);
+        }
+    }
+
+    private static boolean sameLocation(StockLevelDTO a, StockLevelDTO b) {
+        return Objects.equals(a.getProductId(), b.getProductId()) && Objects.equals(a.getLocation(), b.getLocation());
+    }
+}
@@ -0,0 +1,83 @@
+package com.java.demo.ecommerceapi.benchmark;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.java.demo.ecommerceapi.dto.OrderDTO;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.enums.OrderStatus;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara JSON contra CBOR y Smile al serializar y deserializar una pagina de 500 productos
+ * (o de 500 ordenes). El tamano de cada carga se imprime al preparar el benchmark.
+ * Ejecutar con: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ProductEncodingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductEncodingBenchmark {
+
+    private static final int ROWS = 500;
+
+    @Param({ "json", "cbor", "smile" })
+    public String format;
+
+    @Param({ "products", "orders" })
+    public String payload;
+
+    private ObjectMapper mapper;
+    private List<?> values;
+    private JavaType type;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Mismo builder que usan los convertidores de la aplicacion (ver BinaryFormatsConfig)
+        mapper = switch (format) {
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor().build();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile().build();
+            default -> Jackson2ObjectMapperBuilder.json().build();
+        };
+        Random random = new Random(42);
+        if ("orders".equals(payload)) {
+            List<OrderDTO> orders = new ArrayList<>();
+            for (long i = 1; i <= ROWS; i++) {
+                orders.add(new OrderDTO(i, 1 + i % 50, LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(i),
+                        BigDecimal.valueOf(100 + random.nextInt(100_000), 2), OrderStatus.PENDING));
+            }
+            values = orders;
+            type = mapper.getTypeFactory().constructCollectionType(List.class, OrderDTO.class);
+        } else {
+            List<ProductDTO> products = new ArrayList<>();
+            for (long i = 1; i <= ROWS; i++) {
+                products.add(new ProductDTO(i, "Product " + i, BigDecimal.valueOf(100 + random.nextInt(100_000), 2),
+                        1 + i % 20, 1 + i % 50, 0L));
+            }
+            values = products;
+            type = mapper.getTypeFactory().constructCollectionType(List.class, ProductDTO.class);
+        }
+        encoded = mapper.writeValueAsBytes(values);
+        System.out.println(payload + " as " + format + ": " + encoded.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return mapper.writeValueAsBytes(values);
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return mapper.readValue(encoded, type);
+    }
+}
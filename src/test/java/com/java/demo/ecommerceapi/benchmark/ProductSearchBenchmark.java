@@ -0,0 +1,121 @@
+package com.java.demo.ecommerceapi.benchmark;
+
+import com.java.demo.ecommerceapi.EcommerceApiApplication;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.model.Brand;
+import com.java.demo.ecommerceapi.model.Category;
+import com.java.demo.ecommerceapi.model.Product;
+import com.java.demo.ecommerceapi.repository.BrandRepository;
+import com.java.demo.ecommerceapi.repository.CategoryRepository;
+import com.java.demo.ecommerceapi.repository.ProductRepository;
+import com.java.demo.ecommerceapi.repository.ProductSearchFilter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara la busqueda armada con Criteria (solo los predicados presentes) contra la consulta anterior
+ * con predicados ":x is null or ..." sobre un catalogo de 20.000 productos en H2.
+ * Ejecutar con: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ProductSearchBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductSearchBenchmark {
+
+    private static final int PRODUCTS = 20_000;
+
+    // Consulta generica que reemplazo el planificador
+    private static final String LEGACY_QUERY = "SELECT new com.java.demo.ecommerceapi.dto.ProductDTO(" +
+            "p.id, p.name, p.description, p.price, p.brand.id, p.category.id, p.version) FROM Product p WHERE " +
+            "(:name is null or lower(p.name) like lower(concat('%', :name, '%'))) and " +
+            "(:categoryName is null or lower(p.category.name) = lower(:categoryName)) and " +
+            "(:minPrice is null or p.price >= :minPrice) and " +
+            "(:maxPrice is null or p.price <= :maxPrice) and " +
+            "(:brandId is null or p.brand.id = :brandId) " +
+            "ORDER BY p.id ASC";
+
+    @Param({ "price", "brand", "category+price" })
+    public String filters;
+
+    private ConfigurableApplicationContext context;
+    private ProductRepository productRepository;
+    private EntityManagerFactory entityManagerFactory;
+    private ProductSearchFilter filter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SpringApplication.run(EcommerceApiApplication.class,
+                "--spring.main.web-application-type=none", "--spring.jpa.show-sql=false", "--logging.level.root=WARN");
+        productRepository = context.getBean(ProductRepository.class);
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+
+        List<Brand> brands = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Brand brand = new Brand();
+            brand.setName("Brand " + i);
+            brands.add(context.getBean(BrandRepository.class).save(brand));
+        }
+        List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Category category = new Category();
+            category.setName("Category " + i);
+            categories.add(context.getBean(CategoryRepository.class).save(category));
+        }
+        Random random = new Random(42);
+        List<Product> batch = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            batch.add(new Product(null, "Product " + i, "Description " + i,
+                    BigDecimal.valueOf(100 + random.nextInt(100_000), 2),
+                    brands.get(random.nextInt(brands.size())), categories.get(random.nextInt(categories.size())),
+                    null, null, null));
+            if (batch.size() == 1000) {
+                productRepository.saveAll(batch);
+                batch.clear();
+            }
+        }
+
+        filter = switch (filters) {
+            case "price" -> ProductSearchFilter.of(null, null, new BigDecimal("10.00"), new BigDecimal("12.00"), null, false);
+            case "brand" -> ProductSearchFilter.of(null, null, null, null, brands.get(3).getId(), false);
+            default -> ProductSearchFilter.of(null, "Category 7", new BigDecimal("10.00"), new BigDecimal("200.00"), null, false);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ProductDTO> planner() {
+        return productRepository.search(filter);
+    }
+
+    @Benchmark
+    public List<ProductDTO> legacy() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return entityManager.createQuery(LEGACY_QUERY, ProductDTO.class)
+                    .setParameter("name", filter.name())
+                    .setParameter("categoryName", filter.categoryName())
+                    .setParameter("minPrice", filter.minPrice())
+                    .setParameter("maxPrice", filter.maxPrice())
+                    .setParameter("brandId", filter.brandId())
+                    .getResultList();
+        } finally {
+            entityManager.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.java.demo.ecommerceapi.benchmark;
+
+import com.java.demo.ecommerceapi.dto.StockLevelDTO;
+import com.java.demo.ecommerceapi.reservation.ReservationLedger;
+import com.java.demo.ecommerceapi.reservation.ReservationLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reservas por segundo sobre un solo producto (dos ubicaciones) con varios hilos compitiendo, incluida la
+ * escritura de cada reserva en el registro. Con sync=true cada reserva ademas espera el fsync.
+ * Ejecutar con: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=StockReservationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class StockReservationBenchmark {
+
+    private static final Map<Long, Integer> ONE_UNIT = Map.of(1L, 1);
+
+    @Param({ "false", "true" })
+    public boolean sync;
+
+    private Path directory;
+    private ReservationLedger ledger;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("stock-reservations");
+        ledger = new ReservationLedger(new ReservationLog(directory.resolve("reservations.log"), sync), 1);
+        ledger.load(List.of(new StockLevelDTO(1L, 1L, "Bodega A", Integer.MAX_VALUE / 2),
+                new StockLevelDTO(2L, 1L, "Bodega B", Integer.MAX_VALUE / 2)));
+    }
+
+    // Equivale al flush periodico del motor, sin la base de datos
+    @TearDown(Level.Iteration)
+    public void flush() throws IOException {
+        ledger.drain();
+        ledger.truncateLogIfIdle();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ledger.close();
+        Files.deleteIfExists(directory.resolve("reservations.log"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public boolean reserveOneUnit() {
+        return ledger.reserve(ONE_UNIT).isReserved();
+    }
+}
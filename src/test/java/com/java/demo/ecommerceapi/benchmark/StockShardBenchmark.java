@@ -0,0 +1,102 @@
+package com.java.demo.ecommerceapi.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compras por segundo de un solo producto en una ubicacion repartida en shards filas, con varios hilos
+ * compitiendo. Cada compra hace lo mismo que StockService.allocateStock en la base de datos: descuento
+ * condicional en un subcontador elegido al azar (los demas si ese no alcanza), la linea de la orden y el commit.
+ * Con shards=1 todas las compras esperan el candado de la misma fila hasta el commit de la anterior.
+ * H2 en memoria confirma casi sin costo, asi que holdMicros representa el resto de la transaccion de una
+ * compra real (orden, detalles, idas y vueltas a la base de datos) con el candado de la fila tomado.
+ * Ejecutar con: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=StockShardBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class StockShardBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:stock-shards;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+
+    @Param({ "1", "4", "16" })
+    public int shards;
+
+    @Param({ "200" })
+    public long holdMicros;
+
+    private Connection schema;
+
+    @State(Scope.Thread)
+    public static class Checkout {
+        private Connection connection;
+        private PreparedStatement decrement;
+        private PreparedStatement insertLine;
+
+        @Setup(Level.Trial)
+        public void open() throws SQLException {
+            connection = DriverManager.getConnection(URL, "sa", "");
+            connection.setAutoCommit(false);
+            decrement = connection.prepareStatement(
+                    "UPDATE stock SET quantity = quantity - 1 WHERE id = ? AND quantity >= 1");
+            insertLine = connection.prepareStatement("INSERT INTO order_detail (product_id, quantity) VALUES (1, 1)");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        schema = DriverManager.getConnection(URL, "sa", "");
+        try (Statement statement = schema.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+            statement.execute("CREATE TABLE stock (id BIGINT PRIMARY KEY, product_id BIGINT NOT NULL, "
+                    + "location VARCHAR(255) NOT NULL, shard INT NOT NULL, quantity INT NOT NULL)");
+            statement.execute("CREATE TABLE order_detail (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "product_id BIGINT NOT NULL, quantity INT NOT NULL)");
+            for (int shard = 0; shard < shards; shard++) {
+                statement.execute("INSERT INTO stock VALUES (" + (shard + 1) + ", 1, 'Bodega A', " + shard + ", "
+                        + Integer.MAX_VALUE / shards + ")");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = schema.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        schema.close();
+    }
+
+    @Benchmark
+    public boolean checkoutOneUnit(Checkout checkout) throws SQLException {
+        int first = ThreadLocalRandom.current().nextInt(shards);
+        for (int i = 0; i < shards; i++) {
+            checkout.decrement.setLong(1, (first + i) % shards + 1);
+            if (checkout.decrement.executeUpdate() == 1) {
+                checkout.insertLine.executeUpdate();
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(holdMicros));
+                checkout.connection.commit();
+                return true;
+            }
+        }
+        checkout.connection.rollback();
+        return false;
+    }
+}
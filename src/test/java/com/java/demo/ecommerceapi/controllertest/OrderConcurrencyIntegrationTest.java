@@ -0,0 +1,301 @@
+package com.java.demo.ecommerceapi.controllertest;
+
+import com.java.demo.ecommerceapi.cache.OrderIdempotencyStore;
+import com.java.demo.ecommerceapi.dto.OrderDTO;
+import com.java.demo.ecommerceapi.exception.ConflictException;
+import com.java.demo.ecommerceapi.exception.GeneralException;
+import com.java.demo.ecommerceapi.model.*;
+import com.java.demo.ecommerceapi.repository.*;
+import com.java.demo.ecommerceapi.service.OrderService;
+import com.java.demo.ecommerceapi.service.ProductService;
+import com.java.demo.ecommerceapi.service.StockService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compras concurrentes de un mismo producto con transacciones reales (sin @Transactional en la prueba):
+ * el stock nunca queda negativo y lo vendido coincide exactamente con lo descontado.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class OrderConcurrencyIntegrationTest {
+
+    private static final int THREADS = 16;
+    private static final int ORDERS_PER_THREAD = 20;
+    private static final int INITIAL_STOCK = 50;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private OrderIdempotencyStore idempotencyStore;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderDetailRepository orderDetailRepository;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private Brand brand;
+    private Category category;
+    private Product product;
+    private final Queue<Order> orders = new ConcurrentLinkedQueue<>();
+
+    @BeforeEach
+    public void setUp() {
+        brand = new Brand();
+        brand.setName("Concurrency Brand");
+        brand = brandRepository.save(brand);
+
+        category = new Category();
+        category.setName("Concurrency Category");
+        category = categoryRepository.save(category);
+
+        product = new Product();
+        product.setName("Hot Product");
+        product.setDescription("Hot Description");
+        product.setPrice(new BigDecimal("10"));
+        product.setBrand(brand);
+        product.setCategory(category);
+        product = productService.createProduct(product);
+
+        // Dos ubicaciones: las compras que agotan la primera siguen con la segunda
+        stockService.createStock(new Stock(null, product, 30, "Bodega A"));
+        stockService.createStock(new Stock(null, product, INITIAL_STOCK - 30, "Bodega B"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (Order order : orders) {
+            orderDetailRepository.deleteAll(order.getOrderDetails());
+            orderRepository.deleteById(order.getId());
+        }
+        stockRepository.findByProductId(product.getId()).forEach(stock -> stockService.deleteStock(stock.getId()));
+        productService.deleteProduct(product.getId());
+        categoryRepository.delete(category);
+        brandRepository.delete(brand);
+    }
+
+    @Test
+    public void testConcurrentOrdersOnHotProductNeverOversell() throws InterruptedException {
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Queue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                    int quantity = (thread + i) % 3 + 1;
+                    try {
+                        orders.add(orderService.createOrder("admin", List.of(line(quantity))));
+                        sold.addAndGet(quantity);
+                    } catch (GeneralException e) {
+                        rejected.incrementAndGet();
+                    } catch (Throwable e) {
+                        unexpected.add(e);
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertTrue(unexpected.isEmpty(), () -> "Unexpected failures: " + unexpected);
+        // La demanda supera al stock: sin sobreventa se rechaza una parte de las compras
+        assertTrue(rejected.get() > 0);
+        List<Stock> stocks = stockRepository.findByProductId(product.getId());
+        int remaining = 0;
+        for (Stock stock : stocks) {
+            assertTrue(stock.getQuantity() >= 0);
+            remaining += stock.getQuantity();
+        }
+        assertEquals(INITIAL_STOCK, sold.get() + remaining);
+        int ordered = 0;
+        for (Order order : orders) {
+            for (OrderDetail detail : order.getOrderDetails()) {
+                ordered += detail.getQuantity();
+            }
+        }
+        assertEquals(sold.get(), ordered);
+    }
+
+    @Test
+    public void testConcurrentRetriesWithSameIdempotencyKeyCreateOneOrder() throws InterruptedException {
+        String key = UUID.randomUUID().toString();
+        Set<Long> orderIds = ConcurrentHashMap.newKeySet();
+        Queue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                start.await();
+                try {
+                    OrderDTO order = idempotencyStore.execute("admin", key, OrderIdempotencyStore.fingerprint(List.of(line(2))), () -> {
+                        Order created = orderService.createOrder("admin", List.of(line(2)));
+                        orders.add(created);
+                        return new OrderDTO(created);
+                    });
+                    orderIds.add(order.getId());
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertTrue(unexpected.isEmpty(), () -> "Unexpected failures: " + unexpected);
+        assertEquals(1, orders.size());
+        assertEquals(Set.of(orders.peek().getId()), orderIds);
+        int remaining = stockRepository.findByProductId(product.getId()).stream().mapToInt(Stock::getQuantity).sum();
+        assertEquals(INITIAL_STOCK - 2, remaining);
+    }
+
+    @Test
+    public void testRetryWaitingForAnOrderInProgressGivesUpWithConflict() throws Exception {
+        OrderIdempotencyStore store = new OrderIdempotencyStore(new SimpleMeterRegistry(), 100, Duration.ofHours(1),
+                Duration.ofMillis(100));
+        String fingerprint = OrderIdempotencyStore.fingerprint(List.of(line(2)));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<OrderDTO> first = executor.submit(() -> store.execute("admin", "slow", fingerprint, () -> {
+                started.countDown();
+                awaitQuietly(release);
+                return order(1L);
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            assertThrows(ConflictException.class, () -> store.execute("admin", "slow", fingerprint, () -> order(2L)));
+
+            release.countDown();
+            assertEquals(1L, first.get(10, TimeUnit.SECONDS).getId());
+            assertEquals(1L, store.execute("admin", "slow", fingerprint, () -> order(2L)).getId());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOrderInProgressIsNotEvictedBySize() throws Exception {
+        OrderIdempotencyStore store = new OrderIdempotencyStore(new SimpleMeterRegistry(), 1, Duration.ofHours(1),
+                Duration.ofSeconds(10));
+        String fingerprint = OrderIdempotencyStore.fingerprint(List.of(line(2)));
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<OrderDTO> first = executor.submit(() -> store.execute("admin", "in-flight", fingerprint, () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                awaitQuietly(release);
+                return order(1L);
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // Con maximum-size 1 cada orden terminada desaloja a la anterior, pero no a la que esta en curso
+            for (long id = 10; id < 20; id++) {
+                long orderId = id;
+                store.execute("admin", "done-" + id, fingerprint, () -> order(orderId));
+            }
+            Future<OrderDTO> retry = executor.submit(() -> store.execute("admin", "in-flight", fingerprint, () -> {
+                executions.incrementAndGet();
+                return order(2L);
+            }));
+
+            release.countDown();
+            assertEquals(1L, first.get(10, TimeUnit.SECONDS).getId());
+            assertEquals(1L, retry.get(10, TimeUnit.SECONDS).getId());
+            assertEquals(1, executions.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFingerprintIgnoresLineOrder() {
+        OrderDetail two = line(2);
+        OrderDetail three = line(3);
+        Product otherProduct = new Product();
+        otherProduct.setId(product.getId() + 1);
+        OrderDetail other = new OrderDetail();
+        other.setProduct(otherProduct);
+        other.setQuantity(2);
+
+        assertEquals(OrderIdempotencyStore.fingerprint(List.of(two, other)), OrderIdempotencyStore.fingerprint(List.of(other, two)));
+        assertNotEquals(OrderIdempotencyStore.fingerprint(List.of(two, other)), OrderIdempotencyStore.fingerprint(List.of(three, other)));
+        assertEquals(64, OrderIdempotencyStore.fingerprint(List.of(two)).length());
+    }
+
+    private static OrderDTO order(Long id) {
+        OrderDTO order = new OrderDTO();
+        order.setId(id);
+        return order;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private OrderDetail line(int quantity) {
+        Product reference = new Product();
+        reference.setId(product.getId());
+        OrderDetail detail = new OrderDetail();
+        detail.setProduct(reference);
+        detail.setQuantity(quantity);
+        return detail;
+    }
+}
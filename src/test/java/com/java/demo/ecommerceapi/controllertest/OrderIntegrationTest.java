@@ -1,24 +1,34 @@
 package com.java.demo.ecommerceapi.controllertest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.java.demo.ecommerceapi.dto.OrderDTO;
 import com.java.demo.ecommerceapi.enums.OrderStatus;
 import com.java.demo.ecommerceapi.model.*;
 import com.java.demo.ecommerceapi.repository.*;
+import com.java.demo.ecommerceapi.service.OrderService;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
@@ -51,6 +61,12 @@ public class OrderIntegrationTest {
     @Autowired
     private StockRepository stockRepository;
 
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private EntityManager entityManager;
+
     private User user;
     private Brand brand;
     private Category category;
@@ -118,6 +134,46 @@ public class OrderIntegrationTest {
                 .andExpect(jsonPath("$.totalAmount").value(200));
     }
 
+    @Test
+    @WithMockUser(username = "testuser")
+    public void testCreateOrderRetriedWithIdempotencyKeyCreatesOneOrder() throws Exception {
+        // El almacen de claves vive mas que la transaccion de la prueba: cada ejecucion usa una clave nueva
+        String key = UUID.randomUUID().toString();
+        String orderJson = objectMapper.writeValueAsString(List.of(Map.of("productId", product.getId(), "quantity", 2)));
+
+        String first = mockMvc.perform(post("/api/orders/create")
+                        .header("Idempotency-Key", key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(orderJson))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Long orderId = objectMapper.readValue(first, OrderDTO.class).getId();
+
+        mockMvc.perform(post("/api/orders/create")
+                        .header("Idempotency-Key", key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(orderJson))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(orderId))
+                .andExpect(jsonPath("$.totalAmount").value(200));
+
+        assertEquals(1, orderRepository.findByUser(user).size());
+        assertEquals(8, stockRepository.findQuantityById(stock.getId()).orElseThrow());
+
+        // La misma clave con otro pedido se rechaza
+        mockMvc.perform(post("/api/orders/create")
+                        .header("Idempotency-Key", key)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(Map.of("productId", product.getId(), "quantity", 3)))))
+                .andExpect(status().isBadRequest());
+        // Sin clave cada peticion es una orden nueva
+        mockMvc.perform(post("/api/orders/create")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(orderJson))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(not(orderId.intValue())));
+    }
+
     @Test
     @WithMockUser(username = "testuser")
     public void testGetOrdersByUser() throws Exception {
@@ -151,4 +207,102 @@ public class OrderIntegrationTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.totalAmount").value(100.00));
     }
+
+    @Test
+    @WithMockUser(username = "testuser")
+    public void testGetOrdersWithFields() throws Exception {
+        Order order = new Order();
+        order.setUser(user);
+        order.setOrderDate(LocalDateTime.now());
+        order.setTotalAmount(new BigDecimal("100"));
+        order.setStatus(OrderStatus.PENDING);
+        order = orderRepository.save(order);
+
+        mockMvc.perform(get("/api/orders/user").param("fields", "totalAmount,status"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(order.getId()))
+                .andExpect(jsonPath("$[0].totalAmount").value(100))
+                .andExpect(jsonPath("$[0].status").value("PENDING"))
+                .andExpect(jsonPath("$[0].orderDate").doesNotExist())
+                .andExpect(jsonPath("$[0].userId").doesNotExist());
+
+        mockMvc.perform(get("/api/orders/" + order.getId()).param("fields", "userId"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.userId").value(user.getId()))
+                .andExpect(jsonPath("$.totalAmount").doesNotExist());
+
+        mockMvc.perform(get("/api/orders/" + order.getId()).param("fields", "items"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser(username = "testuser")
+    public void testGetOrderByIdAsCbor() throws Exception {
+        Order order = new Order();
+        order.setUser(user);
+        order.setOrderDate(LocalDateTime.now());
+        order.setTotalAmount(new BigDecimal("100"));
+        order.setStatus(OrderStatus.PENDING);
+        order = orderRepository.save(order);
+
+        byte[] body = mockMvc.perform(get("/api/orders/" + order.getId()).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        OrderDTO decoded = Jackson2ObjectMapperBuilder.cbor().build().readValue(body, OrderDTO.class);
+        assertEquals(order.getId(), decoded.getId());
+        assertEquals(OrderStatus.PENDING, decoded.getStatus());
+        assertEquals(0, new BigDecimal("100").compareTo(decoded.getTotalAmount()));
+    }
+
+    @Test
+    public void testCreateOrderStatementCountDoesNotGrowWithLines() {
+        // Cada 50 lineas el optimizador pooled pide otro bloque de ids a la secuencia: con 28 lineas en total
+        // a lo sumo una de las cuatro ordenes lo paga, por eso se mide dos veces cada tamano y se toma la menor
+        long smallOrder = Math.min(statementsForOrder(2), statementsForOrder(2));
+        long largeOrder = Math.min(statementsForOrder(12), statementsForOrder(12));
+
+        // Las lineas se insertan en lote con ids de secuencia y los UPDATE condicionales de stock van en un
+        // solo lote JDBC; las lecturas de usuario, productos y stock son constantes
+        assertEquals(smallOrder, largeOrder);
+    }
+
+    // Sentencias preparadas para crear una orden de N lineas
+    private long statementsForOrder(int lines) {
+        List<OrderDetail> orderDetails = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            Product lineProduct = new Product();
+            lineProduct.setName("Line Product " + lines + "-" + i);
+            lineProduct.setDescription("Description");
+            lineProduct.setPrice(new BigDecimal("5"));
+            lineProduct.setBrand(brand);
+            lineProduct.setCategory(category);
+            lineProduct = productRepository.save(lineProduct);
+            // Dos ubicaciones por producto: la linea consume la primera completa y parte de la segunda
+            stockRepository.save(new Stock(null, lineProduct, 1, "Location A"));
+            stockRepository.save(new Stock(null, lineProduct, 5, "Location B"));
+
+            OrderDetail detail = new OrderDetail();
+            Product reference = new Product();
+            reference.setId(lineProduct.getId());
+            detail.setProduct(reference);
+            detail.setQuantity(2);
+            orderDetails.add(detail);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            statistics.clear();
+            orderService.createOrder("testuser", orderDetails);
+            entityManager.flush();
+
+            assertEquals(lines + 1L, statistics.getEntityInsertCount());
+            return statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
 }
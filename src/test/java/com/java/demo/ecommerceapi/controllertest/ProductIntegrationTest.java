@@ -1,27 +1,51 @@
 package com.java.demo.ecommerceapi.controllertest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.java.demo.ecommerceapi.model.Product;
 import com.java.demo.ecommerceapi.dto.ProductDTO;
 import com.java.demo.ecommerceapi.model.Brand;
 import com.java.demo.ecommerceapi.model.Category;
+import com.java.demo.ecommerceapi.model.Stock;
 import com.java.demo.ecommerceapi.repository.ProductRepository;
 import com.java.demo.ecommerceapi.repository.BrandRepository;
 import com.java.demo.ecommerceapi.repository.CategoryRepository;
+import com.java.demo.ecommerceapi.service.ProductService;
+import com.java.demo.ecommerceapi.service.StockService;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.test.context.transaction.TestTransaction;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
-
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
@@ -45,6 +69,15 @@ public class ProductIntegrationTest {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private EntityManager entityManager;
+
     private Brand testBrand;
     private Category testCategory;
     private Product product1;
@@ -54,6 +87,8 @@ public class ProductIntegrationTest {
         brandRepository.deleteAll();
         categoryRepository.deleteAll();
         productRepository.deleteAll();
+        // Los borrados directos en el repositorio no pasan por los indices en memoria, que cuentan las facetas
+        productService.rebuildIndexes();
 
         testBrand = new Brand();
         testBrand.setName("Test Brand");
@@ -69,10 +104,72 @@ public class ProductIntegrationTest {
         product1.setPrice(new BigDecimal("10.00"));
         product1.setBrand(testBrand);
         product1.setCategory(testCategory);
-        product1 = productRepository.save(product1);
+        product1 = productService.createProduct(product1);
 
 }
 
+    // Tras el rollback vuelven las filas borradas en setUp: los indices se alinean otra vez con la base de datos
+    @AfterTransaction
+    void rebuildIndexes() {
+        productService.rebuildIndexes();
+    }
+
+    @Test
+    void testExportProductsStreamsNdjson() throws Exception {
+        // El cuerpo se escribe en otro hilo, con su propia transaccion de solo lectura: los productos
+        // exportados tienen que estar confirmados, asi que se descarta la transaccion de la prueba
+        TestTransaction.end();
+        Brand brand = new Brand();
+        brand.setName("Export Brand");
+        brand = brandRepository.save(brand);
+        Category category = new Category();
+        category.setName("Export Category");
+        category = categoryRepository.save(category);
+        List<Product> created = new ArrayList<>();
+        try {
+            for (String name : List.of("Export A", "Export B")) {
+                created.add(productService.createProduct(new Product(null, name, "Export", new BigDecimal("5.00"),
+                        brand, category, null, null, null)));
+            }
+
+            MvcResult plain = mockMvc.perform(asyncDispatch(mockMvc.perform(get("/api/products/export.ndjson"))
+                            .andExpect(request().asyncStarted())
+                            .andReturn()))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                    .andExpect(header().stringValues("Vary", hasItem("Accept-Encoding")))
+                    .andExpect(header().doesNotExist("Content-Encoding"))
+                    .andReturn();
+            String identity = plain.getResponse().getContentAsString();
+            List<String> lines = identity.lines().toList();
+            assertTrue(identity.endsWith("\n"));
+            // Un objeto por linea y al final el conteo de las lineas anteriores
+            List<String> names = new ArrayList<>();
+            for (String line : lines.subList(0, lines.size() - 1)) {
+                names.add(objectMapper.readTree(line).get("name").asText());
+            }
+            assertTrue(names.containsAll(List.of("Export A", "Export B")));
+            assertEquals(lines.size() - 1, objectMapper.readTree(lines.get(lines.size() - 1)).get("rowCount").asInt());
+
+            MvcResult compressed = mockMvc.perform(asyncDispatch(mockMvc.perform(get("/api/products/export.ndjson")
+                                    .header("Accept-Encoding", "gzip"))
+                            .andExpect(request().asyncStarted())
+                            .andReturn()))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                    .andExpect(header().string("Content-Encoding", "gzip"))
+                    .andReturn();
+            try (GZIPInputStream gzip = new GZIPInputStream(
+                    new ByteArrayInputStream(compressed.getResponse().getContentAsByteArray()))) {
+                assertEquals(identity, new String(gzip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            created.forEach(product -> productService.deleteProduct(product.getId()));
+            categoryRepository.delete(category);
+            brandRepository.delete(brand);
+        }
+    }
+
     @Test
     void testGetAllProducts() throws Exception { 
         Product product2 = new Product();
@@ -81,17 +178,17 @@ public class ProductIntegrationTest {
         product2.setPrice(new BigDecimal("20.00"));
         product2.setBrand(testBrand);
         product2.setCategory(testCategory);
-        productRepository.save(product2);
+        productService.createProduct(product2);
  
         mockMvc.perform(get("/api/products"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$[0].name", is("Product 1")))
-                .andExpect(jsonPath("$[0].description", is("Description 1")))
+                .andExpect(jsonPath("$[0].description").doesNotExist())
                 .andExpect(jsonPath("$[0].price", is(10.0)))
                 .andExpect(jsonPath("$[1].name", is("Product 2")))
-                .andExpect(jsonPath("$[1].description", is("Description 2")))
+                .andExpect(jsonPath("$[1].description").doesNotExist())
                 .andExpect(jsonPath("$[1].price", is(20.0)));
     }
 
@@ -181,7 +278,7 @@ public class ProductIntegrationTest {
         product2.setPrice(new BigDecimal("20.00"));
         product2.setBrand(testBrand);
         product2.setCategory(testCategory);
-        productRepository.save(product2);
+        productService.createProduct(product2);
 
         Product product3 = new Product();
         product3.setName("Alpha Product");
@@ -189,7 +286,7 @@ public class ProductIntegrationTest {
         product3.setPrice(new BigDecimal("15.00"));
         product3.setBrand(testBrand);
         product3.setCategory(testCategory);
-        productRepository.save(product3);
+        productService.createProduct(product3);
 
         mockMvc.perform(get("/api/products/search").param("name", "Product"))
                 .andExpect(status().isOk())
@@ -239,6 +336,665 @@ public class ProductIntegrationTest {
                         .param("maxPrice", "20"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(3)));
+
+        // Un precio 0 no limita la busqueda tampoco en la variante paginada ni por relevancia
+        mockMvc.perform(get("/api/products/search")
+                        .param("maxPrice", "0")
+                        .param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)));
+
+        mockMvc.perform(get("/api/products/search")
+                        .param("name", "Product")
+                        .param("maxPrice", "0")
+                        .param("sort", "relevance"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)));
+    }
+
+    @Test
+    void testSearchProductsByNameIgnoresAccents() throws Exception {
+        Product product2 = new Product();
+        product2.setName("Café Molido");
+        product2.setDescription("Description 2");
+        product2.setPrice(new BigDecimal("20.00"));
+        product2.setBrand(testBrand);
+        product2.setCategory(testCategory);
+        productService.createProduct(product2);
+
+        mockMvc.perform(get("/api/products/search").param("name", "cafe"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Café Molido")));
+
+        mockMvc.perform(get("/api/products/search").param("name", "fe mol").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    void testSearchProductsByNameAndPrice() throws Exception {
+        Product product2 = new Product();
+        product2.setName("Product Beta");
+        product2.setDescription("Description 2");
+        product2.setPrice(new BigDecimal("20.00"));
+        product2.setBrand(testBrand);
+        product2.setCategory(testCategory);
+        productService.createProduct(product2);
+
+        // Antes esta combinacion filtraba por categoria vacia y no devolvia nada
+        mockMvc.perform(get("/api/products/search")
+                        .param("name", "product")
+                        .param("minPrice", "12"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Product Beta")));
+
+        mockMvc.perform(get("/api/products/search")
+                        .param("category", "test category")
+                        .param("maxPrice", "12"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Product 1")));
+    }
+
+    @Test
+    void testDescriptionIsLoadedLazily() throws Exception {
+        entityManager.flush();
+        entityManager.clear();
+
+        Product loaded = productRepository.findById(product1.getId()).orElseThrow();
+
+        assertFalse(Hibernate.isPropertyInitialized(loaded, "description"));
+        assertEquals("Description 1", loaded.getDescription());
+
+        mockMvc.perform(get("/api/products/{id}", product1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.description", is("Description 1")));
     }
 
+    @Test
+    void testGetProductsWithFields() throws Exception {
+        Product product2 = new Product();
+        product2.setName("Product 2");
+        product2.setDescription("Description 2");
+        product2.setPrice(new BigDecimal("20.00"));
+        product2.setBrand(testBrand);
+        product2.setCategory(testCategory);
+        product2 = productService.createProduct(product2);
+
+        String cursor = mockMvc.perform(get("/api/products").param("fields", "name, price").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(product1.getId().intValue())))
+                .andExpect(jsonPath("$[0].name", is("Product 1")))
+                .andExpect(jsonPath("$[0].price", is(10.0)))
+                .andExpect(jsonPath("$[0].description").doesNotExist())
+                .andExpect(jsonPath("$[0].brandId").doesNotExist())
+                .andExpect(header().exists("X-Next-Cursor"))
+                .andReturn().getResponse().getHeader("X-Next-Cursor");
+
+        mockMvc.perform(get("/api/products").param("fields", "name").param("after", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Product 2")));
+
+        mockMvc.perform(get("/api/products/{id}", product2.getId()).param("fields", "description,categoryId"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.description", is("Description 2")))
+                .andExpect(jsonPath("$.categoryId", is(testCategory.getId().intValue())))
+                .andExpect(jsonPath("$.name").doesNotExist());
+
+        mockMvc.perform(get("/api/products").param("fields", "name,secret"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testBinaryFormatsKeepTheJsonSchema() throws Exception {
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+        ObjectMapper smile = new ObjectMapper(new SmileFactory());
+
+        byte[] detail = mockMvc.perform(get("/api/products/{id}", product1.getId()).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().stringValues("Vary", hasItem("Accept")))
+                .andReturn().getResponse().getContentAsByteArray();
+        ProductDTO product = cbor.readValue(detail, ProductDTO.class);
+        assertEquals(product1.getId(), product.getId());
+        assertEquals("Description 1", product.getDescription());
+
+        byte[] list = mockMvc.perform(get("/api/products").accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn().getResponse().getContentAsByteArray();
+        ProductDTO[] products = smile.readValue(list, ProductDTO[].class);
+        assertEquals("Product 1", products[0].getName());
+
+        byte[] search = mockMvc.perform(get("/api/products/search").param("name", "product")
+                        .header("Accept", "application/json;q=0.5, application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(1, cbor.readValue(search, ProductDTO[].class).length);
+
+        mockMvc.perform(get("/api/products/search").param("name", "product")
+                        .header("Accept", "application/json, application/cbor;q=0.5"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void testGetProductsByIds() throws Exception {
+        Product product2 = new Product();
+        product2.setName("Product 2");
+        product2.setDescription("Description 2");
+        product2.setPrice(new BigDecimal("20.00"));
+        product2.setBrand(testBrand);
+        product2.setCategory(testCategory);
+        product2 = productService.createProduct(product2);
+        long missingId = product2.getId() + 1000;
+
+        mockMvc.perform(get("/api/products").param("ids", product2.getId() + "," + missingId + "," + product1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products", hasSize(2)))
+                .andExpect(jsonPath("$.products[0].name", is("Product 2")))
+                .andExpect(jsonPath("$.products[1].name", is("Product 1")))
+                .andExpect(jsonPath("$.missing[0]", is((int) missingId)));
+
+        mockMvc.perform(post("/api/products/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(product1.getId(), missingId))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products", hasSize(1)))
+                .andExpect(jsonPath("$.products[0].name", is("Product 1")))
+                .andExpect(jsonPath("$.missing", hasSize(1)));
+
+        mockMvc.perform(post("/api/products/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetPriceStatsByCategory() throws Exception {
+        Product product2 = new Product();
+        product2.setName("Product 2");
+        product2.setDescription("Description 2");
+        product2.setPrice(new BigDecimal("60.00"));
+        product2.setBrand(testBrand);
+        product2.setCategory(testCategory);
+        product2 = productService.createProduct(product2);
+
+        mockMvc.perform(get("/api/products/price-stats").param("category", "Test Category"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(2)))
+                .andExpect(jsonPath("$.min", is(10.0)))
+                .andExpect(jsonPath("$.max", is(60.0)))
+                .andExpect(content().string(not(containsString("E+"))))
+                .andExpect(jsonPath("$.histogram[1].value", is("10-25")))
+                .andExpect(jsonPath("$.histogram[1].count", is(1)))
+                .andExpect(jsonPath("$.histogram[3].count", is(1)));
+
+        productService.deleteProduct(product2.getId());
+
+        mockMvc.perform(get("/api/products/price-stats").param("category", "Test Category"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(1)))
+                .andExpect(jsonPath("$.max", is(10.0)));
+
+        mockMvc.perform(get("/api/products/price-stats").param("category", "Missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testGetAllProductsPaged() throws Exception {
+        for (int i = 2; i <= 5; i++) {
+            Product product = new Product();
+            product.setName("Product " + i);
+            product.setDescription("Description " + i);
+            product.setPrice(new BigDecimal("10.00"));
+            product.setBrand(testBrand);
+            product.setCategory(testCategory);
+            productService.createProduct(product);
+        }
+
+        String cursor = mockMvc.perform(get("/api/products").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].name", is("Product 1")))
+                .andExpect(jsonPath("$[1].name", is("Product 2")))
+                .andExpect(header().exists("X-Next-Cursor"))
+                .andReturn().getResponse().getHeader("X-Next-Cursor");
+
+        cursor = mockMvc.perform(get("/api/products").param("limit", "2").param("after", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].name", is("Product 3")))
+                .andExpect(jsonPath("$[1].name", is("Product 4")))
+                .andReturn().getResponse().getHeader("X-Next-Cursor");
+
+        mockMvc.perform(get("/api/products").param("limit", "2").param("after", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Product 5")))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    void testSearchProductsPaged() throws Exception {
+        Product product2 = new Product();
+        product2.setName("Alpha Product");
+        product2.setDescription("Description 2");
+        product2.setPrice(new BigDecimal("20.00"));
+        product2.setBrand(testBrand);
+        product2.setCategory(testCategory);
+        productService.createProduct(product2);
+
+        Product product3 = new Product();
+        product3.setName("Beta Product");
+        product3.setDescription("Description 3");
+        product3.setPrice(new BigDecimal("15.00"));
+        product3.setBrand(testBrand);
+        product3.setCategory(testCategory);
+        productService.createProduct(product3);
+
+        String cursor = mockMvc.perform(get("/api/products/search").param("name", "product").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].name", is("Alpha Product")))
+                .andExpect(jsonPath("$[1].name", is("Beta Product")))
+                .andReturn().getResponse().getHeader("X-Next-Cursor");
+
+        mockMvc.perform(get("/api/products/search").param("name", "product").param("limit", "2").param("after", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Product 1")))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    void testPagingWithInvalidParameters() throws Exception {
+        mockMvc.perform(get("/api/products").param("after", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/api/products").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/api/products/search").param("name", "product").param("after", "MQ"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testListEndpointsUseSingleStatement() throws Exception {
+        for (int i = 2; i <= 10; i++) {
+            Brand brand = new Brand();
+            brand.setName("Brand " + i);
+            brand = brandRepository.save(brand);
+            Product product = new Product();
+            product.setName("Product " + i);
+            product.setDescription("Description " + i);
+            product.setPrice(new BigDecimal("10.00"));
+            product.setBrand(brand);
+            product.setCategory(testCategory);
+            productService.createProduct(product);
+        }
+        // Se vacia el contexto de persistencia para que ninguna entidad quede cargada antes de la peticion
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        try {
+            statistics.clear();
+            mockMvc.perform(get("/api/products"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$", hasSize(10)));
+            assertEquals(1, statistics.getPrepareStatementCount());
+            assertEquals(0, statistics.getEntityLoadCount());
+
+            statistics.clear();
+            mockMvc.perform(get("/api/products").param("limit", "5"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$", hasSize(5)));
+            assertEquals(1, statistics.getPrepareStatementCount());
+
+            statistics.clear();
+            mockMvc.perform(get("/api/products/search").param("category", "Test Category"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$", hasSize(10)));
+            assertEquals(1, statistics.getPrepareStatementCount());
+            assertEquals(0, statistics.getEntityLoadCount());
+
+            statistics.clear();
+            mockMvc.perform(get("/api/products/search")
+                            .param("name", "Product")
+                            .param("category", "Test Category")
+                            .param("minPrice", "5"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$", hasSize(10)));
+            assertEquals(1, statistics.getPrepareStatementCount());
+            assertEquals(0, statistics.getEntityLoadCount());
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    @Test
+    void testSearchProductsByRelevance() throws Exception {
+        Product product2 = new Product();
+        product2.setName("Wireless Mouse");
+        product2.setDescription("Compact wireless mouse");
+        product2.setPrice(new BigDecimal("25.00"));
+        product2.setBrand(testBrand);
+        product2.setCategory(testCategory);
+        productService.createProduct(product2);
+
+        Product product3 = new Product();
+        product3.setName("Mouse Pad");
+        product3.setDescription("Pad for any wireless mouse");
+        product3.setPrice(new BigDecimal("5.00"));
+        product3.setBrand(testBrand);
+        product3.setCategory(testCategory);
+        productService.createProduct(product3);
+
+        mockMvc.perform(get("/api/products/search")
+                        .param("name", "wireless mouse")
+                        .param("sort", "relevance"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].name", is("Wireless Mouse")))
+                .andExpect(jsonPath("$[1].name", is("Mouse Pad")));
+
+        mockMvc.perform(get("/api/products/search")
+                        .param("name", "wireless mouse")
+                        .param("maxPrice", "10")
+                        .param("sort", "relevance"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Mouse Pad")));
+
+        mockMvc.perform(get("/api/products/search").param("sort", "relevance"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/api/products/search").param("name", "mouse").param("sort", "price"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testSuggestProducts() throws Exception {
+        for (String name : new String[] { "Zéphyr Lamp", "Zephyr Fan", "Zenith Clock" }) {
+            Product product = new Product();
+            product.setName(name);
+            product.setDescription("Suggest " + name);
+            product.setPrice(new BigDecimal("15.00"));
+            product.setBrand(testBrand);
+            product.setCategory(testCategory);
+            productService.createProduct(product);
+        }
+
+        mockMvc.perform(get("/api/products/suggest").param("prefix", "ZEPH"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].name", is("Zephyr Fan")))
+                .andExpect(jsonPath("$[1].name", is("Zéphyr Lamp")));
+
+        mockMvc.perform(get("/api/products/suggest").param("prefix", "ze").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+
+        mockMvc.perform(get("/api/products/suggest"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/api/products/suggest").param("prefix", "ze").param("limit", "11"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testSearchProductsWithFacets() throws Exception {
+        Brand otherBrand = new Brand();
+        otherBrand.setName("Other Brand");
+        otherBrand = brandRepository.save(otherBrand);
+
+        Product product2 = new Product();
+        product2.setName("Product 2");
+        product2.setDescription("Description 2");
+        product2.setPrice(new BigDecimal("30.00"));
+        product2.setBrand(otherBrand);
+        product2.setCategory(testCategory);
+        productService.createProduct(product2);
+
+        mockMvc.perform(get("/api/products/search")
+                        .param("name", "product")
+                        .param("facets", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products", hasSize(2)))
+                .andExpect(jsonPath("$.facets.category", hasSize(1)))
+                .andExpect(jsonPath("$.facets.category[0].value", is(testCategory.getId().toString())))
+                .andExpect(jsonPath("$.facets.category[0].count", is(2)))
+                .andExpect(jsonPath("$.facets.brand", hasSize(2)))
+                .andExpect(jsonPath("$.facets.price[0].value", is("10-25")))
+                .andExpect(jsonPath("$.facets.price[1].value", is("25-50")));
+
+        mockMvc.perform(get("/api/products/search")
+                        .param("name", "product")
+                        .param("maxPrice", "20")
+                        .param("facets", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products", hasSize(1)))
+                .andExpect(jsonPath("$.facets.brand[0].value", is(testBrand.getId().toString())))
+                .andExpect(jsonPath("$.facets.price", hasSize(1)));
+
+        // La pagina se corta en limit pero los conteos cubren todos los resultados; un precio 0 es "sin limite"
+        String next = mockMvc.perform(get("/api/products/search")
+                        .param("name", "product")
+                        .param("minPrice", "0")
+                        .param("maxPrice", "0")
+                        .param("limit", "1")
+                        .param("facets", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products", hasSize(1)))
+                .andExpect(jsonPath("$.products[0].name", is("Product 1")))
+                .andExpect(jsonPath("$.facets.category[0].count", is(2)))
+                .andExpect(header().exists("X-Next-Cursor"))
+                .andReturn().getResponse().getHeader("X-Next-Cursor");
+
+        mockMvc.perform(get("/api/products/search")
+                        .param("name", "product")
+                        .param("limit", "1")
+                        .param("after", next)
+                        .param("facets", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products", hasSize(1)))
+                .andExpect(jsonPath("$.products[0].name", is("Product 2")))
+                .andExpect(jsonPath("$.facets.category[0].count", is(2)))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    void testSearchProductsByBrandAndStock() throws Exception {
+        Brand otherBrand = new Brand();
+        otherBrand.setName("Other Brand");
+        otherBrand = brandRepository.save(otherBrand);
+
+        Product product2 = new Product();
+        product2.setName("Product 2");
+        product2.setDescription("Description 2");
+        product2.setPrice(new BigDecimal("20.00"));
+        product2.setBrand(otherBrand);
+        product2.setCategory(testCategory);
+        product2 = productService.createProduct(product2);
+
+        Product product3 = new Product();
+        product3.setName("Product 3");
+        product3.setDescription("Description 3");
+        product3.setPrice(new BigDecimal("30.00"));
+        product3.setBrand(otherBrand);
+        product3.setCategory(testCategory);
+        product3 = productService.createProduct(product3);
+
+        stockService.createStock(new Stock(null, product1, 4, "Bodega A"));
+        stockService.createStock(new Stock(null, product2, 2, "Bodega A"));
+        stockService.createStock(new Stock(null, product3, 0, "Bodega A"));
+
+        mockMvc.perform(get("/api/products/search").param("brandId", otherBrand.getId().toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].name", is("Product 2")))
+                .andExpect(jsonPath("$[1].name", is("Product 3")));
+
+        mockMvc.perform(get("/api/products/search")
+                        .param("name", "product")
+                        .param("brandId", otherBrand.getId().toString())
+                        .param("inStock", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Product 2")));
+
+        stockService.updateStockQuantity(product2.getId(), "Bodega A", 0);
+
+        mockMvc.perform(get("/api/products/search").param("inStock", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Product 1")));
+    }
+
+    @Test
+    void testGetProductByIdIsServedFromCache() throws Exception {
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+
+        for (int i = 0; i < 20; i++) {
+            mockMvc.perform(get("/api/products/{id}", product1.getId()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.name", is("Product 1")));
+        }
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        product1.setName("Product 1 Updated");
+        productService.updateProduct(product1.getId(), product1);
+
+        mockMvc.perform(get("/api/products/{id}", product1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("Product 1 Updated")));
+
+        mockMvc.perform(get("/actuator/metrics/cache.gets").with(user("admin"))
+                        .param("tag", "cache:products").param("tag", "result:hit"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].value").isNumber());
+    }
+
+    @Test
+    void testConditionalGetProductById() throws Exception {
+        String etag = mockMvc.perform(get("/api/products/{id}", product1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/products/{id}", product1.getId()).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        product1.setPrice(new BigDecimal("12.00"));
+        productService.updateProduct(product1.getId(), product1);
+        entityManager.flush();
+
+        mockMvc.perform(get("/api/products/{id}", product1.getId()).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.price", is(12.0)))
+                .andExpect(header().string("ETag", not(etag)));
+    }
+
+    @Test
+    void testConditionalGetCatalogLists() throws Exception {
+        String etag = mockMvc.perform(get("/api/products"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        mockMvc.perform(get("/api/products").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/products/search").param("name", "product").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        Product product2 = new Product();
+        product2.setName("Product 2");
+        product2.setDescription("Description 2");
+        product2.setPrice(new BigDecimal("20.00"));
+        product2.setBrand(testBrand);
+        product2.setCategory(testCategory);
+        productService.createProduct(product2);
+
+        mockMvc.perform(get("/api/products").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    void testStockChangeOnlyInvalidatesStockDependentEtags() throws Exception {
+        String searchEtag = mockMvc.perform(get("/api/products/search").param("name", "product"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        String inStockEtag = mockMvc.perform(get("/api/products/search").param("inStock", "true").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        String facetsEtag = mockMvc.perform(get("/api/products/search").param("facets", "true"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        stockService.createStock(new Stock(null, product1, 3, "Bodega A"));
+
+        // Una compra o un ajuste de stock no cambia los listados que no miran la disponibilidad
+        mockMvc.perform(get("/api/products/search").param("name", "product").header("If-None-Match", searchEtag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/products/search").param("inStock", "true").param("limit", "10")
+                        .header("If-None-Match", inStockEtag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(header().string("ETag", not(inStockEtag)));
+        mockMvc.perform(get("/api/products/search").param("facets", "true").header("If-None-Match", facetsEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(facetsEtag)));
+    }
+
+    @Test
+    void testSearchIsServedFromSerializedBytes() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            Product product = new Product();
+            product.setName("Serialized " + i);
+            product.setDescription("Descripcion larga para que la respuesta supere el umbral de compresion " + i);
+            product.setPrice(new BigDecimal("15.00"));
+            product.setBrand(testBrand);
+            product.setCategory(testCategory);
+            productService.createProduct(product);
+        }
+        entityManager.flush();
+
+        mockMvc.perform(get("/api/products/search").param("name", "serialized").header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(jsonPath("$", hasSize(20)));
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        byte[] compressed = mockMvc.perform(get("/api/products/search").param("name", "serialized").header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().stringValues("Vary", hasItem(containsString("Accept-Encoding"))))
+                .andExpect(header().string("ETag", endsWith("-gzip\"")))
+                .andReturn().getResponse().getContentAsByteArray();
+        String identity = mockMvc.perform(get("/api/products/search").param("name", "serialized"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertEquals(identity, new String(gzip.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
 }
@@ -1,14 +1,21 @@
 package com.java.demo.ecommerceapi.controllertest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.java.demo.ecommerceapi.dto.StockLevelDTO;
+import com.java.demo.ecommerceapi.exception.BadRequestException;
 import com.java.demo.ecommerceapi.model.Brand;
 import com.java.demo.ecommerceapi.model.Category;
+import com.java.demo.ecommerceapi.model.OrderDetail;
 import com.java.demo.ecommerceapi.model.Product;
 import com.java.demo.ecommerceapi.model.Stock;
 import com.java.demo.ecommerceapi.repository.BrandRepository;
 import com.java.demo.ecommerceapi.repository.CategoryRepository;
 import com.java.demo.ecommerceapi.repository.ProductRepository;
 import com.java.demo.ecommerceapi.repository.StockRepository;
+import com.java.demo.ecommerceapi.service.StockService;
+import com.java.demo.ecommerceapi.service.StockShardRebalancer;
+
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +27,11 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -48,6 +60,15 @@ public class StockIntegrationTest {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private StockShardRebalancer shardRebalancer;
+
+    @Autowired
+    private EntityManager entityManager;
+
     private Product testProduct; // Producto de prueba compartido entre los tests
     private Stock stock1, stock2;
     private Brand brand;
@@ -169,5 +190,107 @@ public class StockIntegrationTest {
                 .andExpect(status().isNotFound());
     }
 
-}
+    @Test
+    @WithMockUser(username = "testUser")
+    void testSplitStockIntoShardsKeepsTheLocationTotal() throws Exception {
+        String shards = "/api/stocks/product/" + testProduct.getId() + "/location/Warehouse A/shards";
+        mockMvc.perform(put(shards).param("count", "4"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(jsonPath("$[*].quantity", is(List.of(3, 3, 2, 2))));
+        // Las filas cargadas en la prueba no ven los movimientos hechos con sentencias de actualizacion
+        stockRepository.findByProductId(testProduct.getId()).forEach(entityManager::detach);
+
+        mockMvc.perform(get("/api/stocks/product/" + testProduct.getId() + "/location/Warehouse A"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(stock1.getId().intValue())))
+                .andExpect(jsonPath("$.quantity", is(10)));
+        mockMvc.perform(get("/api/stocks"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].quantity", is(10)));
+
+        // Una compra que cabe en un subcontador sale de uno solo
+        stockService.allocateStock(List.of(line(testProduct, 3)));
+        List<StockLevelDTO> levels = stockRepository.findShardLevels(testProduct.getId(), "Warehouse A");
+        assertEquals(7, levels.stream().mapToInt(StockLevelDTO::getQuantity).sum());
+        assertEquals(List.of(0, 2, 2, 3), levels.stream().map(StockLevelDTO::getQuantity).sorted().toList());
+
+        // Volver a una sola fila junta las unidades en la principal
+        mockMvc.perform(put(shards).param("count", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(stock1.getId().intValue())))
+                .andExpect(jsonPath("$[0].quantity", is(7)));
+
+        mockMvc.perform(put(shards).param("count", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/api/stocks/product/" + testProduct.getId() + "/location/NonExistent/shards")
+                .param("count", "4"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @WithMockUser(username = "testUser")
+    void testRebalanceEvensOutStarvedShards() throws Exception {
+        List<StockLevelDTO> levels = stockService.splitStock(testProduct.getId(), "Warehouse B", 4);
+        // Las compras vaciaron tres de los cuatro subcontadores
+        for (StockLevelDTO level : levels.subList(1, 4)) {
+            stockRepository.decrementIfAvailable(level.getId(), level.getQuantity());
+        }
+
+        int moved = shardRebalancer.rebalanceAll();
+
+        assertEquals(3, moved);
+        assertEquals(List.of(2, 1, 1, 1), stockRepository.findShardLevels(testProduct.getId(), "Warehouse B").stream()
+                .map(StockLevelDTO::getQuantity).toList());
+    }
+
+    @Test
+    @WithMockUser(username = "testUser")
+    void testRebalanceMovesUnitsTowardsLowerShardIds() {
+        List<StockLevelDTO> levels = stockService.splitStock(testProduct.getId(), "Warehouse B", 4);
+        // Solo queda stock en el ultimo subcontador: se suma primero a la fila de menor id
+        for (StockLevelDTO level : levels.subList(0, 3)) {
+            stockRepository.decrementIfAvailable(level.getId(), level.getQuantity());
+        }
+
+        int moved = shardRebalancer.rebalanceAll();
 
+        assertEquals(4, moved);
+        assertEquals(List.of(2, 1, 1, 1), stockRepository.findShardLevels(testProduct.getId(), "Warehouse B").stream()
+                .map(StockLevelDTO::getQuantity).toList());
+    }
+
+    @Test
+    @WithMockUser(username = "testUser")
+    void testUpdateStockResetsTheShardsOfItsLocation() {
+        List<StockLevelDTO> levels = stockService.splitStock(testProduct.getId(), "Warehouse A", 4);
+        stockRepository.findByProductId(testProduct.getId()).forEach(entityManager::detach);
+
+        // La cantidad absoluta es el total de la ubicacion y se vuelve a repartir
+        stockService.updateStock(stock1.getId(), new Stock(null, testProduct, 20, "Warehouse A"));
+        stockRepository.findByProductId(testProduct.getId()).forEach(entityManager::detach);
+        assertEquals(List.of(5, 5, 5, 5), stockRepository.findShardLevels(testProduct.getId(), "Warehouse A").stream()
+                .map(StockLevelDTO::getQuantity).toList());
+
+        // Un subcontador no se actualiza por separado
+        Long shardId = levels.get(1).getId();
+        assertThrows(BadRequestException.class,
+                () -> stockService.updateStock(shardId, new Stock(null, testProduct, 1, "Warehouse A")));
+
+        // Al mover la fila principal los subcontadores que deja se borran
+        stockService.updateStock(stock1.getId(), new Stock(null, testProduct, 7, "Warehouse C"));
+        stockRepository.findByProductId(testProduct.getId()).forEach(entityManager::detach);
+        assertTrue(stockRepository.findShardLevels(testProduct.getId(), "Warehouse A").isEmpty());
+        assertEquals(List.of(7), stockRepository.findShardLevels(testProduct.getId(), "Warehouse C").stream()
+                .map(StockLevelDTO::getQuantity).toList());
+    }
+
+    private OrderDetail line(Product product, int quantity) {
+        OrderDetail detail = new OrderDetail();
+        detail.setProduct(product);
+        detail.setQuantity(quantity);
+        return detail;
+    }
+}
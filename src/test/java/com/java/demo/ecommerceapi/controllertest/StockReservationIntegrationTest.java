@@ -0,0 +1,192 @@
+package com.java.demo.ecommerceapi.controllertest;
+
+import com.java.demo.ecommerceapi.model.*;
+import com.java.demo.ecommerceapi.repository.*;
+import com.java.demo.ecommerceapi.reservation.ReservationLog;
+import com.java.demo.ecommerceapi.reservation.StockReservationEngine;
+import com.java.demo.ecommerceapi.service.OrderService;
+import com.java.demo.ecommerceapi.service.ProductService;
+import com.java.demo.ecommerceapi.service.StockService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compras con el motor de reservas activo: base de datos propia para no compartir filas con las otras pruebas
+ * y flush manual (el intervalo automatico es de una hora).
+ */
+@SpringBootTest(properties = {
+        "stock.reservations.enabled=true",
+        "stock.reservations.flush-interval=1h",
+        "stock.reservations.log=${java.io.tmpdir}/ecommerceapi-stock-reservations-test.log",
+        "spring.datasource.url=jdbc:h2:mem:reservations;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE"
+})
+@AutoConfigureMockMvc
+public class StockReservationIntegrationTest {
+
+    @Autowired
+    private StockReservationEngine reservations;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderDetailRepository orderDetailRepository;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${stock.reservations.log}")
+    private Path logPath;
+
+    private Brand brand;
+    private Category category;
+    private Product product;
+    private Stock stock;
+    private final List<Order> orders = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        brand = new Brand();
+        brand.setName("Reservation Brand");
+        brand = brandRepository.save(brand);
+
+        category = new Category();
+        category.setName("Reservation Category");
+        category = categoryRepository.save(category);
+
+        product = new Product();
+        product.setName("Flash Sale Product");
+        product.setDescription("Flash Sale Description");
+        product.setPrice(new BigDecimal("10"));
+        product.setBrand(brand);
+        product.setCategory(category);
+        product = productService.createProduct(product);
+
+        stock = stockService.createStock(new Stock(null, product, 10, "Bodega A"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        reservations.flush();
+        for (Order order : orders) {
+            orderDetailRepository.deleteAll(order.getOrderDetails());
+            orderRepository.deleteById(order.getId());
+        }
+        stockService.deleteStock(stock.getId());
+        productService.deleteProduct(product.getId());
+        categoryRepository.delete(category);
+        brandRepository.delete(brand);
+    }
+
+    @Test
+    public void testOrdersReserveInMemoryAndFlushPersistsOneDelta() throws IOException {
+        orders.add(orderService.createOrder("admin", List.of(line(3))));
+        orders.add(orderService.createOrder("admin", List.of(line(4))));
+
+        assertEquals(3, reservations.available(product.getId()));
+        // La tabla todavia no recibio los descuentos
+        assertEquals(10, quantityInDatabase());
+
+        reservations.flush();
+
+        assertEquals(3, quantityInDatabase());
+        assertTrue(ReservationLog.read(logPath).isEmpty());
+        Exception exception = assertThrows(RuntimeException.class, () ->
+                orderService.createOrder("admin", List.of(line(4))));
+        assertEquals("Insufficient stock for product 'Flash Sale Product'", exception.getMessage());
+    }
+
+    @Test
+    public void testRolledBackOrderReleasesItsReservation() {
+        transactionTemplate.executeWithoutResult(status -> {
+            stockService.allocateStock(List.of(line(6)));
+            assertEquals(4, reservations.available(product.getId()));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(10, reservations.available(product.getId()));
+        reservations.flush();
+        assertEquals(10, quantityInDatabase());
+    }
+
+    @Test
+    public void testAdministrativeChangeReloadsTheEngine() {
+        orders.add(orderService.createOrder("admin", List.of(line(2))));
+
+        stockService.updateStockQuantity(product.getId(), "Bodega A", 25);
+
+        assertEquals(25, reservations.available(product.getId()));
+        reservations.flush();
+        assertEquals(25, quantityInDatabase());
+    }
+
+    @Test
+    public void testRecoveryReplaysUnflushedMovementsOnce() throws IOException {
+        orders.add(orderService.createOrder("admin", List.of(line(2))));
+        List<Long> logged = ReservationLog.read(logPath).stream().map(record -> record.sequence()).toList();
+        assertEquals(1, logged.size());
+
+        // Caida antes del flush: al iniciar se aplica lo que quedo en el registro
+        reservations.recover();
+
+        assertEquals(8, quantityInDatabase());
+        assertEquals(8, reservations.available(product.getId()));
+        assertTrue(ReservationLog.read(logPath).isEmpty());
+
+        // Un movimiento ya aplicado (secuencia no mayor al checkpoint) no se vuelve a descontar
+        Files.writeString(logPath, logged.get(0) + " " + stock.getId() + " 2\n", StandardCharsets.US_ASCII,
+                StandardOpenOption.APPEND);
+        reservations.recover();
+
+        assertEquals(8, quantityInDatabase());
+    }
+
+    private int quantityInDatabase() {
+        return stockRepository.findQuantityById(stock.getId()).orElseThrow();
+    }
+
+    private OrderDetail line(int quantity) {
+        Product reference = new Product();
+        reference.setId(product.getId());
+        reference.setName(product.getName());
+        OrderDetail detail = new OrderDetail();
+        detail.setProduct(reference);
+        detail.setQuantity(quantity);
+        return detail;
+    }
+}
@@ -0,0 +1,166 @@
+package com.java.demo.ecommerceapi.repositorytest;
+
+import com.java.demo.ecommerceapi.dto.ProductCursor;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.model.Brand;
+import com.java.demo.ecommerceapi.model.Category;
+import com.java.demo.ecommerceapi.model.Product;
+import com.java.demo.ecommerceapi.model.Stock;
+import com.java.demo.ecommerceapi.repository.BrandRepository;
+import com.java.demo.ecommerceapi.repository.CategoryRepository;
+import com.java.demo.ecommerceapi.repository.ProductRepository;
+import com.java.demo.ecommerceapi.repository.ProductSearchFilter;
+import com.java.demo.ecommerceapi.repository.StockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifica con EXPLAIN de H2 que cada combinacion de filtros llega a la tabla products por un indice.
+ */
+@SpringBootTest
+@Transactional
+public class ProductSearchPlanTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private BrandRepository brandRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private Brand brand;
+    private Product cheap;
+    private Product expensive;
+
+    @BeforeEach
+    void setUp() {
+        brand = new Brand();
+        brand.setName("Plan Brand");
+        brand = brandRepository.save(brand);
+        Category category = new Category();
+        category.setName("Plan Category");
+        category = categoryRepository.save(category);
+        cheap = productRepository.save(new Product(null, "Plan B", "Barato", new BigDecimal("10.00"), brand, category, null, null, null));
+        expensive = productRepository.save(new Product(null, "Plan A", "Caro", new BigDecimal("90.00"), brand, category, null, null, null));
+        stockRepository.save(new Stock(null, cheap, 3, "Bodega A"));
+    }
+
+    @Test
+    void testSearchReturnsOnlyMatches() {
+        List<ProductDTO> all = productRepository.search(
+                ProductSearchFilter.of(null, "PLAN category", null, null, brand.getId(), false));
+        List<ProductDTO> byName = productRepository.searchPage(
+                ProductSearchFilter.of(null, "Plan Category", null, null, null, false), null, 10);
+        List<ProductDTO> stocked = productRepository.search(
+                ProductSearchFilter.of("plan", null, new BigDecimal("5.00"), null, null, true));
+        List<ProductDTO> page = productRepository.searchPage(
+                ProductSearchFilter.of(null, "Plan Category", null, null, null, false),
+                ProductCursor.afterNameAndId("Plan A", expensive.getId()), 1);
+
+        assertEquals(List.of("Plan B", "Plan A"), all.stream().map(ProductDTO::getName).toList());
+        assertEquals(List.of("Plan A", "Plan B"), byName.stream().map(ProductDTO::getName).toList());
+        assertEquals(List.of(cheap.getId()), stocked.stream().map(ProductDTO::getId).toList());
+        assertEquals(List.of(cheap.getId()), page.stream().map(ProductDTO::getId).toList());
+    }
+
+    @Test
+    void testEachFilterUsesAnIndex() {
+        assertIndexed(ProductSearchFilter.of(null, null, null, null, null, false).withIds(List.of(cheap.getId())), "PRIMARY_KEY");
+        assertIndexed(ProductSearchFilter.of(null, null, new BigDecimal("5.00"), null, null, false), "IDX_PRODUCTS_PRICE");
+        assertIndexed(ProductSearchFilter.of(null, null, null, new BigDecimal("50.00"), null, false), "IDX_PRODUCTS_PRICE");
+        assertIndexed(ProductSearchFilter.of(null, null, new BigDecimal("5.00"), new BigDecimal("50.00"), null, false), "IDX_PRODUCTS_PRICE");
+        assertIndexed(ProductSearchFilter.of(null, null, null, null, brand.getId(), false), "BRAND_ID");
+        assertIndexed(ProductSearchFilter.of(null, "Plan Category", null, null, null, false), "CATEGORY_ID");
+        assertIndexed(ProductSearchFilter.of(null, null, null, null, null, true), "PRIMARY_KEY");
+    }
+
+    @Test
+    void testCombinedFiltersUseAnIndex() {
+        assertIndexed(ProductSearchFilter.of(null, "Plan Category", new BigDecimal("5.00"), null, null, false), null);
+        assertIndexed(ProductSearchFilter.of(null, null, new BigDecimal("5.00"), new BigDecimal("50.00"), brand.getId(), true), null);
+        assertIndexed(ProductSearchFilter.of(null, "Plan Category", null, null, brand.getId(), true), null);
+        assertIndexed(ProductSearchFilter.of(null, null, new BigDecimal("5.00"), null, null, true).withIds(List.of(cheap.getId())), null);
+    }
+
+    /**
+     * Ejecuta la busqueda, toma la sentencia SQL que genero y comprueba su plan: products no se recorre
+     * completa y, si se indica, el acceso usa el indice esperado.
+     */
+    private void assertIndexed(ProductSearchFilter filter, String expectedIndex) {
+        setQueryStatistics(false);
+        setQueryStatistics(true);
+        productRepository.search(filter);
+        List<String> statements = jdbcTemplate.queryForList(
+                "SELECT SQL_STATEMENT FROM INFORMATION_SCHEMA.QUERY_STATISTICS", String.class).stream()
+                .filter(sql -> sql.toLowerCase().contains("from products"))
+                .toList();
+        setQueryStatistics(false);
+        assertEquals(1, statements.size(), statements::toString);
+
+        String plan = explain(statements.get(0));
+        // La linea siguiente al FROM de products describe como se accede a la tabla
+        String[] lines = plan.split("\n");
+        String productsAccess = "";
+        for (int i = 0; i < lines.length - 1; i++) {
+            if (lines[i].contains("\"PUBLIC\".\"PRODUCTS\"")) {
+                productsAccess = lines[i + 1];
+            }
+        }
+        assertFalse(productsAccess.contains("tableScan"), plan);
+        if (expectedIndex != null) {
+            assertTrue(productsAccess.contains(expectedIndex), plan);
+        }
+    }
+
+    // SET confirma la transaccion en curso en H2, por eso se ejecuta en una conexion aparte
+    private void setQueryStatistics(boolean enabled) {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SET QUERY_STATISTICS " + enabled);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+                int parameters = statement.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    statement.setObject(i, null);
+                }
+                try (ResultSet result = statement.executeQuery()) {
+                    result.next();
+                    return result.getString(1);
+                }
+            }
+        });
+    }
+}
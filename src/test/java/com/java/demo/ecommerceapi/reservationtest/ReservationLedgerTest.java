@@ -0,0 +1,164 @@
+package com.java.demo.ecommerceapi.reservationtest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.java.demo.ecommerceapi.dto.StockLevelDTO;
+import com.java.demo.ecommerceapi.reservation.Reservation;
+import com.java.demo.ecommerceapi.reservation.ReservationLedger;
+import com.java.demo.ecommerceapi.reservation.ReservationLog;
+import com.java.demo.ecommerceapi.reservation.ReservationRecord;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReservationLedgerTest {
+
+    @TempDir
+    private Path directory;
+
+    private Path logPath;
+    private ReservationLedger ledger;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        logPath = directory.resolve("reservations.log");
+        ledger = new ReservationLedger(new ReservationLog(logPath, false), 1);
+        // Producto 1 en dos ubicaciones, producto 2 en una
+        ledger.load(List.of(new StockLevelDTO(10L, 1L, "Bodega A", 30), new StockLevelDTO(11L, 1L, "Bodega B", 20),
+                new StockLevelDTO(20L, 2L, "Bodega A", 5)));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        ledger.close();
+    }
+
+    @Test
+    public void testConcurrentReservationsOnOneSkuNeverOversell() throws InterruptedException {
+        AtomicInteger reserved = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        for (int t = 0; t < 16; t++) {
+            int thread = t;
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 50; i++) {
+                    int quantity = (thread + i) % 3 + 1;
+                    if (ledger.reserve(Map.of(1L, quantity)).isReserved()) {
+                        reserved.addAndGet(quantity);
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(50, reserved.get() + ledger.available(1L));
+        List<ReservationRecord> drained = ledger.drain();
+        assertEquals(reserved.get(), drained.stream().mapToInt(ReservationRecord::quantity).sum());
+        for (int i = 1; i < drained.size(); i++) {
+            assertTrue(drained.get(i).sequence() > drained.get(i - 1).sequence());
+        }
+        assertEquals(5, ledger.available(2L));
+    }
+
+    @Test
+    public void testReservationSplitsAcrossLocationsInIdOrder() {
+        Reservation reservation = ledger.reserve(Map.of(1L, 32, 2L, 1));
+
+        assertTrue(reservation.isReserved());
+        assertEquals(18, ledger.available(1L));
+        assertEquals(4, ledger.available(2L));
+        assertEquals(List.of(30, 2), reservation.records().stream()
+                .filter(record -> record.stockId() != 20L).map(ReservationRecord::quantity).toList());
+    }
+
+    @Test
+    public void testReservationIsAllOrNothing() {
+        Reservation reservation = ledger.reserve(Map.of(1L, 10, 2L, 6));
+
+        assertFalse(reservation.isReserved());
+        assertEquals(2L, reservation.shortProductId());
+        assertEquals(50, ledger.available(1L));
+        assertEquals(5, ledger.available(2L));
+        assertTrue(ledger.drain().isEmpty());
+        assertFalse(ledger.reserve(Map.of(3L, 1)).isReserved());
+    }
+
+    @Test
+    public void testReleaseRestoresUnitsAndQueuesTheInverseMovement() {
+        Reservation reservation = ledger.reserve(Map.of(2L, 3));
+
+        ledger.release(reservation);
+
+        assertEquals(5, ledger.available(2L));
+        List<ReservationRecord> drained = ledger.drain();
+        assertEquals(2, drained.size());
+        assertEquals(0, drained.stream().mapToInt(ReservationRecord::quantity).sum());
+    }
+
+    @Test
+    public void testLogHasEveryMovementAndIgnoresAPartialLastLine() throws IOException {
+        ledger.reserve(Map.of(1L, 31));
+        ledger.reserve(Map.of(2L, 2));
+        // Caida a mitad de una escritura
+        Files.writeString(logPath, "4 20", StandardCharsets.US_ASCII, StandardOpenOption.APPEND);
+
+        List<ReservationRecord> records = ReservationLog.read(logPath);
+
+        assertEquals(List.of(new ReservationRecord(1, 10, 30), new ReservationRecord(2, 11, 1),
+                new ReservationRecord(3, 20, 2)), records);
+    }
+
+    @Test
+    public void testTruncateLogOnlyWhenNothingIsQueued() throws IOException {
+        ledger.reserve(Map.of(2L, 1));
+        ledger.truncateLogIfIdle();
+        assertEquals(1, ReservationLog.read(logPath).size());
+
+        ledger.drain();
+        ledger.truncateLogIfIdle();
+        assertTrue(ReservationLog.read(logPath).isEmpty());
+    }
+
+    @Test
+    public void testReloadSubtractsMovementsStillQueued() {
+        ledger.reserve(Map.of(2L, 2));
+
+        // La base de datos todavia no recibio el descuento y un administrador agrego otra ubicacion
+        ledger.reload(List.of(2L), List.of(new StockLevelDTO(20L, 2L, "Bodega A", 5),
+                new StockLevelDTO(21L, 2L, "Bodega B", 4)));
+
+        assertEquals(7, ledger.available(2L));
+    }
+
+    @Test
+    public void testRequeuedMovementsStayAheadOfNewOnes() {
+        ledger.reserve(Map.of(2L, 1));
+        List<ReservationRecord> drained = ledger.drain();
+        ledger.reserve(Map.of(2L, 1));
+
+        ledger.requeue(drained);
+
+        List<ReservationRecord> pending = ledger.drain();
+        assertEquals(2, pending.size());
+        assertTrue(pending.get(0).sequence() < pending.get(1).sequence());
+    }
+}
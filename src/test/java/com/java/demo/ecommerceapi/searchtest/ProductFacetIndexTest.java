@@ -0,0 +1,66 @@
+package com.java.demo.ecommerceapi.searchtest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.java.demo.ecommerceapi.dto.FacetCountDTO;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.search.PriceBuckets;
+import com.java.demo.ecommerceapi.search.ProductFacetIndex;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductFacetIndexTest {
+
+    private ProductFacetIndex facetIndex;
+
+    @BeforeEach
+    public void setUp() {
+        facetIndex = new ProductFacetIndex();
+        facetIndex.index(new ProductDTO(1L, "Camara", null, new BigDecimal("9.99"), 1L, 1L));
+        facetIndex.index(new ProductDTO(2L, "Funda", null, new BigDecimal("10.00"), 1L, 2L));
+        facetIndex.index(new ProductDTO(3L, "Laptop", null, new BigDecimal("1500.00"), 2L, 2L));
+    }
+
+    @Test
+    public void testCountsOnlyMatchedProducts() {
+        Map<String, List<FacetCountDTO>> facets = facetIndex.count(bits(1, 2));
+
+        assertEquals(List.of(new FacetCountDTO("1", 1), new FacetCountDTO("2", 1)), facets.get(ProductFacetIndex.CATEGORY));
+        assertEquals(List.of(new FacetCountDTO("1", 2)), facets.get(ProductFacetIndex.BRAND));
+        assertEquals(List.of(new FacetCountDTO("0-10", 1), new FacetCountDTO("10-25", 1)), facets.get(ProductFacetIndex.PRICE));
+    }
+
+    @Test
+    public void testReindexAndRemove() {
+        facetIndex.index(new ProductDTO(1L, "Camara", null, new BigDecimal("2000.00"), 2L, 2L));
+        facetIndex.remove(2L);
+
+        Map<String, List<FacetCountDTO>> facets = facetIndex.count(bits(1, 2, 3));
+
+        assertEquals(List.of(new FacetCountDTO("2", 2)), facets.get(ProductFacetIndex.CATEGORY));
+        assertEquals(List.of(new FacetCountDTO("1000+", 2)), facets.get(ProductFacetIndex.PRICE));
+        assertTrue(facetIndex.count(new BitSet()).get(ProductFacetIndex.BRAND).isEmpty());
+    }
+
+    @Test
+    public void testPriceBuckets() {
+        assertEquals(0, PriceBuckets.bucketOf(BigDecimal.ZERO));
+        assertEquals(1, PriceBuckets.bucketOf(new BigDecimal("24.99")));
+        assertEquals(PriceBuckets.count() - 1, PriceBuckets.bucketOf(new BigDecimal("1000")));
+        assertEquals("25-50", PriceBuckets.label(2));
+    }
+
+    private static BitSet bits(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) {
+            bits.set(id);
+        }
+        return bits;
+    }
+}
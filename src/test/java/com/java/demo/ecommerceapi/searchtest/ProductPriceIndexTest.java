@@ -0,0 +1,102 @@
+package com.java.demo.ecommerceapi.searchtest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.search.ProductPriceIndex;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductPriceIndexTest {
+
+    private ProductPriceIndex priceIndex;
+
+    @BeforeEach
+    public void setUp() {
+        priceIndex = new ProductPriceIndex();
+        priceIndex.index(product(1L, "20.00"));
+        priceIndex.index(product(2L, "10.00"));
+        priceIndex.index(product(3L, "15.50"));
+        priceIndex.index(product(4L, "10.00"));
+    }
+
+    @Test
+    public void testRangesAreInclusiveAndOrderedByPrice() {
+        assertArrayEquals(new long[] { 2L, 4L, 3L }, priceIndex.idsInRange(new BigDecimal("10"), new BigDecimal("15.50")));
+        assertArrayEquals(new long[] { 3L, 1L }, priceIndex.idsInRange(new BigDecimal("10.001"), null));
+        assertArrayEquals(new long[] { 2L, 4L }, priceIndex.idsInRange(null, new BigDecimal("15.499")));
+        assertEquals(0, priceIndex.idsInRange(new BigDecimal("21"), null).length);
+        assertEquals(0, priceIndex.idsInRange(new BigDecimal("16"), new BigDecimal("15")).length);
+    }
+
+    @Test
+    public void testMatchRangeAsBitmap() {
+        BitSet expected = new BitSet();
+        expected.set(2);
+        expected.set(3);
+        expected.set(4);
+
+        assertEquals(expected, priceIndex.matchRange(new BigDecimal("10"), new BigDecimal("15.50")));
+        assertEquals(3, priceIndex.countInRange(new BigDecimal("10"), new BigDecimal("15.50")));
+        assertTrue(priceIndex.matchRange(new BigDecimal("16"), new BigDecimal("15")).isEmpty());
+        assertEquals(0, priceIndex.countInRange(new BigDecimal("16"), new BigDecimal("15")));
+    }
+
+    @Test
+    public void testPriceChangeAndRemove() {
+        priceIndex.index(product(2L, "30.00"));
+        priceIndex.remove(3L);
+
+        assertArrayEquals(new long[] { 4L, 1L, 2L }, priceIndex.idsInRange(null, null));
+        assertEquals(3, priceIndex.size());
+    }
+
+    @Test
+    public void testMatchesBruteForceAfterRandomWrites() {
+        Random random = new Random(7);
+        Map<Long, Long> cents = new HashMap<>();
+        priceIndex.clear();
+
+        for (int i = 0; i < 5000; i++) {
+            long id = 1 + random.nextInt(300);
+            if (random.nextInt(4) == 0) {
+                priceIndex.remove(id);
+                cents.remove(id);
+            } else {
+                long price = random.nextInt(2000);
+                priceIndex.index(product(id, BigDecimal.valueOf(price, 2).toPlainString()));
+                cents.put(id, price);
+            }
+            // Consultas intercaladas con escrituras, para mezclar el buffer de altas con el arreglo ordenado
+            if (i % 50 == 0) {
+                long min = random.nextInt(2000);
+                long max = min + random.nextInt(500);
+                long[] expected = cents.entrySet().stream()
+                        .filter(entry -> entry.getValue() >= min && entry.getValue() <= max)
+                        .sorted(Map.Entry.<Long, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                        .mapToLong(Map.Entry::getKey)
+                        .toArray();
+                assertArrayEquals(expected, priceIndex.idsInRange(BigDecimal.valueOf(min, 2), BigDecimal.valueOf(max, 2)),
+                        min + ".." + max);
+            }
+        }
+        long[] all = priceIndex.idsInRange(null, null);
+        assertEquals(cents.size(), all.length);
+        assertArrayEquals(cents.keySet().stream().sorted(Comparator.comparing((Long id) -> cents.get(id)).thenComparing(id -> id))
+                .mapToLong(Long::longValue).toArray(), all);
+        assertTrue(Arrays.stream(all).distinct().count() == all.length);
+    }
+
+    private static ProductDTO product(Long id, String price) {
+        return new ProductDTO(id, "Product " + id, null, new BigDecimal(price), 1L, 1L);
+    }
+}
@@ -0,0 +1,75 @@
+package com.java.demo.ecommerceapi.searchtest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.java.demo.ecommerceapi.dto.PriceStatsDTO;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.search.PriceBuckets;
+import com.java.demo.ecommerceapi.search.ProductPriceStats;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductPriceStatsTest {
+
+    private ProductPriceStats priceStats;
+
+    @BeforeEach
+    public void setUp() {
+        priceStats = new ProductPriceStats();
+        priceStats.index(product(1L, 1L, "5.00"));
+        priceStats.index(product(2L, 1L, "30.00"));
+        priceStats.index(product(3L, 1L, "30.0"));
+        priceStats.index(product(4L, 2L, "1200.00"));
+    }
+
+    @Test
+    public void testStatsByCategoryAndCatalog() {
+        PriceStatsDTO category = priceStats.stats(1L);
+        assertEquals(3, category.getCount());
+        assertEquals(0, new BigDecimal("5").compareTo(category.getMin()));
+        assertEquals(0, new BigDecimal("30").compareTo(category.getMax()));
+        assertEquals(PriceBuckets.count(), category.getHistogram().size());
+        assertEquals("0-10", category.getHistogram().get(0).getValue());
+        assertEquals(1, category.getHistogram().get(0).getCount());
+        assertEquals("25-50", category.getHistogram().get(2).getValue());
+        assertEquals(2, category.getHistogram().get(2).getCount());
+
+        PriceStatsDTO catalog = priceStats.stats(null);
+        assertEquals(4, catalog.getCount());
+        assertEquals(0, new BigDecimal("1200").compareTo(catalog.getMax()));
+        assertEquals(1, catalog.getHistogram().get(PriceBuckets.count() - 1).getCount());
+    }
+
+    @Test
+    public void testUpdatesAndRemovesMoveMinAndMax() {
+        priceStats.index(product(1L, 2L, "8.00"));
+        priceStats.remove(2L);
+
+        PriceStatsDTO category = priceStats.stats(1L);
+        assertEquals(1, category.getCount());
+        assertEquals(0, new BigDecimal("30").compareTo(category.getMin()));
+        assertEquals(0, new BigDecimal("30").compareTo(category.getMax()));
+        assertEquals(0, category.getHistogram().get(0).getCount());
+
+        PriceStatsDTO moved = priceStats.stats(2L);
+        assertEquals(2, moved.getCount());
+        assertEquals(0, new BigDecimal("8").compareTo(moved.getMin()));
+    }
+
+    @Test
+    public void testUnknownCategoryIsEmpty() {
+        PriceStatsDTO stats = priceStats.stats(99L);
+
+        assertEquals(0, stats.getCount());
+        assertNull(stats.getMin());
+        assertNull(stats.getMax());
+        assertTrue(stats.getHistogram().stream().allMatch(bucket -> bucket.getCount() == 0));
+    }
+
+    private static ProductDTO product(Long id, Long categoryId, String price) {
+        return new ProductDTO(id, "Product " + id, null, new BigDecimal(price), null, categoryId, 0L);
+    }
+}
@@ -0,0 +1,156 @@
+package com.java.demo.ecommerceapi.searchtest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.search.ProductSearchIndex;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductSearchIndexTest {
+
+    private ProductSearchIndex searchIndex;
+
+    @BeforeEach
+    public void setUp() {
+        searchIndex = new ProductSearchIndex();
+        searchIndex.index(new ProductDTO(1L, "Cámara Réflex", "Lente intercambiable", new BigDecimal("500.00"), 1L, 1L));
+        searchIndex.index(new ProductDTO(2L, "Camara compacta", "Bolsillo", new BigDecimal("150.00"), 1L, 1L));
+        searchIndex.index(new ProductDTO(3L, "Laptop Gamer", "Pantalla de 15 pulgadas", new BigDecimal("999.99"), 2L, 2L));
+    }
+
+    @Test
+    public void testMatchNameIsCaseAndAccentInsensitive() {
+        BitSet result = searchIndex.matchName("CAMARA");
+
+        assertEquals(2, result.cardinality());
+        assertTrue(result.get(1));
+        assertTrue(result.get(2));
+    }
+
+    @Test
+    public void testMatchNameRequiresAllTermsAsPrefixes() {
+        BitSet result = searchIndex.matchName("cam refl");
+
+        assertEquals(1, result.cardinality());
+        assertTrue(result.get(1));
+    }
+
+    @Test
+    public void testMatchNameContainingComparesSubstrings() {
+        assertEquals(BitSet.valueOf(new long[] { 1L << 2 }), searchIndex.matchNameContaining("MARA CO"));
+        assertEquals(BitSet.valueOf(new long[] { 1L << 3 }), searchIndex.matchNameContaining("top g"));
+        assertEquals(BitSet.valueOf(new long[] { 1L << 3 }), searchIndex.matchNameContaining("aptop"));
+        // Sin comodines: el % se compara como un caracter mas
+        assertTrue(searchIndex.matchNameContaining("cam%").isEmpty());
+        assertEquals(BitSet.valueOf(new long[] { 1L << 1 }), searchIndex.matchNameContaining("a r"));
+        // Una consulta sin terminos queda para la base de datos
+        assertNull(searchIndex.matchNameContaining("%"));
+    }
+
+    @Test
+    public void testMatchNameContainingIgnoresAccents() {
+        assertEquals(BitSet.valueOf(new long[] { (1L << 1) | (1L << 2) }), searchIndex.matchNameContaining("CÁMARA"));
+        assertEquals(BitSet.valueOf(new long[] { 1L << 1 }), searchIndex.matchNameContaining("reflex"));
+        assertEquals(BitSet.valueOf(new long[] { 1L << 1 }), searchIndex.matchNameContaining("éfl"));
+    }
+
+    @Test
+    public void testMatchNameContainingForgetsRemovedTerms() {
+        searchIndex.index(new ProductDTO(3L, "Laptop Oficina", "Pantalla de 14 pulgadas", new BigDecimal("799.99"), 2L, 2L));
+        assertTrue(searchIndex.matchNameContaining("amer").isEmpty());
+        assertTrue(searchIndex.matchNameContaining("fici").get(3));
+
+        searchIndex.remove(3L);
+        assertTrue(searchIndex.matchNameContaining("apt").isEmpty());
+    }
+
+    @Test
+    public void testMatchDescription() {
+        assertTrue(searchIndex.matchName("pulgadas").isEmpty());
+        assertTrue(searchIndex.match("pulgadas", ProductSearchIndex.Field.DESCRIPTION).get(3));
+    }
+
+    @Test
+    public void testReindexAndRemove() {
+        searchIndex.index(new ProductDTO(3L, "Laptop Oficina", "Pantalla de 14 pulgadas", new BigDecimal("799.99"), 2L, 2L));
+        assertTrue(searchIndex.matchName("gamer").isEmpty());
+        assertTrue(searchIndex.matchName("oficina").get(3));
+
+        searchIndex.remove(3L);
+        assertTrue(searchIndex.matchName("laptop").isEmpty());
+        assertEquals(2, searchIndex.size());
+    }
+
+    @Test
+    public void testQueryWithoutTerms() {
+        assertNull(searchIndex.matchName("  -- "));
+    }
+
+    @Test
+    public void testRankPrefersNameMatchesAndMoreTerms() {
+        searchIndex.index(new ProductDTO(4L, "Funda", "Funda para camara compacta", new BigDecimal("20.00"), 3L, 3L));
+
+        List<ProductSearchIndex.ScoredProduct> ranked = searchIndex.rank("camara compacta", 10);
+
+        assertEquals(3, ranked.size());
+        assertEquals(2L, ranked.get(0).productId());
+        assertEquals(4L, ranked.get(1).productId());
+        assertEquals(1L, ranked.get(2).productId());
+        assertTrue(ranked.get(0).score() > ranked.get(1).score());
+        assertTrue(ranked.get(1).score() > ranked.get(2).score());
+    }
+
+    @Test
+    public void testRankKeepsOnlyTopK() {
+        for (long id = 10; id < 110; id++) {
+            String name = id % 10 == 0 ? "Mouse inalambrico" : "Mouse";
+            searchIndex.index(new ProductDTO(id, name, "Accesorio", new BigDecimal("10.00"), 1L, 1L));
+        }
+
+        List<ProductSearchIndex.ScoredProduct> ranked = searchIndex.rank("mouse inalambrico", 5);
+
+        assertEquals(5, ranked.size());
+        assertEquals(10L, ranked.get(0).productId());
+        assertEquals(50L, ranked.get(4).productId());
+        assertTrue(searchIndex.rank("teclado", 5).isEmpty());
+    }
+
+    @Test
+    public void testMatchNameFuzzyToleratesTypos() {
+        assertTrue(searchIndex.matchName("camra").isEmpty());
+
+        BitSet oneTypo = searchIndex.matchNameFuzzy("camra");
+        assertEquals(2, oneTypo.cardinality());
+
+        BitSet twoTypos = searchIndex.matchNameFuzzy("lpatop gamr");
+        assertEquals(1, twoTypos.cardinality());
+        assertTrue(twoTypos.get(3));
+    }
+
+    @Test
+    public void testMatchNameFuzzyKeepsShortTermsExact() {
+        assertTrue(searchIndex.matchNameFuzzy("xa").isEmpty());
+        assertTrue(searchIndex.matchNameFuzzy("cam").get(1));
+        assertNull(searchIndex.matchNameFuzzy("--"));
+    }
+
+    @Test
+    public void testMatchNameFuzzyIgnoresRemovedTerms() {
+        searchIndex.remove(3L);
+        assertTrue(searchIndex.matchNameFuzzy("laptp").isEmpty());
+
+        for (long id = 10; id < 200; id++) {
+            searchIndex.index(new ProductDTO(id, "Termino" + id, null, BigDecimal.ONE, 1L, 1L));
+            searchIndex.remove(id);
+        }
+        searchIndex.index(new ProductDTO(3L, "Laptop Gamer", "Pantalla de 15 pulgadas", new BigDecimal("999.99"), 2L, 2L));
+        assertTrue(searchIndex.matchNameFuzzy("laptp").get(3));
+        assertTrue(searchIndex.matchNameFuzzy("termino15").isEmpty());
+    }
+}
@@ -0,0 +1,113 @@
+package com.java.demo.ecommerceapi.searchtest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.dto.ProductSuggestionDTO;
+import com.java.demo.ecommerceapi.search.ProductSuggester;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductSuggesterTest {
+
+    private ProductSuggester suggester;
+
+    @BeforeEach
+    public void setUp() {
+        suggester = new ProductSuggester();
+        suggester.index(product(1L, "Cámara Réflex"));
+        suggester.index(product(2L, "Camara compacta"));
+        suggester.index(product(3L, "Camiseta"));
+        suggester.index(product(4L, "Laptop Gamer"));
+    }
+
+    @Test
+    public void testSuggestByPrefixIgnoringCaseAndAccents() {
+        List<ProductSuggestionDTO> result = suggester.suggest("CÁM", 10);
+
+        assertEquals(List.of(2L, 1L, 3L), ids(result));
+        assertEquals("Cámara Réflex", result.get(1).getName());
+        assertEquals(List.of(1L), ids(suggester.suggest("camara  ref", 10)));
+        assertTrue(suggester.suggest("camb", 10).isEmpty());
+        assertTrue(suggester.suggest("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void testMostPopularFirst() {
+        suggester.addPopularity(3L, 5);
+        suggester.addPopularity(1L, 2);
+
+        assertEquals(List.of(3L, 1L, 2L), ids(suggester.suggest("ca", 10)));
+        assertEquals(List.of(3L), ids(suggester.suggest("ca", 1)));
+    }
+
+    @Test
+    public void testRenameAndRemoveKeepPopularity() {
+        suggester.addPopularity(4L, 3);
+        suggester.index(product(4L, "Camara de seguridad"));
+
+        assertTrue(suggester.suggest("laptop", 10).isEmpty());
+        assertEquals(4L, suggester.suggest("cam", 10).get(0).getId());
+
+        suggester.remove(4L);
+        suggester.remove(3L);
+        assertEquals(List.of(2L, 1L), ids(suggester.suggest("ca", 10)));
+    }
+
+    @Test
+    public void testMatchesBruteForceAfterRandomWrites() {
+        Random random = new Random(42);
+        String[] words = { "cam", "camara", "cama", "lap", "laptop", "l", "c", "mouse" };
+        Map<Long, String> names = new HashMap<>();
+        Map<Long, Long> popularity = new HashMap<>();
+        suggester.clear();
+
+        for (int i = 0; i < 2000; i++) {
+            long id = 1 + random.nextInt(60);
+            int action = random.nextInt(10);
+            if (action < 5) {
+                String name = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)];
+                suggester.index(product(id, name));
+                names.put(id, name);
+                popularity.putIfAbsent(id, 0L);
+            } else if (action < 8) {
+                long units = random.nextInt(5);
+                suggester.addPopularity(id, units);
+                if (names.containsKey(id)) {
+                    popularity.merge(id, units, Long::sum);
+                }
+            } else {
+                suggester.remove(id);
+                names.remove(id);
+                popularity.remove(id);
+            }
+        }
+
+        for (String prefix : List.of("c", "ca", "cam", "cama", "camara c", "l", "lap", "laptop m", "m", "x")) {
+            List<Long> expected = names.keySet().stream()
+                    .filter(id -> names.get(id).startsWith(prefix))
+                    .sorted(Comparator.<Long, Long>comparing(popularity::get).reversed()
+                            .thenComparing(names::get)
+                            .thenComparing(id -> id))
+                    .limit(ProductSuggester.MAX_SUGGESTIONS)
+                    .toList();
+            assertEquals(expected, ids(suggester.suggest(prefix, ProductSuggester.MAX_SUGGESTIONS)), prefix);
+        }
+    }
+
+    private static ProductDTO product(Long id, String name) {
+        return new ProductDTO(id, name, null, BigDecimal.ONE, 1L, 1L);
+    }
+
+    private static List<Long> ids(List<ProductSuggestionDTO> suggestions) {
+        return suggestions.stream().map(ProductSuggestionDTO::getId).toList();
+    }
+}
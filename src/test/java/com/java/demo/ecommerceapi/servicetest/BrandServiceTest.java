@@ -35,8 +35,8 @@ public class BrandServiceTest {
     public void testGetAllBrands() {
         // Arrange
         List<Brand> brands = new ArrayList<>();
-        brands.add(new Brand(1L, "Brand A", null));
-        brands.add(new Brand(2L, "Brand B", null));
+        brands.add(new Brand(1L, "Brand A", null, null));
+        brands.add(new Brand(2L, "Brand B", null, null));
         when(brandRepository.findAll()).thenReturn(brands);
 
         // Act
@@ -53,7 +53,7 @@ public class BrandServiceTest {
     public void testGetBrandById() {
         // Arrange
         Long brandId = 100L;
-        Brand brand = new Brand(brandId, "Brand X", null);
+        Brand brand = new Brand(brandId, "Brand X", null, null);
         when(brandRepository.findById(brandId)).thenReturn(Optional.of(brand));
 
         // Act
@@ -69,8 +69,8 @@ public class BrandServiceTest {
     @Test
     public void testCreateBrand() {
         // Arrange
-        Brand brandToSave = new Brand(null, "Brand Y", null);
-        Brand savedBrand = new Brand(1L, "Brand Y", null);
+        Brand brandToSave = new Brand(null, "Brand Y", null, null);
+        Brand savedBrand = new Brand(1L, "Brand Y", null, null);
         when(brandRepository.save(brandToSave)).thenReturn(savedBrand);
 
         // Act
@@ -86,8 +86,8 @@ public class BrandServiceTest {
     public void testUpdateBrand() {
         // Arrange
         Long brandId = 100L;
-        Brand existingBrand = new Brand(brandId, "Brand Z", null);
-        Brand updatedBrand = new Brand(brandId, "Brand Z Updated", null);
+        Brand existingBrand = new Brand(brandId, "Brand Z", null, null);
+        Brand updatedBrand = new Brand(brandId, "Brand Z Updated", null, null);
         when(brandRepository.findById(brandId)).thenReturn(Optional.of(existingBrand));
         when(brandRepository.save(updatedBrand)).thenReturn(updatedBrand);
 
@@ -105,7 +105,7 @@ public class BrandServiceTest {
     public void testUpdateBrand_BrandNotFound() {
         // Arrange
         Long brandId = 100L;
-        Brand updatedBrand = new Brand(brandId, "Brand Z Updated", null);
+        Brand updatedBrand = new Brand(brandId, "Brand Z Updated", null, null);
         when(brandRepository.findById(brandId)).thenReturn(Optional.empty());
 
         // Act & Assert
@@ -121,7 +121,7 @@ public class BrandServiceTest {
     public void testDeleteBrand() {
         // Arrange
         Long brandId = 100L;
-        Brand existingBrand = new Brand(brandId, "Brand Z", null);
+        Brand existingBrand = new Brand(brandId, "Brand Z", null, null);
         when(brandRepository.findById(brandId)).thenReturn(Optional.of(existingBrand));
         doNothing().when(brandRepository).deleteById(brandId);
 
@@ -35,8 +35,8 @@ public class CategoryServiceTest {
     public void testGetAllCategories() {
         // Arrange
         List<Category> categories = new ArrayList<>();
-        categories.add(new Category(1L, "Category A", null));
-        categories.add(new Category(2L, "Category B", null));
+        categories.add(new Category(1L, "Category A", null, null));
+        categories.add(new Category(2L, "Category B", null, null));
         when(categoryRepository.findAll()).thenReturn(categories);
 
         // Act
@@ -53,7 +53,7 @@ public class CategoryServiceTest {
     public void testGetCategoryById() {
         // Arrange
         Long categoryId = 100L;
-        Category category = new Category(categoryId, "Category X", null);
+        Category category = new Category(categoryId, "Category X", null, null);
         when(categoryRepository.findById(categoryId)).thenReturn(Optional.of(category));
 
         // Act
@@ -69,8 +69,8 @@ public class CategoryServiceTest {
     @Test
     public void testCreateCategory() {
         // Arrange
-        Category categoryToSave = new Category(null, "Category Y", null);
-        Category savedCategory = new Category(1L, "Category Y", null);
+        Category categoryToSave = new Category(null, "Category Y", null, null);
+        Category savedCategory = new Category(1L, "Category Y", null, null);
         when(categoryRepository.save(categoryToSave)).thenReturn(savedCategory);
 
         // Act
@@ -86,8 +86,8 @@ public class CategoryServiceTest {
     public void testUpdateCategory() {
         // Arrange
         Long categoryId = 100L;
-        Category existingCategory = new Category(categoryId, "Category Z", null);
-        Category updatedCategory = new Category(categoryId, "Category Z Updated", null);
+        Category existingCategory = new Category(categoryId, "Category Z", null, null);
+        Category updatedCategory = new Category(categoryId, "Category Z Updated", null, null);
         when(categoryRepository.findById(categoryId)).thenReturn(Optional.of(existingCategory));
         when(categoryRepository.save(updatedCategory)).thenReturn(updatedCategory);
 
@@ -105,7 +105,7 @@ public class CategoryServiceTest {
     public void testUpdateCategory_CategoryNotFound() {
         // Arrange
         Long categoryId = 100L;
-        Category updatedCategory = new Category(categoryId, "Category Z Updated", null);
+        Category updatedCategory = new Category(categoryId, "Category Z Updated", null, null);
         when(categoryRepository.findById(categoryId)).thenReturn(Optional.empty());
 
         // Act & Assert
@@ -121,7 +121,7 @@ public class CategoryServiceTest {
     public void testDeleteCategory() {
         // Arrange
         Long categoryId = 100L;
-        Category existingCategory = new Category(categoryId, "Category Z", null);
+        Category existingCategory = new Category(categoryId, "Category Z", null, null);
         when(categoryRepository.findById(categoryId)).thenReturn(Optional.of(existingCategory));
 
         // Act
@@ -6,10 +6,10 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import com.java.demo.ecommerceapi.exception.ObjectNotFoundException;
 import com.java.demo.ecommerceapi.model.Order;
 import com.java.demo.ecommerceapi.model.OrderDetail;
 import com.java.demo.ecommerceapi.model.Product;
-import com.java.demo.ecommerceapi.model.Stock;
 import com.java.demo.ecommerceapi.model.User;
 import com.java.demo.ecommerceapi.repository.OrderDetailRepository;
 import com.java.demo.ecommerceapi.repository.OrderRepository;
@@ -22,7 +22,9 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -58,8 +60,8 @@ public class OrderServiceTest {
         String username = "testuser";
         User user = new User(1L, username, "password", "test@example.com", new ArrayList<>(), null);
 
-        Product product1 = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null);
-        Product product2 = new Product(2L, "Product 2", "Description 2", new BigDecimal("20.00"), null, null, null, null);
+        Product product1 = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        Product product2 = new Product(2L, "Product 2", "Description 2", new BigDecimal("20.00"), null, null, null, null, null);
 
         OrderDetail orderDetail1 = new OrderDetail();
         orderDetail1.setProduct(product1);
@@ -79,11 +81,8 @@ public class OrderServiceTest {
         savedOrder.setOrderDetails(orderDetails);
 
         when(userService.findByUsername(username)).thenReturn(Optional.of(user));
-        when(productService.getProductById(1L)).thenReturn(Optional.of(product1));
-        when(productService.getProductById(2L)).thenReturn(Optional.of(product2));
+        when(productService.getProductEntities(Set.of(1L, 2L))).thenReturn(Map.of(1L, product1, 2L, product2));
         when(orderRepository.save(any(Order.class))).thenReturn(savedOrder);
-        when(stockService.getStocksByProductId(1L)).thenReturn(List.of(new Stock(1L, product1, 10, "Location1")));
-        when(stockService.getStocksByProductId(2L)).thenReturn(List.of(new Stock(2L, product2, 10, "Location1")));
 
         // Act
         Order result = orderService.createOrder(username, orderDetails);
@@ -94,12 +93,31 @@ public class OrderServiceTest {
         assertEquals(new BigDecimal("40.00"), result.getTotalAmount());
         assertEquals(2, result.getOrderDetails().size());
         verify(userService, times(1)).findByUsername(username);
-        verify(productService, times(1)).getProductById(1L);
-        verify(productService, times(1)).getProductById(2L);
+        verify(productService, times(1)).getProductEntities(Set.of(1L, 2L));
+        verify(productService, never()).getProductById(anyLong());
         verify(orderRepository, times(1)).save(any(Order.class));
         verify(orderItemRepository, times(1)).saveAll(orderDetails);
-        verify(stockService, times(2)).getStocksByProductId(anyLong());
-        verify(stockService, times(2)).updateStockQuantity(anyLong(), anyString(), anyInt());
+        verify(stockService, times(1)).allocateStock(orderDetails);
+        verify(stockService, never()).updateStockQuantity(anyLong(), anyString(), anyInt());
+    }
+
+    @Test
+    public void testCreateOrder_ProductNotFound() {
+        // Arrange
+        String username = "testuser";
+        User user = new User(1L, username, "password", "test@example.com", new ArrayList<>(), null);
+        OrderDetail orderDetail = new OrderDetail();
+        orderDetail.setProduct(new Product(7L, null, null, null, null, null, null, null, null));
+        orderDetail.setQuantity(1);
+        when(userService.findByUsername(username)).thenReturn(Optional.of(user));
+        when(productService.getProductEntities(Set.of(7L))).thenReturn(Map.of());
+
+        // Act & Assert
+        Exception exception = assertThrows(ObjectNotFoundException.class, () ->
+                orderService.createOrder(username, List.of(orderDetail)));
+        assertEquals("Product not found with id:7", exception.getMessage());
+        verify(stockService, never()).allocateStock(anyList());
+        verify(orderRepository, never()).save(any(Order.class));
     }
 
     @Test
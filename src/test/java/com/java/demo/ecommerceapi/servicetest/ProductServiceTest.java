@@ -2,22 +2,61 @@ package com.java.demo.ecommerceapi.servicetest;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.java.demo.ecommerceapi.dto.ProductCursor;
+import com.java.demo.ecommerceapi.cache.ProductCache;
+import com.java.demo.ecommerceapi.cache.ProductResponseCache;
+import com.java.demo.ecommerceapi.cache.ProductResponseCache.SerializedResponse;
+import com.java.demo.ecommerceapi.cache.SingleFlight;
+import com.java.demo.ecommerceapi.dto.FacetCountDTO;
+import com.java.demo.ecommerceapi.dto.ProductBatchDTO;
+import com.java.demo.ecommerceapi.dto.ProductDTO;
+import com.java.demo.ecommerceapi.dto.ProductSearchResultDTO;
+import com.java.demo.ecommerceapi.dto.ProductSuggestionDTO;
+import com.java.demo.ecommerceapi.model.Category;
+import com.java.demo.ecommerceapi.model.OrderDetail;
 import com.java.demo.ecommerceapi.model.Product;
+import com.java.demo.ecommerceapi.repository.CategoryRepository;
+import com.java.demo.ecommerceapi.repository.OrderDetailRepository;
 import com.java.demo.ecommerceapi.repository.ProductRepository;
+import com.java.demo.ecommerceapi.repository.ProductSearchFilter;
+import com.java.demo.ecommerceapi.search.ProductAvailabilityIndex;
+import com.java.demo.ecommerceapi.search.ProductFacetIndex;
+import com.java.demo.ecommerceapi.search.ProductPriceIndex;
+import com.java.demo.ecommerceapi.search.ProductPriceStats;
+import com.java.demo.ecommerceapi.search.ProductSearchIndex;
+import com.java.demo.ecommerceapi.search.ProductSuggester;
 import com.java.demo.ecommerceapi.service.ProductService;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 public class ProductServiceTest {
@@ -25,28 +64,64 @@ public class ProductServiceTest {
     @Mock
     private ProductRepository productRepository;
 
-    @InjectMocks
+    @Mock
+    private OrderDetailRepository orderDetailRepository;
+
+    @Mock
+    private CategoryRepository categoryRepository;
+
+    private ProductSearchIndex searchIndex;
+
+    private ProductSuggester suggester;
+
+    private ProductFacetIndex facetIndex;
+
+    private ProductAvailabilityIndex availabilityIndex;
+
+    private ProductPriceIndex priceIndex;
+
+    private ProductPriceStats priceStats;
+
+    private ProductCache productCache;
+
+    private ProductResponseCache responseCache;
+
+    private SimpleMeterRegistry meterRegistry;
+
     private ProductService productService;
 
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        searchIndex = new ProductSearchIndex();
+        suggester = new ProductSuggester();
+        facetIndex = new ProductFacetIndex();
+        availabilityIndex = new ProductAvailabilityIndex();
+        priceIndex = new ProductPriceIndex();
+        priceStats = new ProductPriceStats();
+        productCache = new ProductCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+        meterRegistry = new SimpleMeterRegistry();
+        responseCache = new ProductResponseCache(new ObjectMapper(), new SimpleMeterRegistry(), 1 << 20, Duration.ofMinutes(1));
+        productService = new ProductService(productRepository, orderDetailRepository, categoryRepository, searchIndex, suggester, facetIndex,
+                availabilityIndex, priceIndex, priceStats, productCache, responseCache, new SingleFlight(meterRegistry, Duration.ofSeconds(5)),
+                List.of(searchIndex, suggester, facetIndex, priceIndex, priceStats));
     }
 
     @Test
     public void testGetAllProducts() {
         // Arrange
-        List<Product> products = new ArrayList<>();
-        products.add(new Product());
-        products.add(new Product());
-        when(productRepository.findAll()).thenReturn(products);
+        List<ProductDTO> products = new ArrayList<>();
+        products.add(new ProductDTO(1L, "Product 1", new BigDecimal("10.00"), null, null, 0L));
+        products.add(new ProductDTO(2L, "Product 2", new BigDecimal("20.00"), null, null, 0L));
+        when(productRepository.findAllAsDTO()).thenReturn(products);
 
         // Act
-        List<Product> result = productService.getAllProducts();
+        List<ProductDTO> result = productService.getAllProducts();
 
         // Assert
         assertEquals(2, result.size());
-        verify(productRepository, times(1)).findAll();
+        verify(productRepository, times(1)).findAllAsDTO();
+        verify(productRepository, never()).findAll();
     }
 
     @Test
@@ -66,11 +141,90 @@ public class ProductServiceTest {
         verify(productRepository, times(1)).findById(productId);
     }
 
+    @Test
+    public void testGetProductDTOByIdIsCachedUntilUpdate() {
+        // Arrange
+        Long productId = 100L;
+        ProductDTO cached = new ProductDTO(productId, "Product 1", "Description 1", new BigDecimal("10.00"), null, null);
+        Product existingProduct = new Product(productId, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        when(productRepository.findDTOById(productId)).thenReturn(Optional.of(cached));
+        when(productRepository.findById(productId)).thenReturn(Optional.of(existingProduct));
+        when(productRepository.save(any(Product.class))).then(invocation -> invocation.getArgument(0));
+
+        // Act
+        Optional<ProductDTO> first = productService.getProductDTOById(productId);
+        Optional<ProductDTO> second = productService.getProductDTOById(productId);
+        productService.updateProduct(productId, new Product(null, "Product 2", "Description 2", new BigDecimal("20.00"), null, null, null, null, null));
+        productService.getProductDTOById(productId);
+
+        // Assert
+        assertEquals(Optional.of(cached), first);
+        assertSame(first.get(), second.get());
+        verify(productRepository, times(2)).findDTOById(productId);
+    }
+
+    @Test
+    public void testGetProductsByIdsIsCacheFirstAndKeepsRequestOrder() {
+        // Arrange
+        ProductDTO product2 = new ProductDTO(2L, "Product 2", "Description 2", new BigDecimal("10.00"), null, null);
+        ProductDTO product3 = new ProductDTO(3L, "Product 3", "Description 3", new BigDecimal("20.00"), null, null);
+        when(productRepository.findDTOById(2L)).thenReturn(Optional.of(product2));
+        when(productRepository.findByIdIn(any())).thenReturn(List.of(product3));
+        productService.getProductDTOById(2L);
+
+        // Act
+        ProductBatchDTO result = productService.getProductsByIds(List.of(3L, 2L, 99L, 3L));
+
+        // Assert
+        assertEquals(List.of(product3, product2), result.getProducts());
+        assertEquals(List.of(99L), result.getMissing());
+        verify(productRepository, times(1)).findByIdIn(argThat(ids -> Set.copyOf(ids).equals(Set.of(3L, 99L))));
+    }
+
+    @Test
+    public void testSerializedResponsesAreEvictedOnWrites() {
+        // Arrange
+        Long productId = 100L;
+        Product existingProduct = new Product(productId, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        when(productRepository.findDTOById(productId)).thenReturn(Optional.of(new ProductDTO(existingProduct)));
+        when(productRepository.findById(productId)).thenReturn(Optional.of(existingProduct));
+        when(productRepository.save(any(Product.class))).then(invocation -> invocation.getArgument(0));
+        SerializedResponse first = responseCache.product(productId, productService::getProductDTOById);
+        responseCache.putSearch("q", List.of(), "\"c1\"", null);
+
+        // Act
+        SerializedResponse second = responseCache.product(productId, productService::getProductDTOById);
+        productService.updateProduct(productId, new Product(null, "Product 2", "Description 2", new BigDecimal("20.00"), null, null, null, null, null));
+        SerializedResponse afterUpdate = responseCache.product(productId, productService::getProductDTOById);
+
+        // Assert
+        assertSame(first, second);
+        assertNotSame(first, afterUpdate);
+        assertTrue(new String(first.json()).contains("\"name\":\"Product 1\""));
+        assertNull(responseCache.search("q"));
+        verify(productRepository, times(2)).findDTOById(productId);
+    }
+
+    @Test
+    public void testGetProductDTOById_MissingIsNotCached() {
+        // Arrange
+        when(productRepository.findDTOById(5L)).thenReturn(Optional.empty());
+
+        // Act
+        Optional<ProductDTO> result = productService.getProductDTOById(5L);
+        productService.getProductDTOById(5L);
+
+        // Assert
+        assertTrue(result.isEmpty());
+        assertEquals(0, productCache.size());
+        verify(productRepository, times(2)).findDTOById(5L);
+    }
+
     @Test
     public void testCreateProduct() {
         // Arrange
-        Product productToSave = new Product(null, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null);
-        Product savedProduct = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null);
+        Product productToSave = new Product(null, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        Product savedProduct = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
         when(productRepository.save(productToSave)).thenReturn(savedProduct);
 
         // Act
@@ -79,6 +233,7 @@ public class ProductServiceTest {
         // Assert
         assertEquals(1L, result.getId());
         assertEquals("Product 1", result.getName());
+        assertTrue(searchIndex.matchName("product").get(1));
         verify(productRepository, times(1)).save(productToSave);
     }
 
@@ -86,8 +241,8 @@ public class ProductServiceTest {
     public void testUpdateProduct() {
         // Arrange
         Long productId = 100L;
-        Product existingProduct = new Product(productId, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null);
-        Product updatedProduct = new Product(productId, "Product Updated", "Description Updated", new BigDecimal("15.00"), null, null, null, null);
+        Product existingProduct = new Product(productId, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        Product updatedProduct = new Product(productId, "Product Updated", "Description Updated", new BigDecimal("15.00"), null, null, null, null, null);
         when(productRepository.findById(productId)).thenReturn(Optional.of(existingProduct));
         when(productRepository.save(updatedProduct)).thenReturn(updatedProduct);
 
@@ -99,6 +254,7 @@ public class ProductServiceTest {
         assertEquals("Product Updated", result.getName());
         assertEquals("Description Updated", result.getDescription());
         assertEquals(new BigDecimal("15.00"), result.getPrice());
+        assertTrue(searchIndex.matchName("updated").get(100));
         verify(productRepository, times(1)).findById(productId);
         verify(productRepository, times(1)).save(updatedProduct);
     }
@@ -107,7 +263,7 @@ public class ProductServiceTest {
     public void testUpdateProduct_ProductNotFound() {
         // Arrange
         Long productId = 100L;
-        Product updatedProduct = new Product(productId, "Product Updated", "Description Updated", new BigDecimal("15.00"), null, null, null, null);
+        Product updatedProduct = new Product(productId, "Product Updated", "Description Updated", new BigDecimal("15.00"), null, null, null, null, null);
         when(productRepository.findById(productId)).thenReturn(Optional.empty());
 
         // Act & Assert
@@ -125,12 +281,14 @@ public class ProductServiceTest {
         Long productId = 100L;
         Product existingProduct = new Product();
         existingProduct.setId(productId);
+        searchIndex.index(new ProductDTO(productId, "Product 100", "Description 100", new BigDecimal("10.00"), null, null));
         when(productRepository.findById(productId)).thenReturn(Optional.of(existingProduct));
 
         // Act
         productService.deleteProduct(productId);
 
         // Assert
+        assertTrue(searchIndex.matchName("product").isEmpty());
         verify(productRepository, times(1)).findById(productId);
         verify(productRepository, times(1)).deleteById(productId);
         verifyNoMoreInteractions(productRepository);
@@ -155,34 +313,143 @@ public class ProductServiceTest {
     public void testSearchProductsByName() {
         // Arrange
         String name = "Product";
-        List<Product> products = new ArrayList<>();
-        products.add(new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null));
-        products.add(new Product(2L, "Product 2", "Description 2", new BigDecimal("20.00"), null, null, null, null));
-        when(productRepository.findByNameContainingIgnoreCase(name)).thenReturn(products);
+        List<ProductDTO> products = new ArrayList<>();
+        products.add(new ProductDTO(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null));
+        products.add(new ProductDTO(2L, "Product 2", "Description 2", new BigDecimal("20.00"), null, null));
+        products.forEach(searchIndex::index);
+        when(productRepository.findSummariesByIdIn(List.of(1L, 2L))).thenReturn(products);
 
         // Act
-        List<Product> result = productService.searchProductsByName(name);
+        List<ProductDTO> result = productService.searchProductsByName(name);
 
         // Assert
         assertEquals(2, result.size());
         assertEquals("Product 1", result.get(0).getName());
         assertEquals("Product 2", result.get(1).getName());
-        verify(productRepository, times(1)).findByNameContainingIgnoreCase(name);
+        verify(productRepository, times(1)).findSummariesByIdIn(List.of(1L, 2L));
+        verify(productRepository, never()).findByNameContainingIgnoreCase(anyString());
         verify(productRepository, never()).findByCategoryNameIgnoreCase(anyString());
-        verify(productRepository, never()).findByPriceBetween(any(), any());
+    }
+
+    @Test
+    public void testSearchProductsByName_MatchesSubstringsLikeTheDatabase() {
+        // Arrange
+        ProductDTO smartphone = new ProductDTO(1L, "Smartphone X", "Description 1", new BigDecimal("10.00"), null, null);
+        searchIndex.index(smartphone);
+        searchIndex.index(new ProductDTO(2L, "Phone case", "Description 2", new BigDecimal("20.00"), null, null));
+        searchIndex.index(new ProductDTO(3L, "Laptop", "Description 3", new BigDecimal("30.00"), null, null));
+        when(productRepository.findSummariesByIdIn(List.of(1L))).thenReturn(List.of(smartphone));
+
+        // Act
+        List<ProductDTO> result = productService.searchProductsByName("phone x");
+
+        // Assert
+        assertEquals(List.of(smartphone), result);
+        verify(productRepository, times(1)).findSummariesByIdIn(List.of(1L));
+        verify(productRepository, never()).findByNameContainingIgnoreCase(anyString());
+    }
+
+    @Test
+    public void testUpdateProductRestoresIndexesOnRollback() {
+        // Arrange
+        Product existing = new Product(1L, "Camara", "Reflex", new BigDecimal("10.00"), null, null, null, null, null);
+        Product changes = new Product(null, "Tripode", "Aluminio", new BigDecimal("10.00"), null, null, null, null, null);
+        searchIndex.index(new ProductDTO(existing));
+        when(productRepository.findById(1L)).thenReturn(Optional.of(existing));
+        when(productRepository.save(any(Product.class))).then(invocation -> invocation.getArgument(0));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            productService.updateProduct(1L, changes);
+
+            // Assert
+            assertTrue(searchIndex.matchNameContaining("tripode").get(1));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+            assertTrue(searchIndex.matchNameContaining("tripode").isEmpty());
+            assertTrue(searchIndex.matchNameContaining("camara").get(1));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testSearchProductsByName_NoIndexedMatches() {
+        // Arrange
+        searchIndex.index(new ProductDTO(1L, "Laptop", "Description 1", new BigDecimal("10.00"), null, null));
+
+        // Act
+        List<ProductDTO> result = productService.searchProductsByName("Phone");
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void testSearchProductsByName_FuzzyFallback() {
+        // Arrange
+        ProductDTO laptop = new ProductDTO(1L, "Laptop", "Description 1", new BigDecimal("10.00"), null, null);
+        searchIndex.index(laptop);
+        searchIndex.index(new ProductDTO(2L, "Mouse", "Description 2", new BigDecimal("20.00"), null, null));
+        when(productRepository.findSummariesByIdIn(List.of(1L))).thenReturn(List.of(laptop));
+
+        // Act
+        List<ProductDTO> result = productService.searchProductsByName("Lpatop");
+
+        // Assert
+        assertEquals(List.of(laptop), result);
+        verify(productRepository, times(1)).findSummariesByIdIn(List.of(1L));
+        verify(productRepository, never()).findByNameContainingIgnoreCase(anyString());
+    }
+
+    @Test
+    public void testConcurrentIdenticalCategorySearchesShareOneQuery() throws Exception {
+        // Arrange
+        int callers = 8;
+        CountDownLatch started = new CountDownLatch(callers);
+        List<ProductDTO> products = List.of(new ProductDTO(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null));
+        when(productRepository.findByCategoryNameIgnoreCase(anyString())).then(invocation -> {
+            started.await(5, TimeUnit.SECONDS);
+            Thread.sleep(200);
+            return products;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+
+        // Act
+        List<Future<List<ProductDTO>>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < callers; i++) {
+                String categoryName = i % 2 == 0 ? "Category A" : "CATEGORY A";
+                results.add(executor.submit(() -> {
+                    started.countDown();
+                    return productService.searchProductsByCategory(categoryName);
+                }));
+            }
+            for (Future<List<ProductDTO>> result : results) {
+                assertSame(products, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Assert
+        verify(productRepository, times(1)).findByCategoryNameIgnoreCase(anyString());
+        assertEquals(1, meterRegistry.get("products.single-flight.callers").summary().count());
+        assertEquals(callers, meterRegistry.get("products.single-flight.callers").summary().max());
     }
 
     @Test
     public void testSearchProductsByCategory() {
         // Arrange
         String categoryName = "Category A";
-        List<Product> products = new ArrayList<>();
-        products.add(new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null));
-        products.add(new Product(2L, "Product 2", "Description 2", new BigDecimal("20.00"), null, null, null, null));
+        List<ProductDTO> products = new ArrayList<>();
+        products.add(new ProductDTO(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null));
+        products.add(new ProductDTO(2L, "Product 2", "Description 2", new BigDecimal("20.00"), null, null));
         when(productRepository.findByCategoryNameIgnoreCase(categoryName)).thenReturn(products);
 
         // Act
-        List<Product> result = productService.searchProductsByCategory( categoryName);
+        List<ProductDTO> result = productService.searchProductsByCategory( categoryName);
 
         // Assert
         assertEquals(2, result.size());
@@ -190,7 +457,7 @@ public class ProductServiceTest {
         assertEquals("Product 2", result.get(1).getName());
         verify(productRepository, never()).findByNameContainingIgnoreCase(anyString());
         verify(productRepository, times(1)).findByCategoryNameIgnoreCase(categoryName);
-        verify(productRepository, never()).findByPriceBetween(any(), any());
+        verify(productRepository, never()).search(any());
     }
 
     @Test
@@ -198,12 +465,15 @@ public class ProductServiceTest {
         // Arrange
         BigDecimal minPrice = new BigDecimal("15.00");
         BigDecimal maxPrice = new BigDecimal("25.00");
-        List<Product> products = new ArrayList<>();
-        products.add(new Product(1L, "Product 1", "Description 1", new BigDecimal("20.00"), null, null, null, null));
-        when(productRepository.findByPriceBetween(minPrice, maxPrice)).thenReturn(products);
+        List<ProductDTO> products = new ArrayList<>();
+        products.add(new ProductDTO(1L, "Product 1", "Description 1", new BigDecimal("20.00"), null, null));
+        products.forEach(priceIndex::index);
+        priceIndex.index(new ProductDTO(2L, "Product 2", "Description 2", new BigDecimal("30.00"), null, null));
+        ProductSearchFilter filter = new ProductSearchFilter(null, null, minPrice, maxPrice, null, false, List.of(1L));
+        when(productRepository.search(filter)).thenReturn(products);
 
         // Act
-        List<Product> result = productService.searchProductsByPriceRange( minPrice, maxPrice);
+        List<ProductDTO> result = productService.searchProductsByPriceRange( minPrice, maxPrice);
 
         // Assert
         assertEquals(1, result.size());
@@ -211,7 +481,42 @@ public class ProductServiceTest {
         assertEquals(new BigDecimal("20.00"), result.get(0).getPrice());
         verify(productRepository, never()).findByNameContainingIgnoreCase(anyString());
         verify(productRepository, never()).findByCategoryNameIgnoreCase(anyString());
-        verify(productRepository, times(1)).findByPriceBetween(minPrice, maxPrice);
+        verify(productRepository, times(1)).search(filter);
+    }
+
+    @Test
+    public void testSearchProductsByPriceMinimunLeavesWideRangesToTheDatabase() {
+        // Arrange
+        for (long id = 1; id <= 1200; id++) {
+            priceIndex.index(new ProductDTO(id, "Product " + id, null, BigDecimal.valueOf(id), null, null));
+        }
+        ProductSearchFilter filter = ProductSearchFilter.of(null, null, new BigDecimal("100.50"), null, null, false);
+        when(productRepository.search(filter)).thenReturn(List.of());
+
+        // Act
+        productService.searchProductsByPriceMinimun(new BigDecimal("100.50"));
+
+        // Assert
+        verify(productRepository, times(1)).search(filter);
+    }
+
+    @Test
+    public void testSearchProductsPageIntersectsPriceRangeWithOtherFilters() {
+        // Arrange
+        for (long id = 1; id <= 1200; id++) {
+            ProductDTO product = new ProductDTO(id, "Product " + id, null, BigDecimal.valueOf(id), id % 2 == 0 ? 7L : 8L, null);
+            priceIndex.index(product);
+            facetIndex.index(product);
+        }
+        ProductSearchFilter filter = ProductSearchFilter.of(null, null, new BigDecimal("10"), new BigDecimal("14"), 7L, false)
+                .withIds(List.of(10L, 12L, 14L));
+        when(productRepository.searchPage(filter, null, 2)).thenReturn(List.of());
+
+        // Act
+        productService.searchProductsPage(null, null, new BigDecimal("10"), new BigDecimal("14"), 7L, false, null, 2);
+
+        // Assert
+        verify(productRepository, times(1)).searchPage(filter, null, 2);
     }
 
     @Test
@@ -221,19 +526,225 @@ public class ProductServiceTest {
         String categoryName = "Category A";
         BigDecimal minPrice = new BigDecimal("10.00");
         BigDecimal maxPrice = new BigDecimal("20.00");
-        List<Product> products = new ArrayList<>();
-        products.add(new Product(1L, "Product 1", "Description 1", new BigDecimal("15.00"), null, null, null, null));
-        when(productRepository.findByFilters(name, categoryName, minPrice, maxPrice)).thenReturn(products);
+        List<ProductDTO> products = new ArrayList<>();
+        products.add(new ProductDTO(1L, "Product 1", "Description 1", new BigDecimal("15.00"), null, null));
+        products.forEach(searchIndex::index);
+        products.forEach(priceIndex::index);
+        ProductSearchFilter filter = new ProductSearchFilter(null, categoryName, minPrice, maxPrice, null, false, List.of(1L));
+        when(productRepository.search(filter)).thenReturn(products);
 
         // Act
-        List<Product> result = productService.searchProducts(name, categoryName, minPrice, maxPrice);
+        List<ProductDTO> result = productService.searchProducts(name, categoryName, minPrice, maxPrice);
         
         // Assert
         assertEquals(1, result.size());
         assertEquals("Product 1", result.get(0).getName());
 //        assertEquals("Category A", result.get(0).getCategory().getName()); // 
         assertEquals(new BigDecimal("15.00"), result.get(0).getPrice());
-        verify(productRepository, times(1)).findByFilters(name, categoryName, minPrice, maxPrice);
+        verify(productRepository, times(1)).search(filter);
+        verify(productRepository, never()).findByNameContainingIgnoreCase(anyString());
         verify(productRepository, never()).findAll();
     }
+
+    @Test
+    public void testGetProductsPage() {
+        // Arrange
+        List<ProductDTO> products = new ArrayList<>();
+        products.add(new ProductDTO(11L, "Product 11", "Description 11", new BigDecimal("10.00"), null, null));
+        when(productRepository.findPageAfterId(10L, Limit.of(3))).thenReturn(products);
+
+        // Act
+        List<ProductDTO> result = productService.getProductsPage(ProductCursor.afterId(10L), 3);
+
+        // Assert
+        assertEquals(1, result.size());
+        verify(productRepository, times(1)).findPageAfterId(10L, Limit.of(3));
+        verify(productRepository, never()).findAll();
+    }
+
+    @Test
+    public void testSearchProductsPage() {
+        // Arrange
+        List<ProductDTO> products = new ArrayList<>();
+        products.add(new ProductDTO(7L, "Product B", "Description B", new BigDecimal("10.00"), null, null));
+        products.forEach(searchIndex::index);
+        ProductSearchFilter filter = new ProductSearchFilter(null, null, null, null, null, false, List.of(7L));
+        ProductCursor after = ProductCursor.afterNameAndId("Product A", 3L);
+        when(productRepository.searchPage(filter, after, 2)).thenReturn(products);
+
+        // Act
+        List<ProductDTO> result = productService.searchProductsPage("Product", null, null, null, null, false, after, 2);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals("Product B", result.get(0).getName());
+        verify(productRepository, times(1)).searchPage(filter, after, 2);
+    }
+
+    @Test
+    public void testExportProducts() {
+        // Arrange
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Stream<ProductDTO> products = Stream.of(
+                new ProductDTO(1L, "Product 1", "Description 1", new BigDecimal("10.00"), 1L, 1L),
+                new ProductDTO(2L, "Product 2", "Description 2", new BigDecimal("20.00"), 1L, 1L))
+                .onClose(() -> closed.set(true));
+        when(productRepository.streamAllAsDTO()).thenReturn(products);
+        List<ProductDTO> exported = new ArrayList<>();
+
+        // Act
+        long rows = productService.exportProducts(exported::add);
+
+        // Assert
+        assertEquals(2, rows);
+        assertEquals("Product 1", exported.get(0).getName());
+        assertEquals("Product 2", exported.get(1).getName());
+        assertTrue(closed.get());
+        verify(productRepository, never()).findAll();
+    }
+
+    @Test
+    public void testSearchProductsByRelevance() {
+        // Arrange
+        ProductDTO product1 = new ProductDTO(1L, "Camara", "Funda incluida", new BigDecimal("10.00"), null, null);
+        ProductDTO product2 = new ProductDTO(2L, "Funda", "Funda de camara", new BigDecimal("20.00"), null, null);
+        ProductDTO product3 = new ProductDTO(3L, "Funda grande", "Para camara", new BigDecimal("30.00"), null, null);
+        searchIndex.index(product1);
+        searchIndex.index(product2);
+        searchIndex.index(product3);
+        when(productRepository.findSummariesByIdIn(List.of(2L, 3L))).thenReturn(List.of(product2, product3));
+        when(productRepository.search(new ProductSearchFilter(null, null, new BigDecimal("15.00"), null, null, false, List.of(2L, 3L, 1L))))
+                .thenReturn(List.of(product2, product3));
+
+        // Act
+        List<ProductDTO> result = productService.searchProductsByRelevance("funda", null, null, null, null, false, 2);
+        List<ProductDTO> filtered = productService.searchProductsByRelevance("funda", null, new BigDecimal("15.00"), null, null, false, 2);
+
+        // Assert
+        assertEquals(List.of(product2, product3), result);
+        assertEquals(List.of(product2, product3), filtered);
+        verify(productRepository, times(1)).findSummariesByIdIn(List.of(2L, 3L));
+    }
+
+    @Test
+    public void testRebuildIndexesLoadsPopularityForSuggestions() {
+        // Arrange
+        ProductDTO product1 = new ProductDTO(1L, "Camara", "Reflex", new BigDecimal("10.00"), null, null);
+        ProductDTO product2 = new ProductDTO(2L, "Camiseta", "Algodon", new BigDecimal("20.00"), null, null);
+        OrderDetailRepository.ProductUnitsSold sold = mock(OrderDetailRepository.ProductUnitsSold.class);
+        when(sold.getProductId()).thenReturn(2L);
+        when(sold.getUnits()).thenReturn(3L);
+        when(productRepository.streamAllAsDTO()).thenReturn(Stream.of(product1, product2));
+        when(orderDetailRepository.sumUnitsSoldByProduct()).thenReturn(List.of(sold));
+
+        // Act
+        long rows = productService.rebuildIndexes();
+
+        // Assert
+        assertEquals(2, rows);
+        assertEquals(List.of(2L, 1L), productService.suggestProducts("cam", 10).stream().map(ProductSuggestionDTO::getId).toList());
+        verify(productRepository, never()).findByNameContainingIgnoreCase(anyString());
+    }
+
+    @Test
+    public void testRecordSalesReordersSuggestions() {
+        // Arrange
+        Product product1 = new Product(1L, "Camara", "Reflex", new BigDecimal("10.00"), null, null, null, null, null);
+        Product product2 = new Product(2L, "Camiseta", "Algodon", new BigDecimal("20.00"), null, null, null, null, null);
+        when(productRepository.save(any(Product.class))).then(invocation -> invocation.getArgument(0));
+        productService.createProduct(product1);
+        productService.createProduct(product2);
+        OrderDetail detail = new OrderDetail();
+        detail.setProduct(product2);
+        detail.setQuantity(4);
+
+        // Act
+        productService.recordSales(List.of(detail));
+
+        // Assert
+        assertEquals(List.of(2L, 1L), productService.suggestProducts("ca", 10).stream().map(ProductSuggestionDTO::getId).toList());
+    }
+
+    @Test
+    public void testSearchProductsWithFacets() {
+        // Arrange
+        ProductDTO product1 = new ProductDTO(1L, "Camara", "Reflex", new BigDecimal("480.00"), 7L, 3L);
+        ProductDTO product2 = new ProductDTO(2L, "Camara compacta", "Bolsillo", new BigDecimal("120.00"), 8L, 3L);
+        ProductDTO product3 = new ProductDTO(3L, "Camara de accion", "Casco", new BigDecimal("130.00"), 8L, 4L);
+        ProductDTO product4 = new ProductDTO(4L, "Laptop", "Oficina", new BigDecimal("900.00"), 8L, 5L);
+        List.of(product1, product2, product3, product4).forEach(product -> {
+            searchIndex.index(product);
+            facetIndex.index(product);
+        });
+        when(productRepository.searchPage(new ProductSearchFilter(null, null, null, null, null, false, List.of(1L, 2L, 3L)), null, 2))
+                .thenReturn(List.of(product1, product2));
+
+        // Act
+        ProductSearchResultDTO result = productService.searchProductsWithFacets("camara", null, null, null, null, false, null, 2);
+
+        // Assert
+        assertEquals(2, result.getProducts().size());
+        assertEquals(List.of(new FacetCountDTO("3", 2), new FacetCountDTO("4", 1)), result.getFacets().get("category"));
+        assertEquals(List.of(new FacetCountDTO("8", 2), new FacetCountDTO("7", 1)), result.getFacets().get("brand"));
+        assertEquals(List.of(new FacetCountDTO("100-250", 2), new FacetCountDTO("250-500", 1)), result.getFacets().get("price"));
+        verify(productRepository, times(1)).searchPage(any(), any(), anyInt());
+        verify(productRepository, never()).search(any());
+    }
+
+    @Test
+    public void testSearchProductsWithFacetsCountsFromBitmapsOnly() {
+        // Arrange
+        for (long id = 1; id <= 1200; id++) {
+            ProductDTO product = new ProductDTO(id, "Product " + id, null, BigDecimal.valueOf(id), 7L, id <= 600 ? 3L : 4L);
+            searchIndex.index(product);
+            facetIndex.index(product);
+            priceIndex.index(product);
+        }
+        Category category = new Category();
+        category.setId(3L);
+        when(categoryRepository.findByNameIgnoreCase("audio")).thenReturn(List.of(category));
+        ProductSearchFilter all = ProductSearchFilter.of(null, null, null, null, null, false);
+        ProductSearchFilter narrowed = ProductSearchFilter.of(null, "audio", new BigDecimal("500"), null, null, false)
+                .withIds(LongStream.rangeClosed(500, 600).boxed().toList());
+
+        // Act
+        ProductSearchResultDTO everything = productService.searchProductsWithFacets(null, null, null, null, null, false, null, 11);
+        ProductSearchResultDTO filtered = productService.searchProductsWithFacets(null, "audio", new BigDecimal("500"), null,
+                null, false, null, 11);
+
+        // Assert
+        assertEquals(List.of(new FacetCountDTO("3", 600), new FacetCountDTO("4", 600)), everything.getFacets().get("category"));
+        assertEquals(List.of(new FacetCountDTO("3", 101)), filtered.getFacets().get("category"));
+        verify(productRepository, times(1)).searchPage(all, null, 11);
+        verify(productRepository, times(1)).searchPage(narrowed, null, 11);
+        verify(productRepository, never()).search(any());
+        verify(productRepository, never()).findAllAsDTO();
+    }
+
+    @Test
+    public void testSearchProductsPageByBrandAndStock() {
+        // Arrange
+        List.of(new ProductDTO(1L, "Camara", null, new BigDecimal("10.00"), 7L, 1L),
+                new ProductDTO(2L, "Camara compacta", null, new BigDecimal("20.00"), 7L, 1L),
+                new ProductDTO(3L, "Camara de accion", null, new BigDecimal("30.00"), 8L, 1L),
+                new ProductDTO(4L, "Laptop", null, new BigDecimal("40.00"), 7L, 1L)).forEach(product -> {
+                    searchIndex.index(product);
+                    facetIndex.index(product);
+                });
+        availabilityIndex.update(2L, 5);
+        availabilityIndex.update(3L, 1);
+        availabilityIndex.update(4L, 9);
+        List<ProductDTO> page = List.of(new ProductDTO(2L, "Camara compacta", null, new BigDecimal("20.00"), 7L, 1L));
+        when(productRepository.searchPage(new ProductSearchFilter(null, null, null, null, 7L, true, List.of(2L)), null, 10))
+                .thenReturn(page);
+
+        // Act
+        List<ProductDTO> result = productService.searchProductsPage("camara", null, null, null, 7L, true, null, 10);
+        List<ProductDTO> noBrandMatches = productService.searchProductsPage(null, null, null, null, 99L, false, null, 10);
+
+        // Assert
+        assertEquals(page, result);
+        assertTrue(noBrandMatches.isEmpty());
+        verify(productRepository, times(1)).searchPage(any(), any(), anyInt());
+    }
 }
@@ -6,13 +6,22 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import com.java.demo.ecommerceapi.cache.CatalogVersion;
+import com.java.demo.ecommerceapi.dto.StockLevelDTO;
+import com.java.demo.ecommerceapi.exception.BadRequestException;
+import com.java.demo.ecommerceapi.exception.GeneralException;
 import com.java.demo.ecommerceapi.exception.ObjectNotFoundException;
+import com.java.demo.ecommerceapi.model.OrderDetail;
 import com.java.demo.ecommerceapi.model.Product;
 import com.java.demo.ecommerceapi.model.Stock;
 import com.java.demo.ecommerceapi.repository.StockRepository;
+import com.java.demo.ecommerceapi.search.ProductAvailabilityIndex;
 import com.java.demo.ecommerceapi.service.StockService;
+import com.java.demo.ecommerceapi.service.StockShardRebalancer;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +33,15 @@ public class StockServiceTest {
     @Mock
     private StockRepository stockRepository;
 
+    @Mock
+    private ProductAvailabilityIndex availabilityIndex;
+
+    @Mock
+    private CatalogVersion catalogVersion;
+
+    @Mock
+    private StockShardRebalancer shardRebalancer;
+
     @InjectMocks
     private StockService stockService;
 
@@ -173,6 +191,29 @@ public class StockServiceTest {
         verify(stockRepository, times(1)).findByProductId(productId);
     }
 
+    @Test
+    public void testGetStocksByProductId_AddsShardsToTheirPrimaryRow() {
+        // Arrange
+        Long productId = 1L;
+        Product product = new Product();
+        product.setId(productId);
+        Stock primary = new Stock(1L, product, 4, "Location1", 0);
+        when(stockRepository.findByProductId(productId)).thenReturn(List.of(primary,
+                new Stock(2L, product, 7, "Location2", 0), new Stock(3L, product, 5, "Location1", 1),
+                new Stock(4L, product, 6, "Location1", 2)));
+
+        // Act
+        List<Stock> result = stockService.getStocksByProductId(productId);
+
+        // Assert
+        assertEquals(2, result.size());
+        assertEquals(1L, result.get(0).getId());
+        assertEquals(15, result.get(0).getQuantity());
+        assertEquals(7, result.get(1).getQuantity());
+        // La entidad leida no se modifica
+        assertEquals(4, primary.getQuantity());
+    }
+
     @Test
     public void testUpdateStockQuantity() {
         // Arrange
@@ -207,4 +248,193 @@ public class StockServiceTest {
         verify(stockRepository, times(1)).findByProductIdAndLocation(productId, location);
         verify(stockRepository, never()).save(any(Stock.class));
     }
+
+    @Test
+    public void testUpdateStockQuantity_RefreshesAvailability() {
+        // Arrange
+        Long productId = 50L;
+        String location = "Location Z";
+        Stock existingStock = new Stock(1L, new Product(), 10, location);
+        when(stockRepository.findByProductIdAndLocation(productId, location)).thenReturn(Optional.of(existingStock));
+        when(stockRepository.sumQuantityByProductId(productId)).thenReturn(0L);
+
+        // Act
+        stockService.updateStockQuantity(productId, location, 0);
+
+        // Assert
+        verify(availabilityIndex, times(1)).update(productId, 0L);
+    }
+
+    @Test
+    public void testRebuildAvailability() {
+        // Arrange
+        when(stockRepository.findProductIdsInStock()).thenReturn(List.of(1L, 3L));
+
+        // Act
+        int inStock = stockService.rebuildAvailability();
+
+        // Assert
+        assertEquals(2, inStock);
+        verify(availabilityIndex, times(1)).rebuild(List.of(1L, 3L));
+    }
+
+    @Test
+    public void testAllocateStockSplitsAcrossLocationsWithOneQuery() {
+        // Arrange
+        Product product1 = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        Product product2 = new Product(2L, "Product 2", "Description 2", new BigDecimal("20.00"), null, null, null, null, null);
+        when(stockRepository.findLevelsByProductIdIn(anyCollection())).thenReturn(List.of(
+                new StockLevelDTO(1L, 1L, "Location1", 3), new StockLevelDTO(2L, 1L, "Location2", 10),
+                new StockLevelDTO(3L, 2L, "Location1", 5)));
+        decrementsSucceed();
+        when(stockRepository.sumQuantityByProductIdIn(anyCollection())).thenReturn(List.of(
+                new Object[] {1L, 8L}, new Object[] {2L, 4L}));
+
+        // Act
+        stockService.allocateStock(List.of(detail(product1, 4), detail(product2, 1), detail(product1, 1)));
+
+        // Assert
+        verify(stockRepository, times(1)).findLevelsByProductIdIn(anyCollection());
+        verify(stockRepository, times(1)).decrementAllIfAvailable(List.of(1L, 2L, 3L), List.of(3, 2, 1));
+        verify(stockRepository, never()).decrementIfAvailable(anyLong(), anyInt());
+        verify(stockRepository, never()).findQuantityById(anyLong());
+        verify(stockRepository, never()).save(any(Stock.class));
+        verify(catalogVersion, times(1)).stockChanged();
+        verify(availabilityIndex).update(1L, 8);
+        verify(availabilityIndex).update(2L, 4);
+    }
+
+    @Test
+    public void testAllocateStock_ShardedLocationTakesFromOneShardThatCovers() {
+        // Arrange
+        Product product = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        when(stockRepository.findLevelsByProductIdIn(anyCollection())).thenReturn(List.of(
+                new StockLevelDTO(1L, 1L, "Location1", 2), new StockLevelDTO(2L, 1L, "Location1", 5),
+                new StockLevelDTO(3L, 1L, "Location1", 5)));
+        decrementsSucceed();
+        when(stockRepository.sumQuantityByProductIdIn(anyCollection())).thenReturn(List.<Object[]>of(new Object[] {1L, 8L}));
+
+        // Act
+        stockService.allocateStock(List.of(detail(product, 4)));
+
+        // Assert
+        verify(stockRepository, times(1)).decrementAllIfAvailable(
+                argThat(ids -> ids.equals(List.of(2L)) || ids.equals(List.of(3L))), eq(List.of(4)));
+    }
+
+    @Test
+    public void testAllocateStock_ShardedLocationSpillsOverInIdOrder() {
+        // Arrange
+        Product product = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        when(stockRepository.findLevelsByProductIdIn(anyCollection())).thenReturn(List.of(
+                new StockLevelDTO(1L, 1L, "Location1", 3), new StockLevelDTO(2L, 1L, "Location1", 3)));
+        decrementsSucceed();
+        when(stockRepository.sumQuantityByProductIdIn(anyCollection())).thenReturn(List.<Object[]>of(new Object[] {1L, 1L}));
+
+        // Act
+        stockService.allocateStock(List.of(detail(product, 5)));
+
+        // Assert
+        verify(stockRepository).decrementAllIfAvailable(List.of(1L, 2L), List.of(3, 2));
+    }
+
+    @Test
+    public void testSplitStock_InvalidShardCount() {
+        // Act & Assert
+        Exception exception = assertThrows(BadRequestException.class, () -> {
+            stockService.splitStock(1L, "Location1", 0);
+        });
+        assertEquals("The shard count must be between 1 and 64", exception.getMessage());
+        verify(stockRepository, never()).findShardsByProductIdAndLocation(anyLong(), anyString());
+    }
+
+    @Test
+    public void testAllocateStock_RowChangedConcurrentlyIsRereadAndRetried() {
+        // Arrange
+        Product product = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        when(stockRepository.findLevelsByProductIdIn(anyCollection())).thenReturn(List.of(
+                new StockLevelDTO(1L, 1L, "Location1", 3), new StockLevelDTO(2L, 1L, "Location2", 10)));
+        // Otra compra se llevo 2 unidades de la primera fila despues de la lectura
+        when(stockRepository.decrementAllIfAvailable(List.of(1L), List.of(3))).thenReturn(new int[] {0});
+        when(stockRepository.findQuantityById(1L)).thenReturn(Optional.of(1));
+        when(stockRepository.decrementIfAvailable(1L, 1)).thenReturn(1);
+        when(stockRepository.decrementIfAvailable(2L, 2)).thenReturn(1);
+        when(stockRepository.sumQuantityByProductIdIn(anyCollection())).thenReturn(List.<Object[]>of(new Object[] {1L, 8L}));
+
+        // Act
+        stockService.allocateStock(List.of(detail(product, 3)));
+
+        // Assert
+        verify(stockRepository).decrementAllIfAvailable(List.of(1L), List.of(3));
+        verify(stockRepository, never()).decrementIfAvailable(1L, 3);
+        verify(stockRepository).decrementIfAvailable(1L, 1);
+        verify(stockRepository).decrementIfAvailable(2L, 2);
+        verify(availabilityIndex).update(1L, 8);
+    }
+
+    @Test
+    public void testAllocateStock_InsufficientStockChangesNothing() {
+        // Arrange
+        Product product1 = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        Product product2 = new Product(2L, "Product 2", "Description 2", new BigDecimal("20.00"), null, null, null, null, null);
+        when(stockRepository.findLevelsByProductIdIn(anyCollection())).thenReturn(List.of(
+                new StockLevelDTO(1L, 1L, "Location1", 10), new StockLevelDTO(2L, 2L, "Location1", 1)));
+
+        // Act & Assert
+        Exception exception = assertThrows(GeneralException.class, () ->
+                stockService.allocateStock(List.of(detail(product1, 2), detail(product2, 2))));
+        assertEquals("Insufficient stock for product 'Product 2'", exception.getMessage());
+        verify(stockRepository, never()).decrementAllIfAvailable(anyList(), anyList());
+        verify(stockRepository, never()).decrementIfAvailable(anyLong(), anyInt());
+        verify(availabilityIndex, never()).update(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testAllocateStock_SoldOutConcurrently() {
+        // Arrange
+        Product product = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        when(stockRepository.findLevelsByProductIdIn(anyCollection())).thenReturn(List.of(new StockLevelDTO(1L, 1L, "Location1", 2)));
+        when(stockRepository.decrementAllIfAvailable(List.of(1L), List.of(2))).thenReturn(new int[] {0});
+        when(stockRepository.findQuantityById(1L)).thenReturn(Optional.of(0));
+
+        // Act & Assert
+        Exception exception = assertThrows(GeneralException.class, () ->
+                stockService.allocateStock(List.of(detail(product, 2))));
+        assertEquals("Insufficient stock for product 'Product 1'", exception.getMessage());
+        verify(stockRepository, times(1)).decrementAllIfAvailable(anyList(), anyList());
+        verify(stockRepository, never()).decrementIfAvailable(anyLong(), anyInt());
+        verify(catalogVersion, never()).stockChanged();
+        verify(availabilityIndex, never()).update(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testAllocateStock_RejectsNonPositiveQuantities() {
+        // Arrange
+        Product withStock = new Product(1L, "Product 1", "Description 1", new BigDecimal("10.00"), null, null, null, null, null);
+        Product withoutStock = new Product(2L, "Product 2", "Description 2", new BigDecimal("10.00"), null, null, null, null, null);
+
+        // Act & Assert
+        Exception zero = assertThrows(BadRequestException.class, () ->
+                stockService.allocateStock(List.of(detail(withStock, 1), detail(withoutStock, 0))));
+        assertEquals("The quantity for product id 2 must be greater than zero", zero.getMessage());
+        assertThrows(BadRequestException.class, () ->
+                stockService.allocateStock(List.of(detail(withStock, 3), detail(withStock, -1))));
+        verifyNoInteractions(stockRepository);
+    }
+
+    // Todas las filas del lote tienen la cantidad pedida
+    private void decrementsSucceed() {
+        when(stockRepository.decrementAllIfAvailable(anyList(), anyList())).thenAnswer(invocation -> {
+            int[] updated = new int[invocation.<List<?>>getArgument(0).size()];
+            Arrays.fill(updated, 1);
+            return updated;
+        });
+    }
+
+    private static OrderDetail detail(Product product, int quantity) {
+        OrderDetail detail = new OrderDetail();
+        detail.setProduct(product);
+        detail.setQuantity(quantity);
+        return detail;
+    }
 }